@@ -0,0 +1,289 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.algorithm.metafunctions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
+import org.apache.mahout.classifier.svm.datastore.OneVsOthersLabels;
+import org.apache.mahout.classifier.svm.datastore.PackedSamples;
+import org.apache.mahout.classifier.svm.parameters.SVMParameters;
+import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * k-fold cross-validation of the svmType of para on one loaded data set. The
+ * loaded rows are shuffled and split into para.getCrossValidationFolds() folds
+ * of row numbers. The training rows of a fold are a view of the data set
+ * (DataSetHandler.rowView), the vectors are not copied. The folds are trained
+ * and tested at the same time on para.getWorkerThreads() threads, no model is
+ * written.
+ *
+ * Binary classification (svmType 0, 4, 9) is tested with the hinge loss and
+ * the zero-one error, logistic regression (10) with the log loss and the
+ * zero-one error, regression (1) with the squared error. The
+ * multi-class schemes one-vs.-one (2) and one-vs.-others (3) decide as their
+ * Prediction classes, their test loss is the zero-one error. para gets the
+ * training results averaged over the folds and the test results over all
+ * held-out rows.
+ */
+public class CrossValidation extends Training {
+
+  private static final Logger log = LoggerFactory.getLogger(CrossValidation.class);
+
+  /**
+   * Results of one fold.
+   */
+  private static final class FoldResult {
+    private double normValue;
+    private double lossValue;
+    private double zeroOneError;
+    private double objValue;
+    private double testLoss;
+    private double testErrors;
+    private int testRows;
+  }
+
+  /**
+   * Cross-validates the svmType of para.
+   *
+   * @param dataset
+   *          loaded data set
+   * @param para
+   *          parameters, with the number of folds
+   * @return null, the fold models are not kept
+   */
+  @Override
+  public WeightVector training(DataSetHandler dataset, SVMParameters para) {
+    final int type = para.getClassificationType();
+    if (type > 4 && 9 != type && 10 != type) {
+      throw new IllegalArgumentException(
+          "Cross-validation supports svmType 0 - 4, 9 and 10");
+    }
+    int n = dataset.getLabels().size();
+    int k = para.getCrossValidationFolds();
+    if (k < 2 || k > n) {
+      throw new IllegalArgumentException("Cross-validation needs 2 to " + n
+                                         + " folds");
+    }
+
+    // random folds of the loaded rows
+    int[] rows = new int[n];
+    int pos = 0;
+    for (Integer r : dataset.getLabels().keySet()) {
+      rows[pos++] = r;
+    }
+    Random rand = new Random();
+    for (int i = n - 1; i > 0; i--) {
+      int j = rand.nextInt(i + 1);
+      int tmp = rows[i];
+      rows[i] = rows[j];
+      rows[j] = tmp;
+    }
+
+    // the packed rows are built before the folds share them
+    final Double[] labelList = labelList(dataset);
+    final PackedSamples samples = dataset.getPackedSamples();
+    final double[] labels = dataset.getLabelArray();
+    int threads = Math.max(1, Math.min(para.getWorkerThreads(), k));
+    log.info(k + "-fold cross-validation of " + n + " samples on " + threads
+             + " threads");
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<FoldResult>> results = new ArrayList<Future<FoldResult>>(k);
+    for (int f = 0; f < k; f++) {
+      int from = (int) ((long) f * n / k);
+      int to = (int) ((long) (f + 1) * n / k);
+      final int[] testRows = Arrays.copyOfRange(rows, from, to);
+      int[] trainRows = new int[n - testRows.length];
+      System.arraycopy(rows, 0, trainRows, 0, from);
+      System.arraycopy(rows, to, trainRows, from, n - to);
+      Arrays.sort(testRows);
+      Arrays.sort(trainRows);
+
+      final DataSetHandler foldView = dataset.rowView(trainRows,
+        new OneVsOthersLabels(dataset.getLabels(), null, trainRows));
+      final SVMParameters foldPara = para.copy();
+      foldPara.setModelFileName(null);
+      // the view renumbers the rows
+      foldPara.setRandomPool(null);
+      if (threads > 1) {
+        // the folds already use the threads
+        foldPara.setThreadNumber(1);
+      }
+      results.add(executor.submit(new Callable<FoldResult>() {
+        @Override
+        public FoldResult call() {
+          return trainFold(type, foldView, foldPara, labelList, samples, labels,
+            testRows);
+        }
+      }));
+    }
+
+    List<FoldResult> folds = new ArrayList<FoldResult>(k);
+    try {
+      for (Future<FoldResult> result : results) {
+        folds.add(result.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Cross-validation interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Cross-validation failed", e.getCause());
+    } finally {
+      executor.shutdown();
+    }
+
+    // average the training results, sum the test results
+    double normValue = 0.0;
+    double lossValue = 0.0;
+    double zeroOneError = 0.0;
+    double objValue = 0.0;
+    double testLoss = 0.0;
+    double testErrors = 0.0;
+    for (int f = 0; f < k; f++) {
+      FoldResult fold = folds.get(f);
+      normValue += fold.normValue;
+      lossValue += fold.lossValue;
+      zeroOneError += fold.zeroOneError;
+      objValue += fold.objValue;
+      testLoss += fold.testLoss;
+      testErrors += fold.testErrors;
+      log.info("Fold " + f + ": avg test loss " + fold.testLoss / fold.testRows
+               + (1 == type ? "" : ", zero-one error " + fold.testErrors
+                                                         / fold.testRows));
+    }
+    para.setNormValue(normValue / k);
+    para.setLossValue(lossValue / k);
+    para.setZeroOneError(zeroOneError / k);
+    para.setObjValue(objValue / k);
+    para.setTestLoss(testLoss / n);
+    para.setTestError(testErrors / n);
+    return null;
+  }
+
+  /**
+   * Trains a fold on its training view and tests it on its held-out rows.
+   */
+  private static FoldResult trainFold(int type,
+                                      DataSetHandler foldView,
+                                      SVMParameters foldPara,
+                                      Double[] labelList,
+                                      PackedSamples samples,
+                                      double[] labels,
+                                      int[] testRows) {
+    FoldResult result = new FoldResult();
+    if (2 == type || 3 == type) {
+      List<DataSetHandler> problems = 2 == type ? TrainingMultiClassOneVsOne
+          .problems(foldView, labelList) : TrainingMultiClassOneVsOthers.problems(
+        foldView, labelList);
+      List<WeightVector> models = trainBinaryProblems(problems, foldPara);
+      double[] scores = new double[models.size()];
+      double[] vote = new double[labelList.length];
+      for (int i = 0; i < testRows.length; i++) {
+        int r = testRows[i];
+        for (int m = 0; m < scores.length; m++) {
+          scores[m] = models.get(m).times(samples.indices(r), samples.values(r));
+        }
+        int c = 2 == type ? oneVsOneClass(scores, vote) : oneVsOthersClass(scores,
+          vote);
+        if (labelList[c].doubleValue() != labels[r]) {
+          result.testErrors += 1.0;
+        }
+      }
+      result.testLoss = result.testErrors;
+    } else {
+      WeightVector w = TrainingFactory.getInstance(type).training(foldView,
+        foldPara);
+      ObjectiveEvaluator evaluator = new ObjectiveEvaluator(foldPara
+          .getWorkerThreads());
+      ObjectiveEvaluator.Result test;
+      try {
+        test = evaluator.evaluate(w, samples, labels, testRows,
+          ObjectiveEvaluator.testLossType(type), null);
+      } finally {
+        evaluator.shutdown();
+      }
+      result.testLoss = test.loss;
+      result.testErrors = test.errors;
+    }
+    result.testRows = testRows.length;
+    result.normValue = foldPara.getNormValue();
+    result.lossValue = foldPara.getLossValue();
+    result.zeroOneError = foldPara.getZeroOneError();
+    result.objValue = foldPara.getObjValue();
+    return result;
+  }
+
+  /**
+   * @return the class with the most votes of the pairwise scores (see
+   *         PredictionMultiClassOneVsOne)
+   */
+  private static int oneVsOneClass(double[] scores, double[] vote) {
+    Arrays.fill(vote, 0.0);
+    int pos = 0;
+    for (int i = 0; i < vote.length; i++) {
+      for (int j = i + 1; j < vote.length; j++) {
+        if (scores[pos++] > 0) {
+          ++vote[i];
+        } else {
+          ++vote[j];
+        }
+      }
+    }
+    return argMax(vote);
+  }
+
+  /**
+   * @return the class with the largest vote of the one-vs.-others scores, a
+   *         negative score is divided among the other classes (see
+   *         PredictionMultiClassOneVsOthers)
+   */
+  private static int oneVsOthersClass(double[] scores, double[] vote) {
+    Arrays.fill(vote, 0.0);
+    for (int i = 0; i < vote.length; i++) {
+      if (scores[i] > 0) {
+        vote[i] += scores[i];
+      } else {
+        for (int j = 0; j < vote.length; j++) {
+          if (j != i) {
+            vote[j] += Math.abs(scores[i]) / (vote.length - 1);
+          }
+        }
+      }
+    }
+    return argMax(vote);
+  }
+
+  private static int argMax(double[] vote) {
+    int max = 0;
+    for (int i = 1; i < vote.length; i++) {
+      if (vote[i] > vote[max]) {
+        max = i;
+      }
+    }
+    return max;
+  }
+}
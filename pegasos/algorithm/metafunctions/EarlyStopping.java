@@ -0,0 +1,153 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.algorithm.metafunctions;
+
+import java.util.Random;
+
+import org.apache.mahout.classifier.svm.datastore.PackedSamples;
+import org.apache.mahout.classifier.svm.parameters.SVMParameters;
+import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Convergence test of the Pegasos trainers. A reservoir sample of the rows is
+ * held out of training, and the primal objective lambda / 2 * |w|^2 + avg loss
+ * on it is estimated at the iterations 1000, 2000, 4000, ... Training stops
+ * once the relative improvement between two checkpoints is below
+ * para.getEarlyStopTolerance(). The estimates cost O(reservoir * log(maxIter))
+ * inner products.
+ */
+final class EarlyStopping {
+
+  private static final Logger log = LoggerFactory.getLogger(EarlyStopping.class);
+  // iteration of the first checkpoint, the following ones double it
+  private static final long FIRST_CHECKPOINT = 1000;
+  // held-out samples if para.getValidateExampleNumber() is not set
+  private static final int DEFAULT_RESERVOIR = 1000;
+
+  private final PackedSamples samples;
+  private final double[] labels;
+  private final double lambda;
+  private final double tolerance;
+  // hinge loss for classification, absolute loss for regression
+  private final boolean regression;
+  private final int[] heldOut;
+  private final int[] trainRows;
+  private long nextCheckpoint = FIRST_CHECKPOINT;
+  private double lastObjective = Double.NaN;
+
+  private EarlyStopping(PackedSamples samples,
+                        double[] labels,
+                        SVMParameters para,
+                        boolean regression,
+                        int[] heldOut,
+                        int[] trainRows) {
+    this.samples = samples;
+    this.labels = labels;
+    this.lambda = para.getLambda();
+    this.tolerance = para.getEarlyStopTolerance();
+    this.regression = regression;
+    this.heldOut = heldOut;
+    this.trainRows = trainRows;
+  }
+
+  /**
+   * Holds out a reservoir of the rows 0..n-1: para.getValidateExampleNumber()
+   * rows (1000 if not set), at most a fifth of the rows.
+   *
+   * @return null if early stopping is off, or not possible (batch fetching with
+   *         a random pool, too few samples)
+   */
+  static EarlyStopping create(SVMParameters para,
+                              int n,
+                              PackedSamples samples,
+                              double[] labels,
+                              boolean regression,
+                              Random rand) {
+    if (para.getEarlyStopTolerance() <= 0.0) {
+      return null;
+    }
+    int m = para.getValidateExampleNumber() > 0 ? para.getValidateExampleNumber()
+        : DEFAULT_RESERVOIR;
+    m = Math.min(m, n / 5);
+    if (null != para.getRandomPool() || m < 1) {
+      log.warn("Early stopping needs the samples in memory, it is off");
+      return null;
+    }
+
+    // reservoir sampling
+    int[] heldOut = new int[m];
+    for (int t = 0; t < n; t++) {
+      if (t < m) {
+        heldOut[t] = t;
+      } else {
+        int s = rand.nextInt(t + 1);
+        if (s < m) {
+          heldOut[s] = t;
+        }
+      }
+    }
+    boolean[] isHeldOut = new boolean[n];
+    for (int j = 0; j < m; j++) {
+      isHeldOut[heldOut[j]] = true;
+    }
+    int[] trainRows = new int[n - m];
+    int pos = 0;
+    for (int t = 0; t < n; t++) {
+      if (!isHeldOut[t]) {
+        trainRows[pos++] = t;
+      }
+    }
+    return new EarlyStopping(samples, labels, para, regression, heldOut, trainRows);
+  }
+
+  /**
+   * @return a random row that is not held out
+   */
+  int trainRow(Random rand) {
+    return this.trainRows[rand.nextInt(this.trainRows.length)];
+  }
+
+  /**
+   * Checks the objective after iteration i, if it is a checkpoint.
+   *
+   * @return true if training can stop after iteration i
+   */
+  boolean converged(WeightVector w, int i) {
+    if (i + 1 != this.nextCheckpoint) {
+      return false;
+    }
+    this.nextCheckpoint *= 2;
+
+    double loss = 0.0;
+    for (int j = 0; j < this.heldOut.length; j++) {
+      int r = this.heldOut[j];
+      double prediction = w.times(this.samples.indices(r), this.samples.values(r));
+      if (this.regression) {
+        loss += Math.abs(this.labels[r] - prediction);
+      } else {
+        loss += Math.max(0.0, 1 - this.labels[r] * prediction);
+      }
+    }
+    double objective = this.lambda / 2.0 * w.getSnorm() + loss / this.heldOut.length;
+    double last = this.lastObjective;
+    this.lastObjective = objective;
+    log.debug("Held-out objective at iteration " + (i + 1) + ": " + objective);
+    return !Double.isNaN(last)
+           && (last - objective) <= this.tolerance * Math.abs(last);
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.algorithm.metafunctions;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.mahout.classifier.svm.datastore.PackedSamples;
+import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
+
+/**
+ * Evaluates the hinge loss of a mini-batch on several threads. The batch is
+ * split into one block per thread, and each block computes the inner products
+ * of its samples with the (unchanged) weights and the sub-gradient coefficient
+ * of each sample. The caller then applies the update of the whole batch in one
+ * pass, without sparse temporaries for the sum of the sub-gradients.
+ *
+ * The worker threads and their blocks are created once. The caller evaluates
+ * the first block itself, hands the others to the waiting workers by bumping a
+ * generation counter and waits for a count of outstanding blocks, so a batch
+ * does not allocate tasks, futures or barrier nodes. The samples and the
+ * weights are only read by the blocks.
+ */
+final class MiniBatchEvaluator {
+
+  // smaller batches are evaluated serially, the hand-off costs more
+  static final int MIN_PARALLEL_BATCH = 64;
+
+  private final Block[] blocks;
+  // the worker of blocks[b + 1], blocks[0] is evaluated by the caller
+  private final Thread[] workers;
+  private final PackedSamples samples;
+  private final double[] labels;
+  // blocks the workers have not finished yet
+  private final AtomicInteger pending = new AtomicInteger();
+  // bumped for each batch, the write publishes the batch to the workers
+  private volatile int generation;
+  private volatile boolean stopped;
+  private volatile Thread caller;
+  private volatile Throwable failure;
+  private WeightVector w;
+  private int[] batch;
+  // sub-gradient coefficient of each sample of the last batch, 0 if its loss is 0
+  private double[] coefficients = new double[0];
+
+  /**
+   * @param threads
+   *          threads including the caller, the others are daemon threads so
+   *          that a failed training does not keep the JVM alive
+   * @param samples
+   *          samples
+   * @param labels
+   *          labels by row number
+   */
+  MiniBatchEvaluator(int threads, PackedSamples samples, double[] labels) {
+    this.samples = samples;
+    this.labels = labels;
+    this.blocks = new Block[threads];
+    for (int b = 0; b < threads; b++) {
+      this.blocks[b] = new Block();
+    }
+    this.workers = new Thread[threads - 1];
+    for (int t = 0; t < this.workers.length; t++) {
+      final Block block = this.blocks[t + 1];
+      this.workers[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          work(block);
+        }
+      }, "mini-batch");
+      this.workers[t].setDaemon(true);
+      this.workers[t].start();
+    }
+  }
+
+  /**
+   * Evaluates a batch: the sub-gradient of the batch is the sum of y_r / k *
+   * x_r over the samples r with a positive hinge loss 1 - y_r * w.x_r.
+   *
+   * @param w
+   *          weights, not changed while the batch is evaluated
+   * @param rows
+   *          row numbers of the samples in the batch
+   * @return number of samples with a positive loss
+   */
+  int subGradient(WeightVector w, int[] rows) {
+    int k = rows.length;
+    if (this.coefficients.length != k) {
+      this.coefficients = new double[k];
+    }
+    this.w = w;
+    this.batch = rows;
+    int threads = this.blocks.length;
+    for (int b = 0; b < threads; b++) {
+      this.blocks[b].from = (int) ((long) b * k / threads);
+      this.blocks[b].to = (int) ((long) (b + 1) * k / threads);
+    }
+    this.caller = Thread.currentThread();
+    this.pending.set(this.workers.length);
+    this.generation++;
+    for (Thread worker : this.workers) {
+      LockSupport.unpark(worker);
+    }
+
+    this.blocks[0].evaluate();
+    while (0 != this.pending.get()) {
+      LockSupport.park(this);
+      if (Thread.currentThread().isInterrupted()) {
+        throw new IllegalStateException("Mini-batch evaluation interrupted");
+      }
+    }
+    if (null != this.failure) {
+      throw new IllegalStateException("Mini-batch evaluation failed", this.failure);
+    }
+
+    int count = 0;
+    for (Block block : this.blocks) {
+      count += block.count;
+    }
+    return count;
+  }
+
+  /**
+   * w = w + eta * sub-gradient of the last batch.
+   */
+  void addGradient(WeightVector w, double eta) {
+    double[] coef = this.coefficients;
+    for (int j = 0; j < coef.length; j++) {
+      if (0.0 != coef[j]) {
+        int r = this.batch[j];
+        w.add(this.samples.indices(r), this.samples.values(r), eta * coef[j]);
+      }
+    }
+  }
+
+  /**
+   * Stops the threads, callers do this in a finally block.
+   */
+  void shutdown() {
+    this.stopped = true;
+    for (Thread worker : this.workers) {
+      LockSupport.unpark(worker);
+    }
+  }
+
+  /**
+   * Loop of a worker thread: waits for the next generation, evaluates its block
+   * and wakes the caller up after the last block.
+   */
+  private void work(Block block) {
+    int seen = 0;
+    while (true) {
+      while (seen == this.generation && !this.stopped) {
+        LockSupport.park(this);
+      }
+      if (this.stopped) {
+        return;
+      }
+      seen = this.generation;
+      try {
+        block.evaluate();
+      } catch (Throwable e) {
+        this.failure = e;
+      }
+      if (0 == this.pending.decrementAndGet()) {
+        LockSupport.unpark(this.caller);
+      }
+    }
+  }
+
+  /**
+   * Coefficients of the samples batch[from..to-1] of the current batch.
+   */
+  private final class Block {
+
+    private int from;
+    private int to;
+    // samples of the block with a positive loss
+    private int count;
+
+    void evaluate() {
+      WeightVector weights = MiniBatchEvaluator.this.w;
+      int[] rows = MiniBatchEvaluator.this.batch;
+      double[] coef = MiniBatchEvaluator.this.coefficients;
+      int k = rows.length;
+      int positive = 0;
+      for (int j = this.from; j < this.to; j++) {
+        int r = rows[j];
+        double y = MiniBatchEvaluator.this.labels[r];
+        if (1 - y * weights.times(MiniBatchEvaluator.this.samples.indices(r),
+          MiniBatchEvaluator.this.samples.values(r)) > 0.0) {
+          coef[j] = y / k;
+          positive++;
+        } else {
+          coef[j] = 0.0;
+        }
+      }
+      this.count = positive;
+    }
+  }
+}
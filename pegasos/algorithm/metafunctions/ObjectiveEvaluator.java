@@ -0,0 +1,246 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.algorithm.metafunctions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.mahout.classifier.svm.datastore.PackedSamples;
+import org.apache.mahout.classifier.svm.parameters.SVMParameters;
+import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
+
+/**
+ * Sums the loss and the zero-one errors of a weight vector over rows of a data
+ * set, and sets the training results of the trainers from them. The rows are
+ * split into blocks that are evaluated on a thread pool, each block sums into
+ * local primitives, and the block sums are added in block order, so the
+ * result does not depend on the number of threads.
+ *
+ * The weights are only read, so they must not change during evaluate().
+ *
+ * The pool is started by the first evaluation that needs it and kept for the
+ * following ones (e.g. the validation checkpoints and the final pass of a
+ * training run), call shutdown() when the evaluator is not used any more. With
+ * one thread the rows are summed in the calling thread, without a pool.
+ */
+final class ObjectiveEvaluator {
+
+  /** hinge loss max(0, 1 - y w.x), an error if the loss is >= 1 */
+  static final int HINGE = 0;
+  /** squared loss (y - w.x)^2, no errors */
+  static final int SQUARED = 1;
+  /** squared hinge loss max(0, 1 - y w.x)^2, an error if y w.x <= 0 */
+  static final int SQUARED_HINGE = 2;
+  /** logistic loss log(1 + exp(-y w.x)), an error if y w.x <= 0 */
+  static final int LOGISTIC = 3;
+
+  /**
+   * @return the loss held-out rows of svmType type are tested with: SQUARED for
+   *         regression, LOGISTIC for logistic regression, HINGE otherwise
+   */
+  static int testLossType(int type) {
+    if (1 == type) {
+      return SQUARED;
+    }
+    return 10 == type ? LOGISTIC : HINGE;
+  }
+
+  // smaller blocks of rows are not worth a task
+  private static final int MIN_BLOCK_ROWS = 8192;
+
+  private final int threads;
+  // started by the first parallel evaluation, see shutdown()
+  private ExecutorService executor;
+
+  /**
+   * @param threads
+   *          threads of the evaluation
+   */
+  ObjectiveEvaluator(int threads) {
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Sums of an evaluation.
+   */
+  static final class Result {
+    final double loss;
+    final double errors;
+
+    Result(double loss, double errors) {
+      this.loss = loss;
+      this.errors = errors;
+    }
+  }
+
+  /**
+   * @param w
+   *          weights
+   * @param samples
+   *          samples
+   * @param labels
+   *          labels by row number
+   * @param rows
+   *          row numbers of the evaluated samples
+   * @param lossType
+   *          HINGE, SQUARED, SQUARED_HINGE or LOGISTIC
+   * @param scores
+   *          gets w.x of rows[i] at i if it is not null
+   * @return sum of the losses and number of errors
+   */
+  Result evaluate(final WeightVector w,
+                  final PackedSamples samples,
+                  final double[] labels,
+                  final int[] rows,
+                  final int lossType,
+                  final double[] scores) {
+    int blocks = Math.max(1, Math.min(this.threads, rows.length / MIN_BLOCK_ROWS));
+    if (1 == blocks) {
+      return sum(w, samples, labels, rows, 0, rows.length, lossType, scores);
+    }
+
+    if (null == this.executor) {
+      this.executor = Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "objective");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    List<Future<Result>> results = new ArrayList<Future<Result>>(blocks);
+    for (int b = 0; b < blocks; b++) {
+      final int from = b * rows.length / blocks;
+      final int to = (b + 1) * rows.length / blocks;
+      results.add(this.executor.submit(new Callable<Result>() {
+        @Override
+        public Result call() {
+          return sum(w, samples, labels, rows, from, to, lossType, scores);
+        }
+      }));
+    }
+    try {
+      double loss = 0.0;
+      double errors = 0.0;
+      for (Future<Result> result : results) {
+        Result sums = result.get();
+        loss += sums.loss;
+        errors += sums.errors;
+      }
+      return new Result(loss, errors);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Evaluation interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Evaluation failed", e.getCause());
+    }
+  }
+
+  /**
+   * Sets the training results of w over rows in para, as the trainers report
+   * them: |w|^2, the average loss, the objective (lambda / 2 * |w|^2 + sum of
+   * the losses) / n and the zero-one error.
+   */
+  void setTrainingResults(WeightVector w,
+                          PackedSamples samples,
+                          double[] labels,
+                          int[] rows,
+                          int lossType,
+                          SVMParameters para) {
+    int n = rows.length;
+    Result result = evaluate(w, samples, labels, rows, lossType, null);
+    para.setNormValue(w.getSnorm());
+    para.setLossValue(result.loss / n);
+    para.setObjValue((para.getNormValue() * para.getLambda() / 2.0 + result.loss) / n);
+    para.setZeroOneError(result.errors / n);
+  }
+
+  /**
+   * setTrainingResults on para.getWorkerThreads() threads, for trainers that
+   * have no evaluator of their own.
+   */
+  static void trainingResults(WeightVector w,
+                              PackedSamples samples,
+                              double[] labels,
+                              int[] rows,
+                              int lossType,
+                              SVMParameters para) {
+    ObjectiveEvaluator evaluator = new ObjectiveEvaluator(para.getWorkerThreads());
+    try {
+      evaluator.setTrainingResults(w, samples, labels, rows, lossType, para);
+    } finally {
+      evaluator.shutdown();
+    }
+  }
+
+  /**
+   * Stops the threads of the evaluator, if it has started them.
+   */
+  void shutdown() {
+    if (null != this.executor) {
+      this.executor.shutdown();
+      this.executor = null;
+    }
+  }
+
+  /**
+   * @return the loss and the errors of rows[from..to-1]
+   */
+  private static Result sum(WeightVector w,
+                            PackedSamples samples,
+                            double[] labels,
+                            int[] rows,
+                            int from,
+                            int to,
+                            int lossType,
+                            double[] scores) {
+    double loss = 0.0;
+    double errors = 0.0;
+    for (int i = from; i < to; i++) {
+      int r = rows[i];
+      double prediction = w.times(samples.indices(r), samples.values(r));
+      if (null != scores) {
+        scores[i] = prediction;
+      }
+      if (SQUARED == lossType) {
+        double residual = labels[r] - prediction;
+        loss += residual * residual;
+      } else if (LOGISTIC == lossType) {
+        double z = labels[r] * prediction;
+        loss += TrainingLogisticRegressionTron.logOnePlusExp(-z);
+        if (z <= 0.0) {
+          errors += 1.0;
+        }
+      } else {
+        double curLoss = 1 - labels[r] * prediction;
+        if (curLoss > 0.0) {
+          loss += SQUARED_HINGE == lossType ? curLoss * curLoss : curLoss;
+          if (curLoss >= 1.0) {
+            errors += 1.0;
+          }
+        }
+      }
+    }
+    return new Result(loss, errors);
+  }
+}
@@ -30,8 +30,38 @@ import org.apache.mahout.math.SequentialAccessSparseVector;
  */
 public abstract class Prediction {
   
+  // feature hashing of the lines passed to oneLineClassifier(weightList, value)
+  private int hashBits;
+  
   public abstract void prediction(DataSetHandler dataset, SVMParameters para) throws IOException;
   
+  /**
+   * Quantizes all models for prediction, see WeightVector.quantize.
+   * 
+   * @param weightList
+   *          models
+   * @param precision
+   *          WeightVector.PRECISION_DOUBLE, PRECISION_FLOAT or PRECISION_INT8
+   */
+  public static void quantize(Map<String,WeightVector> weightList, int precision) {
+    for (WeightVector w : weightList.values()) {
+      w.quantize(precision);
+    }
+  }
+  
+  /**
+   * @param hashBits
+   *          bits of the hashed feature space the models were trained with, 0
+   *          if the features are not hashed, see SVMParameters.getHashBits
+   */
+  public void setHashBits(int hashBits) {
+    this.hashBits = hashBits;
+  }
+  
+  public int getHashBits() {
+    return this.hashBits;
+  }
+  
   public int oneLineClassifier(Map<String,WeightVector> weightList,
                                SequentialAccessSparseVector row,
                                Integer[] labels,
@@ -48,27 +48,27 @@ public class PredictionBinaryClassification extends Prediction {
     WeightVector w = new WeightVector(para.getModelFileName());
     
     // Calculate test_loss and test_error
+    int n = testDataset.getLabels().size();
+    double[] scores = new double[n];
+    ObjectiveEvaluator evaluator = new ObjectiveEvaluator(para.getWorkerThreads());
+    ObjectiveEvaluator.Result result;
+    try {
+      result = evaluator.evaluate(w, testDataset.getPackedSamples(), testDataset
+          .getLabelArray(), Training.evaluationRows(null, n),
+        ObjectiveEvaluator.HINGE, scores);
+    } finally {
+      evaluator.shutdown();
+    }
     para.setTestLoss(0.0);
     para.setTestError(0.0);
-    List<Integer> predictedLabelList = new ArrayList<Integer>();
-    for (int i = 0; i < testDataset.getLabels().size(); ++i) {
-      Double predictedLabel = w.times(testDataset.getDataset().getRow(i));
-      predictedLabelList.add(predictedLabel > 0 ? 1 : -1);
-      double curLoss = 1 - testDataset.getLabels().get(i) * predictedLabel;
-      if (curLoss < 0.0) {
-        curLoss = 0.0;
-      }
-      
-      para.setTestLoss(para.getTestLoss() + curLoss);
-      
-      if (curLoss >= 1.0) {
-        para.setTestError(para.getTestError() + 1.0);
-      }
+    if (0 != n) {
+      para.setTestLoss(result.loss / n);
+      para.setTestError(result.errors / n);
     }
     
-    if (0 != testDataset.getLabels().size()) {
-      para.setTestLoss(para.getTestLoss() / testDataset.getLabels().size());
-      para.setTestError(para.getTestError() / testDataset.getLabels().size());
+    List<Integer> predictedLabelList = new ArrayList<Integer>(n);
+    for (int i = 0; i < n; ++i) {
+      predictedLabelList.add(scores[i] > 0 ? 1 : -1);
     }
     
     if (null != para.getOutFile()) {
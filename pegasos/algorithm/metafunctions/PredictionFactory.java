@@ -19,6 +19,27 @@ public class PredictionFactory {
         return new PredictionMultiClassOneVsOne();
       case 3:
         return new PredictionMultiClassOneVsOthers();
+      case 4:
+        // binary classification trained with validation
+        return new PredictionLargeScaleDataset();
+      case 5:
+        // one-vs.-one models, decision DAG
+        return new PredictionMultiClassDAG();
+      case 6:
+        // binary classification trained with averaged SGD
+        return new PredictionLargeScaleDataset();
+      case 7:
+        // binary classification trained with Hogwild parallel SGD
+        return new PredictionLargeScaleDataset();
+      case 8:
+        // one-vs.-others models trained in one pass
+        return new PredictionMultiClassOneVsOthers();
+      case 9:
+        // binary classification trained with dual coordinate descent
+        return new PredictionLargeScaleDataset();
+      case 10:
+        // logistic regression, probabilities
+        return new PredictionLogisticRegression();
       default:
         throw new RuntimeException();
     }
@@ -55,6 +55,7 @@ public class PredictionLargeScaleDataset extends Prediction {
   @Override
   public void prediction(DataSetHandler dataset, SVMParameters para) throws IOException {
     WeightVector w = new WeightVector(para.getModelFileName());
+    w.quantize(para.getModelPrecision());
     
     BufferedReader in = null;
     para.setTestLoss(0.0);
@@ -74,7 +75,7 @@ public class PredictionLargeScaleDataset extends Prediction {
         
         row = new SequentialAccessSparseVector(Integer.MAX_VALUE, 10);
         
-        label = (int) LibsvmFormatParser.str2Vector(str, row);
+        label = (int) LibsvmFormatParser.str2Vector(str, row, para.getHashBits());
         
         // empty line or do NOT have label, continue.
         if (row.size() < 1 || label == Double.MAX_VALUE) {
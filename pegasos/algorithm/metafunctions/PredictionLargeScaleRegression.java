@@ -54,6 +54,7 @@ public class PredictionLargeScaleRegression extends Prediction {
   public void prediction(DataSetHandler dataset, SVMParameters para) throws IOException {
     // Read the w from model file
     WeightVector w = new WeightVector(para.getModelFileName());
+    w.quantize(para.getModelPrecision());
     
     BufferedReader in = null;
     para.setTestLoss(0.0);
@@ -72,7 +73,7 @@ public class PredictionLargeScaleRegression extends Prediction {
       while ((str = in.readLine()) != null) {
         row = new SequentialAccessSparseVector(Integer.MAX_VALUE, 10);
         
-        label = LibsvmFormatParser.str2Vector(str, row);
+        label = LibsvmFormatParser.str2Vector(str, row, para.getHashBits());
         
         // empty line or do NOT have label, continue.
         if (row.size() < 1 || label == Double.MAX_VALUE) {
@@ -0,0 +1,120 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.algorithm.metafunctions;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
+import org.apache.mahout.classifier.svm.datastore.GeneralWriter;
+import org.apache.mahout.classifier.svm.datastore.LibsvmFormatParser;
+import org.apache.mahout.classifier.svm.datastore.NullInputString;
+import org.apache.mahout.classifier.svm.parameters.SVMParameters;
+import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sequential testing of a logistic regression model (see
+ * TrainingLogisticRegressionTron), line by line like
+ * PredictionLargeScaleDataset. The test loss is the average log loss, and the
+ * output file gets P(y = 1 | x) = 1 / (1 + exp(-w.x)) of each sample.
+ */
+public class PredictionLogisticRegression extends Prediction {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(PredictionLogisticRegression.class);
+
+  /**
+   * Sequential testing of a logistic regression model.
+   *
+   * @param dataset
+   * @param para
+   *          parameters
+   * @throws IOException
+   */
+  @Override
+  public void prediction(DataSetHandler dataset, SVMParameters para) throws IOException {
+    WeightVector w = new WeightVector(para.getModelFileName());
+    w.quantize(para.getModelPrecision());
+
+    BufferedReader in = null;
+    para.setTestLoss(0.0);
+    para.setTestError(0.0);
+    String str = null;
+    int rowNum = 0;
+    double label = 0.0;
+    Vector row = null;
+    List<Double> probabilityList = new ArrayList<Double>();
+    try {
+      in = new BufferedReader(new FileReader(dataset.getFileName()));
+      log.info("Sequential Testing (one point denotes 1000 samples!");
+
+      while ((str = in.readLine()) != null) {
+
+        row = new SequentialAccessSparseVector(Integer.MAX_VALUE, 10);
+
+        try {
+          label = LibsvmFormatParser.str2Vector(str, row, para.getHashBits());
+        } catch (NullInputString e) {
+          throw new IOException("Cannot parse test line " + (rowNum + 1) + ": "
+                                + e.getMessage(), e);
+        }
+
+        // empty line or do NOT have label, continue.
+        if (row.size() < 1 || label == Double.MAX_VALUE) {
+          continue;
+        }
+
+        double z = w.times(row);
+        probabilityList.add(1.0 / (1.0 + Math.exp(-z)));
+        para.setTestLoss(para.getTestLoss()
+                         + TrainingLogisticRegressionTron.logOnePlusExp(-label * z));
+        if (label * z <= 0.0) {
+          para.setTestError(para.getTestError() + 1.0);
+        }
+
+        rowNum++;
+        if (0 == rowNum % 1000) {
+          log.info("Echo line: " + rowNum);
+        }
+        if (0 == rowNum % 10000 && null != para.getOutFile()) {
+          GeneralWriter.writer(para.getOutFile(), probabilityList);
+          probabilityList.clear();
+        }
+      }
+    } finally {
+      // a read error is passed on, the test results would be incomplete
+      if (null != in) {
+        in.close();
+      }
+    }
+
+    if (0 != rowNum) {
+      para.setTestLoss(para.getTestLoss() / rowNum);
+      para.setTestError(para.getTestError() / rowNum);
+    }
+
+    if (null != para.getOutFile()) {
+      GeneralWriter.writer(para.getOutFile(), probabilityList);
+    }
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.algorithm.metafunctions;
+
+import java.util.Map;
+
+import org.apache.hadoop.io.Text;
+import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
+import org.apache.mahout.classifier.svm.datastore.LibsvmFormatParser;
+import org.apache.mahout.classifier.svm.datastore.NullInputString;
+import org.apache.mahout.classifier.svm.parameters.SVMParameters;
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sequential Multi-classification one-vs.-one with decision DAG. It uses the
+ * models trained by the one-vs.-one scheme, but only evaluates K - 1 pairwise
+ * classifiers per sample instead of all K(K-1)/2: starting from the pair
+ * (first, last) class, each classifier eliminates the loser, until one class is
+ * left.
+ */
+public class PredictionMultiClassDAG extends PredictionMultiClassOneVsOne {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(PredictionMultiClassDAG.class);
+
+  // pairwise models of the last weight list in the order of W0_1, W0_2, ...
+  private WeightVector[] pairModels;
+  private Map<String,WeightVector> pairModelsSource;
+
+  /**
+   * Decision DAG Multi-classification. Given a set of trained pairwise models,
+   * and a sample, this function will predict the label and return whether the
+   * prediction is correct or not.
+   *
+   * @param weightList
+   *          List of trained weights for each pair.
+   * @param row
+   * @param labels
+   * @param trueLabel
+   * @return return correct -> 0, incorrect -> 1
+   */
+  @Override
+  public int oneLineClassifier(Map<String,WeightVector> weightList,
+                               SequentialAccessSparseVector row,
+                               Integer[] labels,
+                               int trueLabel) {
+    int categoriesNum = labels.length;
+    int winner = decide(getPairModels(weightList, labels, categoriesNum), row,
+      categoriesNum);
+    return labels[winner].intValue() == trueLabel ? 0 : 1;
+  }
+
+  /**
+   * Decision DAG Multi-classification.
+   *
+   * @param weightList
+   *          List of trained weights for each pair.
+   * @param row
+   * @param labels
+   * @return return predicted label
+   */
+  @Override
+  public int oneLineClassifier(Map<String,WeightVector> weightList,
+                               SequentialAccessSparseVector row,
+                               Integer[] labels) {
+    int categoriesNum = labels.length;
+    int winner = decide(getPairModels(weightList, labels, categoriesNum), row,
+      categoriesNum);
+    return labels[winner].intValue();
+  }
+
+  /**
+   * Decision DAG Multi-classification for Map/Reduce, the model keys use class
+   * indices.
+   *
+   * @param weightList
+   *          List of trained weights for each pair.
+   * @param value
+   *          one test sample
+   * @return predicted class index and correct -> 0, incorrect -> 1
+   */
+  @Override
+  public String oneLineClassifier(Map<String,WeightVector> weightList,
+                                  Text value) {
+    int classiferNum = weightList.size();
+    int categoriesNum = (int) ((Math.sqrt(8 * classiferNum + 1) + 1) / 2.0);
+    int label = -1;
+    SequentialAccessSparseVector row = new SequentialAccessSparseVector(
+        Integer.MAX_VALUE, 10);
+
+    if (value.getLength() < 1) {
+      return null;
+    } else {
+      try {
+        label = (int) LibsvmFormatParser.str2Vector(value.toString(), row,
+          this.getHashBits());
+      } catch (NullInputString e) {
+        log.error(e.getMessage());
+      }
+    }
+
+    // if the line does not follow the format of libsvm.
+    if (row.size() < 1) {
+      return null;
+    }
+
+    int winner = decide(getPairModels(weightList, null, categoriesNum), row,
+      categoriesNum);
+    return winner + "_" + (winner == label ? 0 : 1);
+  }
+
+  /**
+   * Walks the decision DAG.
+   *
+   * @return index of the predicted class
+   */
+  private static int decide(WeightVector[] models,
+                            SequentialAccessSparseVector row,
+                            int categoriesNum) {
+    int first = 0;
+    int last = categoriesNum - 1;
+    while (first < last) {
+      // position of the pair (first, last) in W0_1, W0_2, ...
+      int pos = first * (2 * categoriesNum - first - 1) / 2 + last - first - 1;
+      if (models[pos].times(row) > 0) {
+        last--;
+      } else {
+        first++;
+      }
+    }
+    return first;
+  }
+
+  private WeightVector[] getPairModels(Map<String,WeightVector> weightList,
+                                       Integer[] labels,
+                                       int categoriesNum) {
+    if (weightList != this.pairModelsSource) {
+      WeightVector[] models = new WeightVector[categoriesNum
+                                               * (categoriesNum - 1) / 2];
+      int pos = 0;
+      for (int i = 0; i < categoriesNum; i++) {
+        for (int j = i + 1; j < categoriesNum; j++) {
+          String key = null == labels ? SVMParameters.W + i + "_" + j
+              : SVMParameters.W + labels[i] + "_" + labels[j];
+          models[pos] = weightList.get(key);
+          if (null == models[pos]) {
+            throw new IllegalArgumentException("No model for key: " + key);
+          }
+          pos++;
+        }
+      }
+      this.pairModels = models;
+      this.pairModelsSource = weightList;
+    }
+    return this.pairModels;
+  }
+}
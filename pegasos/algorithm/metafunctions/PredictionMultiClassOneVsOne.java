@@ -19,6 +19,7 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,6 +27,7 @@ import java.util.Set;
 import java.util.Map.Entry;
 
 import org.apache.hadoop.io.Text;
+import org.apache.mahout.classifier.svm.svmweightvector.MultiClassModel;
 import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
 import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
 import org.apache.mahout.classifier.svm.datastore.GeneralWriter;
@@ -44,6 +46,12 @@ public class PredictionMultiClassOneVsOne extends Prediction {
   private static final Logger log = LoggerFactory
       .getLogger(PredictionMultiClassOneVsOne.class);
   
+  // stacked models of the last weight list, and reused score/vote buffers.
+  private MultiClassModel stackedModel;
+  private Map<String,WeightVector> stackedModelSource;
+  private double[] results;
+  private double[] vote;
+  
   /**
    * Sequential Multi-classification one-vs.-one
    * 
@@ -64,6 +72,7 @@ public class PredictionMultiClassOneVsOne extends Prediction {
     } else {
       WeightVector.getBatchModels(modelPath, weightList);
     }
+    quantize(weightList, para.getModelPrecision());
     
     Set<Double> labelList = null;
     // get label set
@@ -93,7 +102,7 @@ public class PredictionMultiClassOneVsOne extends Prediction {
       
       while ((str = in.readLine()) != null) {
         row = new SequentialAccessSparseVector(Integer.MAX_VALUE, 10);
-        trueLabel = (int) LibsvmFormatParser.str2Vector(str, row);
+        trueLabel = (int) LibsvmFormatParser.str2Vector(str, row, para.getHashBits());
         
         // empty line or do NOT have label, continue.
         if (row.size() < 1 || trueLabel == Double.MAX_VALUE) {
@@ -153,23 +162,14 @@ public class PredictionMultiClassOneVsOne extends Prediction {
     // classifier's number.
     int classiferNum = weightList.size();
     int categoriesNum = (int) ((Math.sqrt(8 * classiferNum + 1) + 1) / 2.0);
-    double[] results = new double[categoriesNum * (categoriesNum - 1) / 2];
-    
-    String key = null;
-    
-    int pos = 0;
-    // compute the pairwise value results[i][j] = w_i * sample + w_j * sample
-    for (int i = 0; i < categoriesNum; i++) {
-      for (int j = i + 1; j < categoriesNum; j++) {
-        key = "W" + labels[i] + "_" + labels[j];
-        results[pos] = weightList.get(key).times(row);
-        pos++;
-      }
-    }
+    // compute all pairwise values in one pass over the sample
+    getStackedModel(weightList, labels, categoriesNum).scores(row, this.results);
+    double[] results = this.results;
     
     // vote
-    double[] vote = new double[categoriesNum];
-    pos = 0;
+    double[] vote = this.vote;
+    Arrays.fill(vote, 0.0);
+    int pos = 0;
     for (int i = 0; i < categoriesNum; i++) {
       for (int j = i + 1; j < categoriesNum; j++) {
         if (results[pos++] > 0) {
@@ -214,23 +214,14 @@ public class PredictionMultiClassOneVsOne extends Prediction {
     // classifier's number.
     int classiferNum = weightList.size();
     int categoriesNum = (int) ((Math.sqrt(8 * classiferNum + 1) + 1) / 2.0);
-    double[] results = new double[categoriesNum * (categoriesNum - 1) / 2];
-    
-    String key;
-    
-    int pos = 0;
-    // compute the pairwise value results[ij] = w_i * sample + w_j * sample
-    for (int i = 0; i < categoriesNum; i++) {
-      for (int j = i + 1; j < categoriesNum; j++) {
-        key = "W" + labels[i] + "_" + labels[j];
-        results[pos] = weightList.get(key).times(row);
-        pos++;
-      }
-    }
+    // compute all pairwise values in one pass over the sample
+    getStackedModel(weightList, labels, categoriesNum).scores(row, this.results);
+    double[] results = this.results;
     
     // vote
-    double[] vote = new double[categoriesNum];
-    pos = 0;
+    double[] vote = this.vote;
+    Arrays.fill(vote, 0.0);
+    int pos = 0;
     for (int i = 0; i < categoriesNum; i++) {
       for (int j = i + 1; j < categoriesNum; j++) {
         if (results[pos++] > 0) {
@@ -271,7 +262,6 @@ public class PredictionMultiClassOneVsOne extends Prediction {
     int classiferNum = weightList.size();
     int categoriesNum = (int) ((Math.sqrt(8 * classiferNum + 1) + 1) / 2.0);
     int label = -1;
-    double[] results = new double[categoriesNum * (categoriesNum - 1) / 2];
     SequentialAccessSparseVector row = new SequentialAccessSparseVector(
         Integer.MAX_VALUE, 10);
     
@@ -279,7 +269,8 @@ public class PredictionMultiClassOneVsOne extends Prediction {
       return null;
     } else {
       try {
-        label = (int) LibsvmFormatParser.str2Vector(value.toString(), row);
+        label = (int) LibsvmFormatParser.str2Vector(value.toString(), row,
+          this.getHashBits());
       } catch (NullInputString e) {
         log.error(e.getMessage());
       }
@@ -290,20 +281,14 @@ public class PredictionMultiClassOneVsOne extends Prediction {
       return null;
     }
     
-    int pos = 0;
-    String key;
-    // compute the pairwise value results[ij] = w_i * sample + w_j * sample
-    for (int i = 0; i < categoriesNum; i++) {
-      for (int j = i + 1; j < categoriesNum; j++) {
-        key = "W" + i + "_" + j;
-        results[pos] = weightList.get(key).times(row);
-        pos++;
-      }
-    }
+    // compute all pairwise values in one pass over the sample
+    getStackedModel(weightList, null, categoriesNum).scores(row, this.results);
+    double[] results = this.results;
     
     // vote
-    double[] vote = new double[categoriesNum];
-    pos = 0;
+    double[] vote = this.vote;
+    Arrays.fill(vote, 0.0);
+    int pos = 0;
     for (int i = 0; i < categoriesNum; i++) {
       for (int j = i + 1; j < categoriesNum; j++) {
         if (results[pos++] > 0) {
@@ -330,4 +315,38 @@ public class PredictionMultiClassOneVsOne extends Prediction {
     }
     return result;
   }
+  
+  /**
+   * Stacks the pairwise models of weightList feature-major. It is rebuilt only
+   * if another weight list is given, the score and vote buffers are reused.
+   * 
+   * @param weightList
+   *          List of trained weights for each pair.
+   * @param labels
+   *          labels used in the model keys, null if the keys use class indices.
+   * @param categoriesNum
+   *          the number of categories.
+   * @return stacked model, the scores are in the order of W0_1, W0_2, ...
+   */
+  private MultiClassModel getStackedModel(Map<String,WeightVector> weightList,
+                                          Integer[] labels,
+                                          int categoriesNum) {
+    if (weightList != this.stackedModelSource) {
+      List<String> keys = new ArrayList<String>();
+      for (int i = 0; i < categoriesNum; i++) {
+        for (int j = i + 1; j < categoriesNum; j++) {
+          if (null == labels) {
+            keys.add(SVMParameters.W + i + "_" + j);
+          } else {
+            keys.add(SVMParameters.W + labels[i] + "_" + labels[j]);
+          }
+        }
+      }
+      this.stackedModel = new MultiClassModel(weightList, keys);
+      this.stackedModelSource = weightList;
+      this.results = new double[keys.size()];
+      this.vote = new double[categoriesNum];
+    }
+    return this.stackedModel;
+  }
 }
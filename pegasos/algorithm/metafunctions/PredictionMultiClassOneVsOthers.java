@@ -19,6 +19,7 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,6 +27,7 @@ import java.util.Set;
 import java.util.Map.Entry;
 
 import org.apache.hadoop.io.Text;
+import org.apache.mahout.classifier.svm.svmweightvector.MultiClassModel;
 import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
 import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
 import org.apache.mahout.classifier.svm.datastore.GeneralWriter;
@@ -44,6 +46,12 @@ public class PredictionMultiClassOneVsOthers extends Prediction {
   private static final Logger log = LoggerFactory
       .getLogger(PredictionMultiClassOneVsOne.class);
   
+  // stacked models of the last weight list, and reused score/vote buffers.
+  private MultiClassModel stackedModel;
+  private Map<String,WeightVector> stackedModelSource;
+  private double[] results;
+  private double[] vote;
+  
   /**
    * Sequential Multi-classification, one-vs.-others.
    * 
@@ -62,6 +70,7 @@ public class PredictionMultiClassOneVsOthers extends Prediction {
     } else {
       WeightVector.getBatchModels(modelPath, weightList);
     }
+    quantize(weightList, para.getModelPrecision());
     
     Set<Double> labelList = null;
     // get label set
@@ -90,7 +99,7 @@ public class PredictionMultiClassOneVsOthers extends Prediction {
       
       while ((str = in.readLine()) != null) {
         row = new SequentialAccessSparseVector(Integer.MAX_VALUE, 10);
-        trueLabel = (int) LibsvmFormatParser.str2Vector(str, row);
+        trueLabel = (int) LibsvmFormatParser.str2Vector(str, row, para.getHashBits());
         
         // empty line or do NOT have label, continue.
         if (row.size() < 1 || trueLabel == Double.MAX_VALUE) {
@@ -152,17 +161,13 @@ public class PredictionMultiClassOneVsOthers extends Prediction {
     
     // classifier's number.
     int classiferNum = weightList.size();
-    double[] results = new double[classiferNum];
-    String key = null;
-    
-    // compute the one-to-all probability
-    for (int i = 0; i < labels.length; i++) {
-      key = "W" + labels[i];
-      results[i] = weightList.get(key).times(row);
-    }
+    // compute the one-to-all probability in one pass over the sample
+    getStackedModel(weightList, labels, classiferNum).scores(row, this.results);
+    double[] results = this.results;
     
     // vote
-    double[] vote = new double[classiferNum];
+    double[] vote = this.vote;
+    Arrays.fill(vote, 0.0);
     for (int i = 0; i < classiferNum; i++) {
       if (results[i] > 0) { // this class
         vote[i] += results[i];
@@ -210,17 +215,13 @@ public class PredictionMultiClassOneVsOthers extends Prediction {
     
     // classifier's number.
     int classiferNum = weightList.size();
-    double[] results = new double[classiferNum];
-    
-    String key = null;
-    // compute the one-to-all probability
-    for (int i = 0; i < labels.length; i++) {
-      key = "W" + labels[i];
-      results[i] = weightList.get(key).times(row);
-    }
+    // compute the one-to-all probability in one pass over the sample
+    getStackedModel(weightList, labels, classiferNum).scores(row, this.results);
+    double[] results = this.results;
     
     // vote
-    double[] vote = new double[classiferNum];
+    double[] vote = this.vote;
+    Arrays.fill(vote, 0.0);
     for (int i = 0; i < classiferNum; i++) {
       if (results[i] > 0) { // this class
         vote[i] += results[i];
@@ -262,7 +263,6 @@ public class PredictionMultiClassOneVsOthers extends Prediction {
     // classifier's number.
     int classiferNum = weightList.size();
     int label = -1;
-    double[] results = new double[classiferNum];
     SequentialAccessSparseVector row = new SequentialAccessSparseVector(
         Integer.MAX_VALUE, 10);
     
@@ -270,7 +270,8 @@ public class PredictionMultiClassOneVsOthers extends Prediction {
       return null;
     } else {
       try {
-        label = (int) LibsvmFormatParser.str2Vector(value.toString(), row);
+        label = (int) LibsvmFormatParser.str2Vector(value.toString(), row,
+          this.getHashBits());
       } catch (NullInputString e) {
         log.error(e.getMessage());
       }
@@ -281,16 +282,13 @@ public class PredictionMultiClassOneVsOthers extends Prediction {
       return null;
     }
     
-    String key = null;
-    
-    // compute the one-to-all probability
-    for (int i = 0; i < classiferNum; i++) {
-      key = "W" + i;
-      results[i] = weightList.get(key).times(row);
-    }
+    // compute the one-to-all probability in one pass over the sample
+    getStackedModel(weightList, null, classiferNum).scores(row, this.results);
+    double[] results = this.results;
     
     // vote
-    double[] vote = new double[classiferNum];
+    double[] vote = this.vote;
+    Arrays.fill(vote, 0.0);
     for (int i = 0; i < classiferNum; i++) {
       if (results[i] > 0) { // this class
         vote[i] += results[i];
@@ -321,4 +319,37 @@ public class PredictionMultiClassOneVsOthers extends Prediction {
     
     return result;
   }
+  
+  /**
+   * Stacks the one-vs.-others models of weightList feature-major. It is rebuilt
+   * only if another weight list is given, the score and vote buffers are
+   * reused.
+   * 
+   * @param weightList
+   *          List of trained weights for each class.
+   * @param labels
+   *          labels used in the model keys, null if the keys use class indices.
+   * @param classiferNum
+   *          the number of classifiers.
+   * @return stacked model, the scores are in the order of labels.
+   */
+  private MultiClassModel getStackedModel(Map<String,WeightVector> weightList,
+                                          Integer[] labels,
+                                          int classiferNum) {
+    if (weightList != this.stackedModelSource) {
+      List<String> keys = new ArrayList<String>();
+      for (int i = 0; i < classiferNum; i++) {
+        if (null == labels) {
+          keys.add(SVMParameters.W + i);
+        } else {
+          keys.add(SVMParameters.W + labels[i]);
+        }
+      }
+      this.stackedModel = new MultiClassModel(weightList, keys);
+      this.stackedModelSource = weightList;
+      this.results = new double[classiferNum];
+      this.vote = new double[classiferNum];
+    }
+    return this.stackedModel;
+  }
 }
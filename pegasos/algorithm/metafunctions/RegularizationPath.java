@@ -0,0 +1,196 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.algorithm.metafunctions;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
+import org.apache.mahout.classifier.svm.datastore.OneVsOthersLabels;
+import org.apache.mahout.classifier.svm.datastore.PackedSamples;
+import org.apache.mahout.classifier.svm.parameters.SVMParameters;
+import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Regularization path: trains the svmType of para for each lambda of
+ * para.getLambdaPath(), from the largest to the smallest, on one loaded data
+ * set. Each training starts from the model of the previous lambda if the
+ * trainer supportsWarmStart() (Pegasos binary classification and regression,
+ * logistic regression); dual coordinate descent cannot start from weights and
+ * trains each lambda from zero.
+ *
+ * para.getValidateExampleNumber() random rows (a tenth of the rows if not set,
+ * at most a fifth) are held out of training. The model of each lambda is
+ * written to modelFile.lambda<lambda>, and modelFile.path gets one line per
+ * lambda: lambda, objective, zero-one error, validation loss (log loss for
+ * logistic regression) and validation error (mean squared error for
+ * regression). para gets the lambda and the
+ * results of the model with the smallest validation error.
+ */
+public class RegularizationPath extends Training {
+
+  private static final Logger log = LoggerFactory.getLogger(RegularizationPath.class);
+
+  /**
+   * Trains the regularization path.
+   *
+   * @param dataset
+   *          loaded data set
+   * @param para
+   *          parameters, with the lambdas of the path
+   * @return the model with the smallest validation error
+   */
+  @Override
+  public WeightVector training(DataSetHandler dataset, SVMParameters para) {
+    int type = para.getClassificationType();
+    if (0 != type && 1 != type && 4 != type && 9 != type && 10 != type) {
+      throw new IllegalArgumentException(
+          "The regularization path supports svmType 0, 1, 4, 9 and 10");
+    }
+    boolean regression = 1 == type;
+    double[] lambdas = para.getLambdaPath().clone();
+    Arrays.sort(lambdas);
+    if (0 == lambdas.length) {
+      throw new IllegalArgumentException("The regularization path needs lambdas");
+    }
+    for (double lambda : lambdas) {
+      if (!(lambda > 0.0)) {
+        throw new IllegalArgumentException("Lambda must be positive: " + lambda);
+      }
+    }
+
+    // random validation split of the loaded rows
+    int n = dataset.getLabels().size();
+    int[] rows = new int[n];
+    int pos = 0;
+    for (Integer r : dataset.getLabels().keySet()) {
+      rows[pos++] = r;
+    }
+    int m = para.getValidateExampleNumber() > 0 ? para.getValidateExampleNumber()
+        : n / 10;
+    m = Math.max(1, Math.min(m, n / 5));
+    Random rand = new Random();
+    for (int i = 0; i < m; i++) {
+      int j = i + rand.nextInt(n - i);
+      int tmp = rows[i];
+      rows[i] = rows[j];
+      rows[j] = tmp;
+    }
+    int[] validateRows = Arrays.copyOfRange(rows, 0, m);
+    int[] trainRows = Arrays.copyOfRange(rows, m, n);
+    Arrays.sort(validateRows);
+    Arrays.sort(trainRows);
+    DataSetHandler trainView = dataset.rowView(trainRows, new OneVsOthersLabels(
+      dataset.getLabels(), null, trainRows));
+    PackedSamples samples = dataset.getPackedSamples();
+    double[] labels = dataset.getLabelArray();
+    ObjectiveEvaluator evaluator = new ObjectiveEvaluator(para.getWorkerThreads());
+    log.info("Regularization path of " + lambdas.length + " lambdas, "
+             + trainRows.length + " training and " + m + " validation samples");
+
+    String[] lines = new String[lambdas.length];
+    WeightVector previous = null;
+    // Pegasos continues the learning rate schedule of the previous lambda, at
+    // its iterations scaled by the lambda ratio: the full schedule keeps the
+    // steps too small to leave the previous model
+    int previousIterations = 0;
+    WeightVector best = null;
+    SVMParameters bestPara = null;
+    double bestError = Double.POSITIVE_INFINITY;
+    try {
+      for (int l = lambdas.length - 1; l >= 0; l--) {
+        SVMParameters lambdaPara = para.copy();
+        lambdaPara.setLambda(lambdas[l]);
+        // the view renumbers the rows
+        lambdaPara.setRandomPool(null);
+        if (null != para.getModelFileName()) {
+          lambdaPara.setModelFileName(para.getModelFileName() + ".lambda" + lambdas[l]);
+        }
+
+        Training trainer = TrainingFactory.getInstance(type);
+        if (null != previous && trainer.supportsWarmStart()) {
+          trainer.setInitialWeights(previous, (int) (previousIterations * lambdas[l]
+                                                     / lambdas[l + 1]));
+        }
+        WeightVector w = trainer.training(trainView, lambdaPara);
+
+        ObjectiveEvaluator.Result result = evaluator.evaluate(w, samples, labels,
+          validateRows, ObjectiveEvaluator.testLossType(type), null);
+        double validationLoss = result.loss / m;
+        double validationError = regression ? validationLoss : result.errors / m;
+        lines[lambdas.length - 1 - l] = lambdas[l] + " " + lambdaPara.getObjValue()
+                                        + " " + lambdaPara.getZeroOneError() + " "
+                                        + validationLoss + " " + validationError;
+        log.info("lambda " + lambdas[l] + ": objective " + lambdaPara.getObjValue()
+                 + ", validation error " + validationError
+                 + (null != previous && trainer.supportsWarmStart()
+                     ? " (warm start)" : ""));
+
+        if (validationError < bestError) {
+          best = w;
+          bestPara = lambdaPara;
+          bestError = validationError;
+        }
+        previous = w;
+        previousIterations = lambdaPara.getIterations();
+      }
+    } finally {
+      evaluator.shutdown();
+    }
+
+    if (null != para.getModelFileName()) {
+      writePath(para.getModelFileName() + ".path", lines);
+    }
+
+    // results of the best lambda
+    log.info("Best lambda: " + bestPara.getLambda() + ", validation error "
+             + bestError);
+    para.setLambda(bestPara.getLambda());
+    para.setNormValue(bestPara.getNormValue());
+    para.setLossValue(bestPara.getLossValue());
+    para.setZeroOneError(bestPara.getZeroOneError());
+    para.setObjValue(bestPara.getObjValue());
+    para.setScaleFoldCount(bestPara.getScaleFoldCount());
+    para.setIterations(bestPara.getIterations());
+    return best;
+  }
+
+  private static void writePath(String fileName, String[] lines) {
+    BufferedWriter wr = null;
+    try {
+      wr = new BufferedWriter(new FileWriter(fileName));
+      wr.write("# lambda objective zero-one-error validation-loss validation-error\n");
+      for (String line : lines) {
+        wr.write(line + "\n");
+      }
+    } catch (IOException e) {
+      log.error("Exception" + e.getMessage());
+    } finally {
+      if (null != wr) {
+        try {
+          wr.close();
+        } catch (IOException e) {
+          log.error("Exception" + e.getMessage());
+        }
+      }
+    }
+  }
+}
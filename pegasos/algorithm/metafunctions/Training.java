@@ -15,6 +15,14 @@
  */
 package org.apache.mahout.classifier.svm.algorithm.metafunctions;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
 import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
 import org.apache.mahout.classifier.svm.parameters.SVMParameters;
@@ -24,6 +32,10 @@ import org.apache.mahout.classifier.svm.parameters.SVMParameters;
  */
 public abstract class Training {
   
+  // weights the next training starts from, null for zero weights
+  private WeightVector initialWeights;
+  // iterations that led to initialWeights
+  private int initialIterations;
   
   /**
    * 
@@ -35,5 +47,233 @@ public abstract class Training {
    */
   public abstract WeightVector training(DataSetHandler dataset,
                                         SVMParameters para);
-      
+  
+  /**
+   * Creates an empty weight vector for the data set. If the feature space of
+   * the loaded data set is bounded (not larger than maxDenseDimension), a dense
+   * weight vector is used, otherwise a hashed one. With feature hashing the
+   * weight vector is always a dense array of 2^hashBits.
+   * 
+   * @param dataset
+   *          dataset
+   * @param para
+   *          parameters for training.
+   * @return weight vector
+   */
+  protected WeightVector createWeightVector(DataSetHandler dataset,
+                                            SVMParameters para) {
+    if (para.getHashBits() > 0) {
+      return new WeightVector(1 << para.getHashBits(), WeightVector.DENSE);
+    }
+    int dimension = dataset.getDimension();
+    if (dimension > 0 && dimension <= para.getMaxDenseDimension()) {
+      return new WeightVector(dimension, WeightVector.DENSE);
+    }
+    return new WeightVector(Integer.MAX_VALUE, WeightVector.HASHED);
+  }
+  
+  /**
+   * Warm start: the next training starts from the weights w (e.g. the model of
+   * the previous lambda of a regularization path) instead of zero weights, w is
+   * not changed. Pegasos continues its learning rate schedule after the given
+   * iterations. Trainers that do not supportWarmStart() ignore it.
+   * 
+   * @param w
+   *          initial weights, null for zero weights
+   * @param iterations
+   *          iterations that led to w
+   */
+  public void setInitialWeights(WeightVector w, int iterations) {
+    this.initialWeights = w;
+    this.initialIterations = iterations;
+  }
+  
+  /**
+   * @return true if training() starts from the weights of setInitialWeights()
+   */
+  public boolean supportsWarmStart() {
+    return false;
+  }
+  
+  protected WeightVector getInitialWeights() {
+    return this.initialWeights;
+  }
+  
+  protected int getInitialIterations() {
+    return null != this.initialWeights ? this.initialIterations : 0;
+  }
+  
+  /**
+   * Creates the weight vector of the data set (see createWeightVector), with the
+   * initial weights if they are set.
+   */
+  protected WeightVector createInitialWeightVector(DataSetHandler dataset,
+                                                   SVMParameters para) {
+    WeightVector w = createWeightVector(dataset, para);
+    if (null != this.initialWeights) {
+      w.add(this.initialWeights, 1.0);
+    }
+    return w;
+  }
+  
+  /**
+   * Learning rate of iteration i: 1 / (lambda * (i + 2)) (Pegasos),
+   * etaConstant / sqrt(i + 2) or etaConstant, by para.getEtaRuleType().
+   */
+  protected static double eta(SVMParameters para, int i) {
+    // pegasos eta rule
+    if (0 == para.getEtaRuleType()) {
+      return 1 / (para.getLambda() * (i + 2));
+    } else if (1 == para.getEtaRuleType()) {
+      return para.getEtaConstant() / Math.sqrt(i + 2);
+    }
+    return para.getEtaConstant();
+  }
+  
+  /**
+   * Projects w onto the ball of radius 1 / sqrt(lambda) (projection rule 0) or
+   * projectionConstant (rule 1), no projection otherwise.
+   */
+  protected static void project(WeightVector w, SVMParameters para) {
+    double s = projectionScale(w.getSnorm(), para);
+    if (1.0 != s) {
+      w.scale(s);
+    }
+  }
+  
+  /**
+   * @return the factor that projects weights of squared norm norm2 as
+   *         project(), 1.0 if they are inside the ball or without projection
+   */
+  protected static double projectionScale(double norm2, SVMParameters para) {
+    if (0 == para.getProjectionRule()) {
+      if (norm2 > 1.0 / para.getLambda()) {
+        return Math.sqrt(1.0 / (para.getLambda() * norm2));
+      }
+    } else if (1 == para.getProjectionRule()) { // Pegasos projection rule
+      if (norm2 > (para.getProjectionConstant() * para.getProjectionConstant())) {
+        return para.getProjectionConstant() / Math.sqrt(norm2);
+      }
+    } // else -- no projection
+    return 1.0;
+  }
+  
+  /**
+   * @return the stopping tolerance of para, defaultTolerance if it is not set
+   * @throws IllegalArgumentException
+   *           if the tolerance is not positive
+   */
+  protected static double tolerance(SVMParameters para, double defaultTolerance) {
+    double tolerance = Double.isNaN(para.getTolerance()) ? defaultTolerance : para
+        .getTolerance();
+    if (!(tolerance > 0.0)) {
+      throw new IllegalArgumentException("The stopping tolerance must be positive: "
+                                         + tolerance);
+    }
+    return tolerance;
+  }
+  
+  /**
+   * Writes the binary model w to para.getModelFileName(), as binary or text
+   * model by para.isBinaryModel(). Nothing is written without a model file or
+   * if the model goes to HDFS.
+   */
+  protected static void saveModel(WeightVector w,
+                                  DataSetHandler dataset,
+                                  SVMParameters para) {
+    if (para.getModelFileName() != null && null == para.getHdfsServerAddr()) {
+      if (para.isBinaryModel()) {
+        w.writeBinaryFile(para.getModelFileName(), para.getClassNum(), dataset
+            .getUniqueLables());
+      } else {
+        w.writeToFile(para.getModelFileName(), para.getClassNum(), dataset
+            .getUniqueLables());
+      }
+    }
+  }
+  
+  /**
+   * @return the labels of the data set, in the order of the multi-class models
+   */
+  protected static Double[] labelList(DataSetHandler dataset) {
+    Double[] labelList = new Double[dataset.getUniqueLables().size()];
+    int labelIndex = 0;
+    for (Double a : dataset.getUniqueLables()) {
+      labelList[labelIndex++] = a;
+    }
+    return labelList;
+  }
+  
+  /**
+   * @return the rows on which the training results are computed: the first n
+   *         rows of the random pool, or the rows 0..n-1 without a pool
+   */
+  protected static int[] evaluationRows(List<Integer> pool, int n) {
+    int[] rows = new int[n];
+    for (int i = 0; i < n; i++) {
+      rows[i] = null != pool ? pool.get(i) : i;
+    }
+    return rows;
+  }
+  
+  /**
+   * Trains binary problems (e.g. the problems of a multi-class scheme) with
+   * TrainingBinaryClassification on para.getWorkerThreads() threads. Each
+   * problem is trained with its own copy of para, without a model file and
+   * with one mini-batch thread if the problems run in parallel. para gets the
+   * results of the last problem.
+   * 
+   * @param problems
+   *          data sets of the binary problems, must only be read by training
+   * @param para
+   *          parameters for training.
+   * @return weight vectors, in the order of the problems
+   */
+  protected static List<WeightVector> trainBinaryProblems(List<DataSetHandler> problems,
+                                                          SVMParameters para) {
+    List<WeightVector> weightList = new ArrayList<WeightVector>();
+    if (problems.isEmpty()) {
+      return weightList;
+    }
+    int threads = Math.max(1, Math.min(para.getWorkerThreads(), problems.size()));
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<WeightVector>> results = new ArrayList<Future<WeightVector>>();
+    SVMParameters problemPara = null;
+    for (final DataSetHandler problem : problems) {
+      problemPara = para.copy();
+      problemPara.setModelFileName(null);
+      if (threads > 1) {
+        // the problems already use the threads
+        problemPara.setThreadNumber(1);
+      }
+      final SVMParameters taskPara = problemPara;
+      results.add(executor.submit(new Callable<WeightVector>() {
+        @Override
+        public WeightVector call() {
+          return new TrainingBinaryClassification().training(problem, taskPara);
+        }
+      }));
+    }
+    
+    try {
+      for (Future<WeightVector> result : results) {
+        weightList.add(result.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Training interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Training failed", e.getCause());
+    } finally {
+      executor.shutdown();
+    }
+    
+    para.setNormValue(problemPara.getNormValue());
+    para.setLossValue(problemPara.getLossValue());
+    para.setZeroOneError(problemPara.getZeroOneError());
+    para.setObjValue(problemPara.getObjValue());
+    para.setScaleFoldCount(problemPara.getScaleFoldCount());
+    para.setIterations(problemPara.getIterations());
+    return weightList;
+  }
 }
@@ -15,17 +15,24 @@
  */
 package org.apache.mahout.classifier.svm.algorithm.metafunctions;
 
+import java.util.List;
 import java.util.Random;
-import java.util.Vector;
 
 import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
 import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
+import org.apache.mahout.classifier.svm.datastore.PackedSamples;
 import org.apache.mahout.classifier.svm.parameters.SVMParameters;
 
 /**
  * SVM with linear kernel (Pegasos) BinaryClassificationTraining
  */
 public class TrainingBinaryClassification extends Training {
+  
+  @Override
+  public boolean supportsWarmStart() {
+    return true;
+  }
+  
    /**
    * SVM (Pegasos) BinaryClassificationTraining
    * 
@@ -38,124 +45,107 @@ public class TrainingBinaryClassification extends Training {
   @Override
   public WeightVector training(DataSetHandler trainDataset, SVMParameters para) {
     // create the weight
-    WeightVector w = new WeightVector(Integer.MAX_VALUE);
+    WeightVector w = createInitialWeightVector(trainDataset, para);
     Random rand = new Random();
     double eta = 0.0;
     
-    int r = 0;
-    // main loop
-    for (int i = 0; i < para.getMaxIter(); ++i) {
-      // learning rate
-      // pegasos eta rule
-      if (0 == para.getEtaRuleType()) {
-        eta = 1 / (para.getLambda() * (i + 2));
-      } else if (1 == para.getEtaRuleType()) {
-        eta = para.getEtaConstant() / Math.sqrt(i + 2);
-        w.setAtoOne();
-      } else {
-        eta = para.getEtaConstant();
-      }
-      
-      Vector<Integer> gradIndex = new Vector<Integer>();
-      Vector<Double> gradWeight = new Vector<Double>();
+    // primitive samples and scratch buffers, the main loop does not allocate
+    PackedSamples samples = trainDataset.getPackedSamples();
+    double[] labels = trainDataset.getLabelArray();
+    List<Integer> pool = para.getRandomPool();
+    int n = trainDataset.getLabels().size();
+    int k = para.getExamplesPerIter();
+    int[] gradIndex = new int[k];
+    double[] gradWeight = new double[k];
+    
+    // large mini-batches are evaluated in parallel
+    MiniBatchEvaluator evaluator = null;
+    if (k >= MiniBatchEvaluator.MIN_PARALLEL_BATCH && para.getWorkerThreads() > 1) {
+      evaluator = new MiniBatchEvaluator(para.getWorkerThreads(), samples, labels);
+    }
+    
+    // stop early once the held-out objective does not improve
+    EarlyStopping stopping = EarlyStopping.create(para, n, samples, labels, false,
+      rand);
+    int iterations = para.getMaxIter();
+    
+    try {
+      int r = 0;
+      // main loop
+      for (int i = 0; i < para.getMaxIter(); ++i) {
+        // learning rate
+        eta = eta(para, getInitialIterations() + i);
       
-      // calc sub-gradients
-      for (int j = 0; j < para.getExamplesPerIter(); ++j) {
-        // choose random example
-        if (para.getRandomPool() != null) {
-          r = para.getRandomPool().get(i);
-        } else {
-          r = rand.nextInt(trainDataset.getLabels().size());
+        if (null != evaluator) {
+          for (int j = 0; j < k; ++j) {
+            gradIndex[j] = null != pool ? pool.get(i) : null != stopping ? stopping
+                .trainRow(rand) : rand.nextInt(n);
+          }
+          int count = evaluator.subGradient(w, gradIndex);
+          w.scale(1.0 - eta * para.getLambda());
+          if (count > 0) {
+            evaluator.addGradient(w, eta);
+          }
+          project(w, para);
+          if (null != stopping && stopping.converged(w, i)) {
+            iterations = i + 1;
+            break;
+          }
+          continue;
         }
+      
+        // calc sub-gradients
+        int gradSize = 0;
+        for (int j = 0; j < k; ++j) {
+          // choose random example
+          r = null != pool ? pool.get(i) : null != stopping ? stopping.trainRow(rand)
+              : rand.nextInt(n);
         
-        // calculate prediction
-        double prediction = w.times(trainDataset.getDataset().getRow(r));
+          // calculate prediction
+          double prediction = w.times(samples.indices(r), samples.values(r));
         
-        // calculate loss
-        double curLoss = 1 - trainDataset.getLabels().get(r) * prediction;
-        if (curLoss < 0.0) {
-          curLoss = 0.0;
-        }
+          // calculate loss
+          double curLoss = 1 - labels[r] * prediction;
         
-        // and add to the gradient
-        if (curLoss > 0.0) {
-          gradIndex.add(r);
-          gradWeight.add(eta * trainDataset.getLabels().get(r)
-                         / para.getExamplesPerIter());
+          // and add to the gradient
+          if (curLoss > 0.0) {
+            gradIndex[gradSize] = r;
+            gradWeight[gradSize++] = eta * labels[r] / k;
+          }
         }
-      }
-      
-      // scale w
-      w.scale(1.0 - eta * para.getLambda());
-      
-      // and add sub-gradients
-      for (int j = 0; j < gradIndex.size(); ++j) {
-        w.add(trainDataset.getDataset().getRow(gradIndex.get(j)), gradWeight.get(j)
-            .doubleValue());
-      }
       
-      double norm2 = 0.0;
+        // scale w
+        w.scale(1.0 - eta * para.getLambda());
       
-      // Project if needed
-      if (0 == para.getProjectionRule()) {
-        norm2 = w.getSnorm();
-        if (norm2 > 1.0 / para.getLambda()) {
-          w.scale(Math.sqrt(1.0 / (para.getLambda() * norm2)));
+        // and add sub-gradients
+        for (int j = 0; j < gradSize; ++j) {
+          w.add(samples.indices(gradIndex[j]), samples.values(gradIndex[j]),
+            gradWeight[j]);
         }
-      } else if (1 == para.getProjectionRule()) { // Pegasos projection rule
-        norm2 = w.getSnorm();
-        if (norm2 > (para.getProjectionConstant() * para.getProjectionConstant())) {
-          w.scale(para.getProjectionConstant() / Math.sqrt(norm2));
-        }
-      } // else -- no projection
-    }
-    
-    // Calculate objective value
-    para.setNormValue(w.getSnorm());
-    para.setObjValue(para.getNormValue() * para.getLambda() / 2.0);
-    para.setLossValue(0.0);
-    para.setZeroOneError(0.0);
-    // use the random label
-    if (para.getRandomPool() != null) {
-      for (int i = 0; i < trainDataset.getLabels().size(); ++i) {
-        double curLoss = 1
-                         - trainDataset.getLabels().get(para.getRandomPool().get(i))
-                         * w.times(trainDataset.getDataset().getRow(para.getRandomPool()
-                             .get(i)));
-        if (curLoss < 0.0) {
-          curLoss = 0.0;
-        }
-        para.setLossValue(para.getLossValue() + curLoss);
-        para.setObjValue(para.getObjValue() + curLoss);
-        if (curLoss >= 1.0) {
-          para.setZeroOneError(para.getZeroOneError() + 1.0);
+      
+        project(w, para);
+        if (null != stopping && stopping.converged(w, i)) {
+          iterations = i + 1;
+          break;
         }
       }
-    } else {
-      for (int i = 0; i < trainDataset.getLabels().size(); ++i) {
-        double curLoss = 1 - trainDataset.getLabels().get(i)
-                         * w.times(trainDataset.getDataset().getRow(i));
-        if (curLoss < 0.0) {
-          curLoss = 0.0;
-        }
-        para.setLossValue(para.getLossValue() + curLoss);
-        para.setObjValue(para.getObjValue() + curLoss);
-        if (curLoss >= 1.0) {
-          para.setZeroOneError(para.getZeroOneError() + 1.0);
-        }
+    } finally {
+      if (null != evaluator) {
+        evaluator.shutdown();
       }
     }
     
-    para.setLossValue(para.getLossValue() / trainDataset.getLabels().size());
-    para.setObjValue(para.getObjValue() / trainDataset.getLabels().size());
-    para.setZeroOneError(para.getZeroOneError() / trainDataset.getLabels().size());
+    w.freeze();
+    
+    // Calculate objective value
+    para.setIterations(iterations);
+    para.setScaleFoldCount(w.getFoldCount());
+    // use the random label
+    ObjectiveEvaluator.trainingResults(w, samples, labels, evaluationRows(pool, n),
+      ObjectiveEvaluator.HINGE, para);
     
     // save the model to file
-    if (para.getModelFileName() != null && null == para.getHdfsServerAddr()) {
-      w.writeToFile(para.getModelFileName(), para.getClassNum(),
-        trainDataset.getUniqueLables());
-    }
+    saveModel(w, trainDataset, para);
     return w;
   }
-
 }
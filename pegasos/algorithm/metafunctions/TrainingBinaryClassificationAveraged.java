@@ -0,0 +1,123 @@
+/*
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.algorithm.metafunctions;
+
+import java.util.List;
+import java.util.Random;
+
+import org.apache.mahout.classifier.svm.svmweightvector.AveragedWeightVector;
+import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
+import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
+import org.apache.mahout.classifier.svm.datastore.PackedSamples;
+import org.apache.mahout.classifier.svm.parameters.SVMParameters;
+
+/**
+ * SVM with linear kernel (Pegasos) BinaryClassificationTraining with averaged
+ * SGD: the returned model is the average of the iterates from
+ * averageIteration on, which is kept lazily next to the working weights.
+ */
+public class TrainingBinaryClassificationAveraged extends Training {
+   /**
+   * SVM (Pegasos) BinaryClassificationTraining with averaged SGD. The
+   * iterates are averaged from para.getAverageIteration() on, or over the last
+   * half of the iterations if it is not set.
+   * 
+   * @param trainDataset
+   *          Train data set
+   * @param para
+   *          Contains parameters for training and some useful results
+   * @return Trained w
+   */
+  @Override
+  public WeightVector training(DataSetHandler trainDataset, SVMParameters para) {
+    // create the weight
+    WeightVector w = createWeightVector(trainDataset, para);
+    AveragedWeightVector avg = new AveragedWeightVector(w);
+    int averageFrom = para.getAverageIteration() > 0 ? para.getAverageIteration()
+        : para.getMaxIter() / 2;
+    Random rand = new Random();
+    double eta = 0.0;
+    
+    // primitive samples and scratch buffers, the main loop does not allocate
+    PackedSamples samples = trainDataset.getPackedSamples();
+    double[] labels = trainDataset.getLabelArray();
+    List<Integer> pool = para.getRandomPool();
+    int n = trainDataset.getLabels().size();
+    int k = para.getExamplesPerIter();
+    int[] gradIndex = new int[k];
+    double[] gradWeight = new double[k];
+    
+    int r = 0;
+    // main loop
+    for (int i = 0; i < para.getMaxIter(); ++i) {
+      // learning rate
+      eta = eta(para, i);
+      
+      // calc sub-gradients
+      int gradSize = 0;
+      for (int j = 0; j < k; ++j) {
+        // choose random example
+        r = null != pool ? pool.get(i) : rand.nextInt(n);
+        
+        // calculate prediction
+        double prediction = w.times(samples.indices(r), samples.values(r));
+        
+        // calculate loss
+        double curLoss = 1 - labels[r] * prediction;
+        
+        // and add to the gradient
+        if (curLoss > 0.0) {
+          gradIndex[gradSize] = r;
+          gradWeight[gradSize++] = eta * labels[r] / k;
+        }
+      }
+      
+      // scale w
+      avg.scale(1.0 - eta * para.getLambda());
+      
+      // and add sub-gradients
+      for (int j = 0; j < gradSize; ++j) {
+        avg.add(samples.indices(gradIndex[j]), samples.values(gradIndex[j]),
+          gradWeight[j]);
+      }
+      
+      // Project if needed
+      double scale = projectionScale(w.getSnorm(), para);
+      if (1.0 != scale) {
+        avg.scale(scale);
+      }
+      
+      if (i >= averageFrom) {
+        avg.average();
+      }
+    }
+    
+    para.setScaleFoldCount(w.getFoldCount());
+    w = avg.getAverage();
+    w.freeze();
+    
+    // Calculate objective value
+    // use the random label
+    ObjectiveEvaluator.trainingResults(w, trainDataset.getPackedSamples(),
+      trainDataset.getLabelArray(), evaluationRows(para.getRandomPool(), trainDataset
+          .getLabels().size()), ObjectiveEvaluator.HINGE, para);
+    
+    // save the model to file
+    saveModel(w, trainDataset, para);
+    return w;
+  }
+
+}
@@ -0,0 +1,191 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.algorithm.metafunctions;
+
+import java.util.Random;
+
+import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
+import org.apache.mahout.classifier.svm.datastore.PackedSamples;
+import org.apache.mahout.classifier.svm.parameters.SVMParameters;
+import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Linear SVM BinaryClassificationTraining with dual coordinate descent (Hsieh
+ * et al., A Dual Coordinate Descent Method for Large-scale Linear SVM, ICML
+ * 2008; the LIBLINEAR solver for L1- and L2-loss SVM).
+ *
+ * It solves the Pegasos problem min lambda / 2 * |w|^2 + 1/n sum loss_i (w),
+ * i.e. C = 1 / (lambda * n), with the hinge loss (para.getLossType() 1) or
+ * the squared hinge loss (2). Each pass updates the dual variables of the
+ * active samples in random order; samples whose dual variable stays at a
+ * bound are shrunk from the active set. It stops when the projected gradient
+ * is within para.getTolerance() (0.1 if not set) on all samples, or after
+ * maxIter passes (at most MAX_PASSES).
+ */
+public class TrainingBinaryClassificationDualCD extends Training {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(TrainingBinaryClassificationDualCD.class);
+  // LIBLINEAR's maximum number of passes
+  private static final int MAX_PASSES = 1000;
+  // LIBLINEAR's default tolerance of the dual solvers
+  private static final double DEFAULT_TOLERANCE = 0.1;
+
+  /**
+   * Linear SVM BinaryClassificationTraining with dual coordinate descent.
+   *
+   * @param trainDataset
+   *          Train data set
+   * @param para
+   *          Contains parameters for training and some useful results
+   * @return Trained w
+   */
+  @Override
+  public WeightVector training(DataSetHandler trainDataset, SVMParameters para) {
+    double tolerance = tolerance(para, DEFAULT_TOLERANCE);
+    // create the weight
+    WeightVector w = createWeightVector(trainDataset, para);
+    PackedSamples samples = trainDataset.getPackedSamples();
+    double[] labels = trainDataset.getLabelArray();
+
+    // the loaded rows
+    int l = trainDataset.getLabels().size();
+    int[] rows = new int[l];
+    int pos = 0;
+    for (Integer r : trainDataset.getLabels().keySet()) {
+      rows[pos++] = r;
+    }
+
+    boolean squaredHinge = 2 == para.getLossType();
+    double c = 1.0 / (para.getLambda() * l);
+    double upperBound = squaredHinge ? Double.POSITIVE_INFINITY : c;
+    double diagonal = squaredHinge ? 0.5 / c : 0.0;
+
+    // diagonal of the dual Hessian: squared row norms (+ 1/(2C) for L2 loss)
+    double[] qd = new double[l];
+    for (int s = 0; s < l; s++) {
+      double[] values = samples.values(rows[s]);
+      double norm = 0.0;
+      for (int j = 0; j < values.length; j++) {
+        norm += values[j] * values[j];
+      }
+      qd[s] = diagonal + norm;
+    }
+
+    double[] alpha = new double[l];
+    int[] index = new int[l];
+    for (int s = 0; s < l; s++) {
+      index[s] = s;
+    }
+    int activeSize = l;
+    double pgMaxOld = Double.POSITIVE_INFINITY;
+    double pgMinOld = Double.NEGATIVE_INFINITY;
+    int maxPasses = Math.min(para.getMaxIter(), MAX_PASSES);
+    Random rand = new Random();
+
+    int pass = 0;
+    while (pass < maxPasses) {
+      double pgMaxNew = Double.NEGATIVE_INFINITY;
+      double pgMinNew = Double.POSITIVE_INFINITY;
+
+      // random order of the active samples
+      for (int s = 0; s < activeSize; s++) {
+        int j = s + rand.nextInt(activeSize - s);
+        int tmp = index[s];
+        index[s] = index[j];
+        index[j] = tmp;
+      }
+
+      for (int s = 0; s < activeSize; s++) {
+        int i = index[s];
+        int r = rows[i];
+        double y = labels[r];
+        int[] xIndices = samples.indices(r);
+        double[] xValues = samples.values(r);
+        double g = y * w.times(xIndices, xValues) - 1 + diagonal * alpha[i];
+
+        // projected gradient, shrink samples that stay at a bound
+        double pg = 0.0;
+        if (0.0 == alpha[i]) {
+          if (g > pgMaxOld) {
+            activeSize--;
+            index[s] = index[activeSize];
+            index[activeSize] = i;
+            s--;
+            continue;
+          } else if (g < 0.0) {
+            pg = g;
+          }
+        } else if (alpha[i] == upperBound) {
+          if (g < pgMinOld) {
+            activeSize--;
+            index[s] = index[activeSize];
+            index[activeSize] = i;
+            s--;
+            continue;
+          } else if (g > 0.0) {
+            pg = g;
+          }
+        } else {
+          pg = g;
+        }
+        pgMaxNew = Math.max(pgMaxNew, pg);
+        pgMinNew = Math.min(pgMinNew, pg);
+
+        if (Math.abs(pg) > 1.0e-12) {
+          double alphaOld = alpha[i];
+          alpha[i] = Math.min(Math.max(alpha[i] - g / qd[i], 0.0), upperBound);
+          double step = (alpha[i] - alphaOld) * y;
+          if (0.0 != step) {
+            w.add(xIndices, xValues, step);
+          }
+        }
+      }
+      pass++;
+
+      if (pgMaxNew - pgMinNew <= tolerance) {
+        if (activeSize == l) {
+          break;
+        }
+        // check the shrunk samples once more
+        activeSize = l;
+        pgMaxOld = Double.POSITIVE_INFINITY;
+        pgMinOld = Double.NEGATIVE_INFINITY;
+        continue;
+      }
+      pgMaxOld = pgMaxNew <= 0.0 ? Double.POSITIVE_INFINITY : pgMaxNew;
+      pgMinOld = pgMinNew >= 0.0 ? Double.NEGATIVE_INFINITY : pgMinNew;
+    }
+    if (pass >= maxPasses) {
+      log.warn("Dual coordinate descent reached " + maxPasses + " passes");
+    }
+    log.info("Dual coordinate descent: " + pass + " passes, " + activeSize
+             + " active samples");
+
+    w.freeze();
+
+    // Calculate objective value
+    para.setScaleFoldCount(w.getFoldCount());
+    ObjectiveEvaluator.trainingResults(w, samples, labels, rows,
+      squaredHinge ? ObjectiveEvaluator.SQUARED_HINGE : ObjectiveEvaluator.HINGE, para);
+
+    // save the model to file
+    saveModel(w, trainDataset, para);
+    return w;
+  }
+}
@@ -0,0 +1,375 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.algorithm.metafunctions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
+import org.apache.mahout.classifier.svm.datastore.PackedSamples;
+import org.apache.mahout.classifier.svm.parameters.SVMParameters;
+import org.apache.mahout.classifier.svm.svmweightvector.HogwildWeightVector;
+import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SVM with linear kernel (Pegasos) BinaryClassificationTraining with Hogwild:
+ * para.getWorkerThreads() workers sample from the shared data set and write
+ * their sparse updates to shared dense weights without locks.
+ *
+ * The workers are started once and run the iterations in rounds, separated by
+ * a barrier. In a round, worker k runs the iterations start + k, start + k +
+ * threads, ... and draws each sample with its own random generator (from the
+ * random pool if there is one). The scale a_i of the weights at iteration i
+ * only depends on i (the product of 1 - eta_j * lambda for j < i), so every
+ * worker computes it locally and the shared scale is not written during a
+ * round. A round ends after ROUND_ITERATIONS iterations per worker, or before
+ * a_i leaves the range of WeightVector.needsFold. Between rounds the scale is
+ * folded if needed and the weights are projected; the projection uses the
+ * norm the workers keep up to date (see HogwildWeightVector), so it does not
+ * cost a pass over the weights.
+ *
+ * The weights need a bounded feature space, e.g. with feature hashing.
+ */
+public class TrainingBinaryClassificationHogwild extends Training {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(TrainingBinaryClassificationHogwild.class);
+  // iterations of a worker per round, i.e. between two projections
+  private static final int ROUND_ITERATIONS = 1 << 10;
+
+  /**
+   * SVM (Pegasos) BinaryClassificationTraining with Hogwild.
+   *
+   * @param trainDataset
+   *          Train data set
+   * @param para
+   *          Contains parameters for training and some useful results
+   * @return Trained w
+   */
+  @Override
+  public WeightVector training(DataSetHandler trainDataset, SVMParameters para) {
+    int d = para.getHashBits() > 0 ? 1 << para.getHashBits() : trainDataset
+        .getDimension();
+    if (d <= 0 || (0 == para.getHashBits() && d > para.getMaxDenseDimension())) {
+      throw new IllegalArgumentException(
+          "Hogwild training needs a bounded feature space, use feature hashing (-hb)");
+    }
+    int threads = para.getWorkerThreads();
+    HogwildWeightVector shared = new HogwildWeightVector(d);
+
+    // the samples are drawn from the random pool if there is one
+    List<Integer> pool = para.getRandomPool();
+    int[] poolRows = null;
+    if (null != pool) {
+      poolRows = new int[pool.size()];
+      for (int i = 0; i < poolRows.length; i++) {
+        poolRows[i] = pool.get(i);
+      }
+    }
+    Random seeds = new Random();
+    Rounds rounds = new Rounds(shared, trainDataset.getPackedSamples(),
+        trainDataset.getLabelArray(), poolRows, null != poolRows ? poolRows.length
+            : trainDataset.getLabels().size(), para, threads, new Random(seeds
+            .nextLong()));
+    CyclicBarrier barrier = new CyclicBarrier(threads, rounds);
+
+    log.info("Hogwild training with " + threads + " threads");
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      // plan the first round
+      rounds.run();
+      List<Future<Object>> results = new ArrayList<Future<Object>>(threads);
+      for (int k = 0; k < threads; k++) {
+        results.add(executor.submit(new Worker(rounds, barrier, k, new Random(seeds
+            .nextLong()))));
+      }
+      for (Future<Object> result : results) {
+        result.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Hogwild training interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Hogwild worker failed", e.getCause());
+    } finally {
+      executor.shutdown();
+    }
+    log.info("Hogwild: " + rounds.roundCount + " rounds");
+
+    WeightVector w = shared.toWeightVector();
+    w.freeze();
+
+    // Calculate objective value
+    para.setScaleFoldCount(shared.getFoldCount());
+    // use the random label
+    ObjectiveEvaluator.trainingResults(w, trainDataset.getPackedSamples(),
+      trainDataset.getLabelArray(), evaluationRows(para.getRandomPool(), trainDataset
+          .getLabels().size()), ObjectiveEvaluator.HINGE, para);
+
+    // save the model to file
+    saveModel(w, trainDataset, para);
+    return w;
+  }
+
+  /**
+   * The rounds of a training run. run() is the barrier action: it ends the
+   * current round and plans the next one, while the workers wait.
+   */
+  private static final class Rounds implements Runnable {
+
+    private final HogwildWeightVector shared;
+    private final PackedSamples samples;
+    private final double[] labels;
+    // rows of the random pool, null to draw from all rows
+    private final int[] poolRows;
+    private final int n;
+    private final SVMParameters para;
+    private final int threads;
+    // change of the stored norm by each worker in the current round
+    private final double[] normChanges;
+    private final Random rand;
+    private final int[] gradIndex;
+    // the current round: iterations start..end-1, scale at start and at end
+    private int start;
+    private int end;
+    private double startScale = 1.0;
+    private double endScale = 1.0;
+    private boolean done;
+    // iterations since the stored norm was recomputed
+    private long normAge;
+    private int roundCount;
+
+    Rounds(HogwildWeightVector shared,
+           PackedSamples samples,
+           double[] labels,
+           int[] poolRows,
+           int n,
+           SVMParameters para,
+           int threads,
+           Random rand) {
+      this.shared = shared;
+      this.samples = samples;
+      this.labels = labels;
+      this.poolRows = poolRows;
+      this.n = n;
+      this.para = para;
+      this.threads = threads;
+      this.normChanges = new double[threads];
+      this.rand = rand;
+      this.gradIndex = new int[para.getExamplesPerIter()];
+    }
+
+    /**
+     * @return row of a random sample
+     */
+    int sample(Random random) {
+      int s = random.nextInt(this.n);
+      return null != this.poolRows ? this.poolRows[s] : s;
+    }
+
+    @Override
+    public void run() {
+      if (this.end > this.start) {
+        // end of a parallel round
+        for (int k = 0; k < this.threads; k++) {
+          this.shared.addToNorm(this.normChanges[k]);
+          this.normChanges[k] = 0.0;
+        }
+        this.shared.setA(this.endScale);
+        if (this.shared.needsFold()) {
+          this.shared.fold();
+          this.normAge = 0;
+        }
+        this.normAge += this.end - this.start;
+        if (this.normAge >= this.shared.getDimension()) {
+          // lost writes make the kept norm drift, O(d) every d iterations
+          this.shared.computeSnorm();
+          this.normAge = 0;
+        }
+        project();
+        this.roundCount++;
+        this.start = this.end;
+      }
+
+      int maxIter = this.para.getMaxIter();
+      double lambda = this.para.getLambda();
+      while (this.start < maxIter) {
+        int limit = (int) Math.min(maxIter, (long) this.start + (long) this.threads
+                                            * ROUND_ITERATIONS);
+        // the round ends before the scale has to be folded
+        double a = this.shared.getA();
+        int last = this.start;
+        while (last < limit) {
+          double next = a * (1.0 - eta(this.para, last) * lambda);
+          if (HogwildWeightVector.needsFold(next)) {
+            break;
+          }
+          a = next;
+          last++;
+        }
+        if (last > this.start) {
+          this.startScale = this.shared.getA();
+          this.endScale = a;
+          this.end = last;
+          return;
+        }
+        // the first iteration already folds or clears the scale
+        serialIteration(this.start);
+        project();
+        this.start++;
+        this.end = this.start;
+      }
+      this.done = true;
+    }
+
+    /**
+     * Runs iteration i alone, with the workers waiting, for a scale step that
+     * folds or clears the weights.
+     */
+    private void serialIteration(int i) {
+      double eta = eta(this.para, i);
+      int k = this.para.getExamplesPerIter();
+      double a = this.shared.getA();
+      int size = 0;
+      for (int j = 0; j < k; ++j) {
+        int r = sample(this.rand);
+        if (1 - this.labels[r]
+            * this.shared.times(this.samples.indices(r), this.samples.values(r), a) > 0.0) {
+          this.gradIndex[size++] = r;
+        }
+      }
+      this.shared.scale(1.0 - eta * this.para.getLambda());
+      a = this.shared.getA();
+      double change = 0.0;
+      for (int j = 0; j < size; ++j) {
+        int r = this.gradIndex[j];
+        change += this.shared.add(this.samples.indices(r), this.samples.values(r),
+          eta * this.labels[r] / k, a);
+      }
+      this.shared.addToNorm(change);
+    }
+
+    private void project() {
+      double s = projectionScale(this.shared.getSnorm(), this.para);
+      if (1.0 != s) {
+        this.shared.scale(s);
+      }
+    }
+  }
+
+  /**
+   * Runs the iterations start + k, start + k + threads, ... of each round until
+   * the last one.
+   */
+  private static final class Worker implements Callable<Object> {
+
+    private final Rounds rounds;
+    private final CyclicBarrier barrier;
+    private final int k;
+    private final Random rand;
+    private final int[] gradIndex;
+    private final double[] gradWeight;
+
+    Worker(Rounds rounds, CyclicBarrier barrier, int k, Random rand) {
+      this.rounds = rounds;
+      this.barrier = barrier;
+      this.k = k;
+      this.rand = rand;
+      this.gradIndex = new int[rounds.para.getExamplesPerIter()];
+      this.gradWeight = new double[rounds.para.getExamplesPerIter()];
+    }
+
+    @Override
+    public Object call() throws InterruptedException {
+      boolean finished = false;
+      try {
+        while (!this.rounds.done) {
+          this.rounds.normChanges[this.k] = round();
+          this.barrier.await();
+        }
+        finished = true;
+      } catch (BrokenBarrierException e) {
+        // another worker failed and reports its exception
+        finished = true;
+      } finally {
+        if (!finished) {
+          // release the other workers
+          this.barrier.reset();
+        }
+      }
+      return null;
+    }
+
+    /**
+     * @return change of the stored norm by this worker
+     */
+    private double round() {
+      Rounds r = this.rounds;
+      SVMParameters para = r.para;
+      double lambda = para.getLambda();
+      int examples = para.getExamplesPerIter();
+      int step = r.threads;
+      double change = 0.0;
+
+      // scale at the first iteration of this worker
+      double a = r.startScale;
+      for (int i = r.start; i < r.start + this.k && i < r.end; i++) {
+        a *= 1.0 - eta(para, i) * lambda;
+      }
+
+      for (int i = r.start + this.k; i < r.end; i += step) {
+        double eta = eta(para, i);
+
+        // calc sub-gradients at scale a
+        int size = 0;
+        for (int j = 0; j < examples; ++j) {
+          int row = r.sample(this.rand);
+          double curLoss = 1 - r.labels[row]
+                           * r.shared.times(r.samples.indices(row), r.samples
+                               .values(row), a);
+          if (curLoss > 0.0) {
+            this.gradIndex[size] = row;
+            this.gradWeight[size++] = eta * r.labels[row] / examples;
+          }
+        }
+
+        // scale w, then add the sub-gradients
+        a *= 1.0 - eta * lambda;
+        for (int j = 0; j < size; ++j) {
+          int row = this.gradIndex[j];
+          change += r.shared.add(r.samples.indices(row), r.samples.values(row),
+            this.gradWeight[j], a);
+        }
+
+        // scale at the next iteration of this worker
+        for (int next = i + 1; next < i + step && next < r.end; next++) {
+          a *= 1.0 - eta(para, next) * lambda;
+        }
+      }
+      return change;
+    }
+  }
+}
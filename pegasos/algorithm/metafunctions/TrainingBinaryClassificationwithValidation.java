@@ -18,16 +18,27 @@ package org.apache.mahout.classifier.svm.algorithm.metafunctions;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
-import java.util.Vector;
 
+import org.apache.mahout.classifier.svm.svmweightvector.WeightSnapshot;
 import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
 import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
+import org.apache.mahout.classifier.svm.datastore.PackedSamples;
 import org.apache.mahout.classifier.svm.parameters.SVMParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * SVM with linear kernel (Pegasos) BinaryClassificationTraining
+ * 
+ * w is validated at s random iterations, the best candidate is kept as a
+ * copy-on-write snapshot (see WeightSnapshot). If para.isAverageCandidates(),
+ * all candidates are kept and their average is validated as one more
+ * candidate.
  */
 public class TrainingBinaryClassificationwithValidation extends Training {
+  
+  private static final Logger log = LoggerFactory
+      .getLogger(TrainingBinaryClassificationwithValidation.class);
     
   /**
    * SVM (Pegasos) BinaryClassificationTraining
@@ -42,17 +53,27 @@ public class TrainingBinaryClassificationwithValidation extends Training {
   public WeightVector training(DataSetHandler trainDataset, SVMParameters para) {
     
     // create the weight
-    WeightVector w = new WeightVector(Integer.MAX_VALUE);
-    WeightVector bestW = new WeightVector(Integer.MAX_VALUE);
+    WeightVector w = createWeightVector(trainDataset, para);
+    WeightSnapshot best = null;
     double bestObj = 1.0;
-    List<Integer> validateIndices = new ArrayList<Integer>();
     Random rand = new Random();
     double eta = 0.0;
-    for (int i = 0; i < para.getValidateExampleNumber(); i++) {
-      if (para.getRandomPool() != null) {
-        validateIndices.add(para.getRandomPool().get(i));
+    
+    // primitive samples and scratch buffers, the main loop does not allocate
+    PackedSamples samples = trainDataset.getPackedSamples();
+    double[] labels = trainDataset.getLabelArray();
+    List<Integer> pool = para.getRandomPool();
+    int n = trainDataset.getLabels().size();
+    int k = para.getExamplesPerIter();
+    int[] gradIndex = new int[k];
+    double[] gradWeight = new double[k];
+    
+    int[] validateIndices = new int[para.getValidateExampleNumber()];
+    for (int i = 0; i < validateIndices.length; i++) {
+      if (null != pool) {
+        validateIndices[i] = pool.get(i);
       } else {
-        validateIndices.add(rand.nextInt(trainDataset.getLabels().size()));
+        validateIndices[i] = rand.nextInt(n);
       }
     }
     
@@ -60,148 +81,129 @@ public class TrainingBinaryClassificationwithValidation extends Training {
     int s = 5; // corresponds to confidence of 0.9933
     int blockSize = para.getMaxIter() / s;
     
-    List<Integer> candidates = new ArrayList<Integer>();
+    // ascending iterations at which w is validated
+    int[] candidates = new int[s];
     for (int i = 0; i < s - 1; i++) {
-      candidates.add(blockSize * i + rand.nextInt(blockSize));
+      candidates[i] = blockSize * i + rand.nextInt(blockSize);
     }
-    candidates.add(para.getMaxIter() - 1);
-    int r = 0;
-    // main loop
-    for (int i = 0; i < para.getMaxIter(); ++i) {
-      // learning rate
-      // pegasos eta rule
-      if (0 == para.getEtaRuleType()) {
-        eta = 1 / (para.getLambda() * (i + 2));
-      } else if (1 == para.getEtaRuleType()) {
-        eta = para.getEtaConstant() / Math.sqrt(i + 2);
-        w.setAtoOne();
-      } else {
-        eta = para.getEtaConstant();
-      }
+    candidates[s - 1] = para.getMaxIter() - 1;
+    int nextCandidate = 0;
+    List<WeightSnapshot> snapshots = para.isAverageCandidates()
+        ? new ArrayList<WeightSnapshot>(s) : null;
+    ObjectiveEvaluator evaluator = new ObjectiveEvaluator(para.getWorkerThreads());
+    try {
+      int r = 0;
+      // main loop
+      for (int i = 0; i < para.getMaxIter(); ++i) {
+        // learning rate
+        eta = eta(para, i);
       
-      Vector<Integer> gradIndex = new Vector<Integer>();
-      Vector<Double> gradWeight = new Vector<Double>();
-      
-      // calc sub-gradients
-      for (int j = 0; j < para.getExamplesPerIter(); ++j) {
-        // choose random example
-        if (para.getRandomPool() != null) {
-          r = para.getRandomPool().get(i);
-        } else {
-          r = rand.nextInt(trainDataset.getLabels().size());
-        }
+        // calc sub-gradients
+        int gradSize = 0;
+        for (int j = 0; j < k; ++j) {
+          // choose random example
+          r = null != pool ? pool.get(i) : rand.nextInt(n);
         
-        // calculate prediction
-        double prediction = w.times(trainDataset.getDataset().getRow(r));
+          // calculate prediction
+          double prediction = w.times(samples.indices(r), samples.values(r));
         
-        // calculate loss
-        double curLoss = 1 - trainDataset.getLabels().get(r) * prediction;
-        if (curLoss < 0.0) {
-          curLoss = 0.0;
-        }
+          // calculate loss
+          double curLoss = 1 - labels[r] * prediction;
         
-        // and add to the gradient
-        if (curLoss > 0.0) {
-          gradIndex.add(r);
-          gradWeight.add(eta * trainDataset.getLabels().get(r)
-                         / para.getExamplesPerIter());
+          // and add to the gradient
+          if (curLoss > 0.0) {
+            gradIndex[gradSize] = r;
+            gradWeight[gradSize++] = eta * labels[r] / k;
+          }
         }
-      }
-      
-      // scale w
-      w.scale(1.0 - eta * para.getLambda());
-      
-      // and add sub-gradients
-      for (int j = 0; j < gradIndex.size(); ++j) {
-        w.add(trainDataset.getDataset().getRow(gradIndex.get(j)), gradWeight.get(j)
-            .doubleValue());
-      }
       
-      double norm2 = 0.0;
+        // scale w
+        w.scale(1.0 - eta * para.getLambda());
       
-      // Project if needed
-      if (0 == para.getProjectionRule()) {
-        norm2 = w.getSnorm();
-        if (norm2 > 1.0 / para.getLambda()) {
-          w.scale(Math.sqrt(1.0 / (para.getLambda() * norm2)));
+        // and add sub-gradients
+        for (int j = 0; j < gradSize; ++j) {
+          w.add(samples.indices(gradIndex[j]), samples.values(gradIndex[j]),
+            gradWeight[j]);
         }
-      } else if (1 == para.getProjectionRule()) {
-        norm2 = w.getSnorm();
-        if (norm2 > (para.getProjectionConstant() * para.getProjectionConstant())) {
-          w.scale(para.getProjectionConstant() / Math.sqrt(norm2));
-        }
-      } // else -- no projection
       
-      // and validate
-      if (candidates.contains(i)) {
-        double obj = 0.0;
-        int index = 0;
-        for (int j = 0; j < validateIndices.size(); j++) {
-          index = validateIndices.get(j);
-          double curLoss = 1 - trainDataset.getLabels().get(index)
-                           * w.times(trainDataset.getDataset().getRow(index));
-          if (curLoss < 0.0) {
-            curLoss = 0.0;
-          }
-          obj += curLoss;
-        }
-        
-        obj /= validateIndices.size();
-        obj += para.getLambda() / 2.0 * w.getSnorm();
+        project(w, para);
+      
+        // and validate
+        if (nextCandidate < s && i == candidates[nextCandidate]) {
+          nextCandidate++;
+          double obj = validationObjective(evaluator, w, samples, labels,
+            validateIndices, para);
         
-        if (obj <= bestObj) {
-          bestW = w;
-          bestObj = obj;
+          WeightSnapshot candidate = null;
+          if (null != snapshots) {
+            candidate = w.snapshot();
+            snapshots.add(candidate);
+          }
+          if (obj <= bestObj) {
+            if (null == snapshots) {
+              if (null != best) {
+                best.release();
+              }
+              candidate = w.snapshot();
+            }
+            best = candidate;
+            bestObj = obj;
+          }
         }
       }
-    }
     
-    // Calculate objective value
-    para.setNormValue(bestW.getSnorm());
-    para.setObjValue(para.getNormValue() * para.getLambda() / 2.0);
-    para.setLossValue(0.0);
-    para.setZeroOneError(0.0);
-    // use the random label
-    if (para.getRandomPool() != null) {
-      for (int i = 0; i < trainDataset.getLabels().size(); ++i) {
-        
-        double curLoss = 1
-                         - trainDataset.getLabels().get(para.getRandomPool().get(i))
-                         * bestW.times(trainDataset.getDataset()
-                             .getRow(para.getRandomPool().get(i)));
-        if (curLoss < 0.0) {
-          curLoss = 0.0;
+      WeightVector bestW = null != best ? best.toWeightVector()
+          : createWeightVector(trainDataset, para);
+      if (null != snapshots && !snapshots.isEmpty()) {
+        List<WeightVector> models = new ArrayList<WeightVector>(snapshots.size());
+        for (WeightSnapshot candidate : snapshots) {
+          models.add(candidate.toWeightVector());
         }
-        para.setLossValue(para.getLossValue() + curLoss);
-        para.setObjValue(para.getObjValue() + curLoss);
-        if (curLoss >= 1.0) {
-          para.setZeroOneError(para.getZeroOneError() + 1.0);
-        }
-      }
-    } else {
-      for (int i = 0; i < trainDataset.getLabels().size(); ++i) {
-        double curLoss = 1 - trainDataset.getLabels().get(i)
-                         * bestW.times(trainDataset.getDataset().getRow(i));
-        if (curLoss < 0.0) {
-          curLoss = 0.0;
+        WeightVector average = WeightVector.average(models);
+        double obj = validationObjective(evaluator, average, samples, labels,
+          validateIndices, para);
+        log.info("Validation objective of the best candidate: " + bestObj
+                 + ", of the average of " + models.size() + " candidates: " + obj);
+        if (obj <= bestObj) {
+          bestW = average;
+          bestObj = obj;
         }
-        para.setLossValue(para.getLossValue() + curLoss);
-        para.setObjValue(para.getObjValue() + curLoss);
-        if (curLoss >= 1.0) {
-          para.setZeroOneError(para.getZeroOneError() + 1.0);
+        for (WeightSnapshot candidate : snapshots) {
+          candidate.release();
         }
       }
-    }
+      if (null != best) {
+        best.release();
+      }
     
-    para.setLossValue(para.getLossValue() / trainDataset.getLabels().size());
-    para.setObjValue(para.getObjValue() / trainDataset.getLabels().size());
-    para.setZeroOneError(para.getZeroOneError() / trainDataset.getLabels().size());
+      bestW.freeze();
     
-    // save the model to file
-    if (para.getModelFileName() != null && null == para.getHdfsServerAddr()) {
-      bestW.writeToFile(para.getModelFileName(), para.getClassNum(),
-        trainDataset.getUniqueLables());
+      // Calculate objective value
+      para.setScaleFoldCount(w.getFoldCount());
+      // use the random label
+      evaluator.setTrainingResults(bestW, samples, labels, evaluationRows(pool, n),
+        ObjectiveEvaluator.HINGE, para);
+    
+      // save the model to file
+      saveModel(bestW, trainDataset, para);
+      return bestW;
+    } finally {
+      evaluator.shutdown();
     }
-    return bestW;
+  }
+  
+  /**
+   * @return lambda / 2 * |w|^2 + the average hinge loss of the validation rows
+   */
+  private static double validationObjective(ObjectiveEvaluator evaluator,
+                                            WeightVector w,
+                                            PackedSamples samples,
+                                            double[] labels,
+                                            int[] validateIndices,
+                                            SVMParameters para) {
+    double obj = evaluator.evaluate(w, samples, labels, validateIndices,
+      ObjectiveEvaluator.HINGE, null).loss;
+    obj /= validateIndices.length;
+    return obj + para.getLambda() / 2.0 * w.getSnorm();
   }
 }
@@ -40,6 +40,21 @@ public class TrainingFactory {
         return new TrainingMultiClassOneVsOthers();
       case 4:
         return new TrainingBinaryClassificationwithValidation();
+      case 6:
+        // binary classification, averaged SGD
+        return new TrainingBinaryClassificationAveraged();
+      case 7:
+        // binary classification, Hogwild parallel SGD
+        return new TrainingBinaryClassificationHogwild();
+      case 8:
+        // one-vs.-others, all classes in one pass
+        return new TrainingMultiClassOneVsOthersFused();
+      case 9:
+        // binary classification, dual coordinate descent
+        return new TrainingBinaryClassificationDualCD();
+      case 10:
+        // L2-regularized logistic regression, trust region Newton method
+        return new TrainingLogisticRegressionTron();
         
       default:
         throw new RuntimeException();
@@ -0,0 +1,515 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.algorithm.metafunctions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
+import org.apache.mahout.classifier.svm.datastore.PackedSamples;
+import org.apache.mahout.classifier.svm.parameters.SVMParameters;
+import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * L2-regularized logistic regression with a trust region Newton method (Lin,
+ * Weng and Keerthi, Trust Region Newton Method for Large-Scale Logistic
+ * Regression, JMLR 2008; TRON of LIBLINEAR).
+ *
+ * It minimizes lambda / 2 * |w|^2 + 1/n sum log(1 + exp(-y_i w.x_i)), i.e. C
+ * = 1 / (lambda * n). Each Newton step solves the trust region subproblem with
+ * conjugate gradients, which only needs Hessian-vector products X' D X s. The
+ * products, the objective and the gradient are computed over blocks of rows on
+ * para.getWorkerThreads() threads. It stops when |grad f| is reduced by
+ * para.getTolerance() (0.01 if not set, scaled as in LIBLINEAR), or after
+ * maxIter Newton iterations (at most MAX_ITERATIONS).
+ *
+ * The model is a standard WeightVector; P(y = 1 | x) = 1 / (1 + exp(-w.x)),
+ * see PredictionLogisticRegression. The weights need a bounded feature space.
+ */
+public class TrainingLogisticRegressionTron extends Training {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(TrainingLogisticRegressionTron.class);
+  // LIBLINEAR's maximum number of Newton iterations
+  private static final int MAX_ITERATIONS = 1000;
+  // LIBLINEAR's default tolerance of primal logistic regression
+  private static final double DEFAULT_TOLERANCE = 0.01;
+  // smaller blocks of rows are not worth a task
+  private static final int MIN_BLOCK_ROWS = 1024;
+
+  @Override
+  public boolean supportsWarmStart() {
+    return true;
+  }
+
+  /**
+   * L2-regularized logistic regression with TRON.
+   *
+   * @param trainDataset
+   *          Train data set
+   * @param para
+   *          Contains parameters for training and some useful results
+   * @return Trained w
+   */
+  @Override
+  public WeightVector training(DataSetHandler trainDataset, SVMParameters para) {
+    double tolerance = tolerance(para, DEFAULT_TOLERANCE);
+    int d = para.getHashBits() > 0 ? 1 << para.getHashBits() : trainDataset
+        .getDimension();
+    if (d <= 0 || (0 == para.getHashBits() && d > para.getMaxDenseDimension())) {
+      throw new IllegalArgumentException(
+          "Logistic regression needs a bounded feature space, use feature hashing (-hb)");
+    }
+
+    // the loaded rows
+    int l = trainDataset.getLabels().size();
+    int[] rows = new int[l];
+    int pos = 0;
+    for (Integer r : trainDataset.getLabels().keySet()) {
+      rows[pos++] = r;
+    }
+    double[] labels = trainDataset.getLabelArray();
+    int positives = 0;
+    for (int s = 0; s < l; s++) {
+      if (labels[rows[s]] > 0) {
+        positives++;
+      }
+    }
+
+    int threads = Math.max(1, Math.min(para.getWorkerThreads(),
+      (l + MIN_BLOCK_ROWS - 1) / MIN_BLOCK_ROWS));
+    LogisticLoss loss = new LogisticLoss(trainDataset.getPackedSamples(), rows,
+        labels, d, 1.0 / (para.getLambda() * l), threads);
+    // warm start
+    double[] w = new double[d];
+    boolean warmStart = null != getInitialWeights();
+    if (warmStart) {
+      for (int f = 0; f < d; f++) {
+        w[f] = getInitialWeights().get(f);
+      }
+    }
+    int iterations;
+    try {
+      // stopping tolerance of LIBLINEAR, relative to the smaller class
+      double eps = tolerance * Math.max(Math.min(positives, l - positives), 1) / l;
+      iterations = tron(loss, w, warmStart, eps, Math.min(para.getMaxIter(),
+        MAX_ITERATIONS));
+    } finally {
+      loss.shutdown();
+    }
+    log.info("TRON: " + iterations + " Newton iterations, " + loss.getProducts()
+             + " Hessian-vector products");
+
+    // the model
+    WeightVector model = new WeightVector(d, WeightVector.DENSE);
+    int[] index = new int[1];
+    double[] value = new double[1];
+    for (int f = 0; f < d; f++) {
+      if (0.0 != w[f]) {
+        index[0] = f;
+        value[0] = w[f];
+        model.add(index, value, 1.0);
+      }
+    }
+    model.freeze();
+
+    // Calculate objective value
+    para.setScaleFoldCount(model.getFoldCount());
+    ObjectiveEvaluator.trainingResults(model, trainDataset.getPackedSamples(),
+      labels, rows, ObjectiveEvaluator.LOGISTIC, para);
+
+    // save the model to file
+    saveModel(model, trainDataset, para);
+    return model;
+  }
+
+  /**
+   * log(1 + exp(x)) without overflow
+   */
+  static double logOnePlusExp(double x) {
+    return x > 0.0 ? x + Math.log1p(Math.exp(-x)) : Math.log1p(Math.exp(x));
+  }
+
+  /**
+   * Trust region Newton method, as tron.cpp of LIBLINEAR.
+   *
+   * @param warmStart
+   *          true if w is not 0
+   * @return number of Newton iterations
+   */
+  private static int tron(LogisticLoss loss,
+                          double[] w,
+                          boolean warmStart,
+                          double eps,
+                          int maxIter) {
+    final double eta0 = 1e-4;
+    final double eta1 = 0.25;
+    final double eta2 = 0.75;
+    final double sigma1 = 0.25;
+    final double sigma2 = 0.5;
+    final double sigma3 = 4.0;
+
+    int d = w.length;
+    double[] g = new double[d];
+    double[] s = new double[d];
+    double[] r = new double[d];
+    double[] wNew = new double[d];
+
+    // the stopping condition is relative to |grad f| at w = 0, also for a warm
+    // start (wNew is still 0)
+    double gnorm0 = 0.0;
+    if (warmStart) {
+      loss.fun(wNew);
+      loss.grad(wNew, g);
+      gnorm0 = norm(g);
+    }
+    double f = loss.fun(w);
+    loss.grad(w, g);
+    double delta = norm(g);
+    double gnorm = delta;
+    if (!warmStart) {
+      gnorm0 = gnorm;
+    }
+    if (gnorm <= eps * gnorm0) {
+      return 0;
+    }
+
+    int iter = 1;
+    while (iter <= maxIter) {
+      int cgIter = trcg(loss, delta, g, s, r);
+
+      for (int i = 0; i < d; i++) {
+        wNew[i] = w[i] + s[i];
+      }
+      double gs = dot(g, s);
+      double prered = -0.5 * (gs - dot(s, r));
+      double fNew = loss.fun(wNew);
+
+      // compute the actual reduction
+      double actred = f - fNew;
+
+      // on the first iteration, adjust the initial step bound
+      double snorm = norm(s);
+      if (1 == iter) {
+        delta = Math.min(delta, snorm);
+      }
+
+      // compute prediction alpha*snorm of the step
+      double alpha;
+      if (fNew - f - gs <= 0) {
+        alpha = sigma3;
+      } else {
+        alpha = Math.max(sigma1, -0.5 * (gs / (fNew - f - gs)));
+      }
+
+      // update the trust region bound according to the ratio of actual to
+      // predicted reduction
+      if (actred < eta0 * prered) {
+        delta = Math.min(Math.max(alpha, sigma1) * snorm, sigma2 * delta);
+      } else if (actred < eta1 * prered) {
+        delta = Math.max(sigma1 * delta, Math.min(alpha * snorm, sigma2 * delta));
+      } else if (actred < eta2 * prered) {
+        delta = Math.max(sigma1 * delta, Math.min(alpha * snorm, sigma3 * delta));
+      } else {
+        delta = Math.max(delta, Math.min(alpha * snorm, sigma3 * delta));
+      }
+
+      log.debug("TRON iter " + iter + " act " + actred + " pre " + prered
+                + " delta " + delta + " f " + f + " |g| " + gnorm + " CG " + cgIter);
+
+      if (actred > eta0 * prered) {
+        iter++;
+        System.arraycopy(wNew, 0, w, 0, d);
+        f = fNew;
+        loss.grad(w, g);
+        gnorm = norm(g);
+        if (gnorm <= eps * gnorm0) {
+          break;
+        }
+      }
+      if (f < -1.0e+32) {
+        log.warn("TRON: f < -1.0e+32");
+        break;
+      }
+      if (Math.abs(actred) <= 0 && prered <= 0) {
+        log.warn("TRON: actred and prered <= 0");
+        break;
+      }
+      if (Math.abs(actred) <= 1.0e-12 * Math.abs(f)
+          && Math.abs(prered) <= 1.0e-12 * Math.abs(f)) {
+        log.warn("TRON: actred and prered too small");
+        break;
+      }
+    }
+    return iter - 1;
+  }
+
+  /**
+   * Conjugate gradients for min g.s + s.H.s / 2 subject to |s| <= delta.
+   * Returns the number of CG iterations, s is the step and r the residual
+   * -(g + H s).
+   */
+  private static int trcg(LogisticLoss loss, double delta, double[] g, double[] s,
+                          double[] r) {
+    int d = g.length;
+    double[] dir = new double[d];
+    double[] hd = new double[d];
+    for (int i = 0; i < d; i++) {
+      s[i] = 0.0;
+      r[i] = -g[i];
+      dir[i] = r[i];
+    }
+    double cgtol = 0.1 * norm(g);
+
+    int cgIter = 0;
+    double rTr = dot(r, r);
+    while (true) {
+      if (Math.sqrt(rTr) <= cgtol) {
+        break;
+      }
+      cgIter++;
+      loss.hv(dir, hd);
+
+      double alpha = rTr / dot(dir, hd);
+      axpy(alpha, dir, s);
+      if (norm(s) > delta) {
+        log.debug("TRON: cg reaches trust region boundary");
+        axpy(-alpha, dir, s);
+
+        double std = dot(s, dir);
+        double sts = dot(s, s);
+        double dtd = dot(dir, dir);
+        double dsq = delta * delta;
+        double rad = Math.sqrt(std * std + dtd * (dsq - sts));
+        if (std >= 0) {
+          alpha = (dsq - sts) / (std + rad);
+        } else {
+          alpha = (rad - std) / dtd;
+        }
+        axpy(alpha, dir, s);
+        axpy(-alpha, hd, r);
+        break;
+      }
+      axpy(-alpha, hd, r);
+      double rnewTrnew = dot(r, r);
+      double beta = rnewTrnew / rTr;
+      for (int i = 0; i < d; i++) {
+        dir[i] = r[i] + beta * dir[i];
+      }
+      rTr = rnewTrnew;
+    }
+    return cgIter;
+  }
+
+  private static double dot(double[] a, double[] b) {
+    double sum = 0.0;
+    for (int i = 0; i < a.length; i++) {
+      sum += a[i] * b[i];
+    }
+    return sum;
+  }
+
+  private static double norm(double[] a) {
+    return Math.sqrt(dot(a, a));
+  }
+
+  // y = y + alpha * x
+  private static void axpy(double alpha, double[] x, double[] y) {
+    for (int i = 0; i < x.length; i++) {
+      y[i] += alpha * x[i];
+    }
+  }
+
+  /**
+   * f(w) = w.w / 2 + C sum log(1 + exp(-y_i w.x_i)), its gradient and its
+   * Hessian-vector products, over blocks of rows on a thread pool. fun() must be
+   * called before grad() and hv() at the same w.
+   */
+  private static final class LogisticLoss {
+
+    private final PackedSamples samples;
+    private final int[] rows;
+    private final double[] labels;
+    private final int d;
+    private final double c;
+    private final int blocks;
+    private final ExecutorService executor;
+    // y_i w.x_i at the last w of fun(), then the coefficients of X'
+    private final double[] z;
+    // sigma_i (1 - sigma_i) at the last w of grad()
+    private final double[] dd;
+    private final double[] coef;
+    private final double[][] partial;
+    private long products;
+
+    LogisticLoss(PackedSamples samples,
+                 int[] rows,
+                 double[] labels,
+                 int d,
+                 double c,
+                 int blocks) {
+      this.samples = samples;
+      this.rows = rows;
+      this.labels = labels;
+      this.d = d;
+      this.c = c;
+      this.blocks = blocks;
+      this.executor = blocks > 1 ? Executors.newFixedThreadPool(blocks) : null;
+      this.z = new double[rows.length];
+      this.dd = new double[rows.length];
+      this.coef = new double[rows.length];
+      this.partial = new double[blocks][];
+    }
+
+    long getProducts() {
+      return this.products;
+    }
+
+    void shutdown() {
+      if (null != this.executor) {
+        this.executor.shutdown();
+      }
+    }
+
+    double fun(double[] w) {
+      timesRows(w, this.z);
+      double f = 0.0;
+      for (int s = 0; s < this.rows.length; s++) {
+        this.z[s] *= this.labels[this.rows[s]];
+        f += logOnePlusExp(-this.z[s]);
+      }
+      return f * this.c + dot(w, w) / 2.0;
+    }
+
+    void grad(double[] w, double[] g) {
+      for (int s = 0; s < this.rows.length; s++) {
+        double sigma = 1.0 / (1.0 + Math.exp(-this.z[s]));
+        this.dd[s] = sigma * (1.0 - sigma);
+        this.coef[s] = this.c * (sigma - 1.0) * this.labels[this.rows[s]];
+      }
+      transTimesRows(this.coef, g);
+      for (int i = 0; i < this.d; i++) {
+        g[i] += w[i];
+      }
+    }
+
+    void hv(double[] s, double[] hs) {
+      this.products++;
+      timesRows(s, this.coef);
+      for (int i = 0; i < this.rows.length; i++) {
+        this.coef[i] *= this.c * this.dd[i];
+      }
+      transTimesRows(this.coef, hs);
+      for (int i = 0; i < this.d; i++) {
+        hs[i] += s[i];
+      }
+    }
+
+    // out_s = x_s.v for all rows
+    private void timesRows(final double[] v, final double[] out) {
+      List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(this.blocks);
+      for (int b = 0; b < this.blocks; b++) {
+        final int from = b * this.rows.length / this.blocks;
+        final int to = (b + 1) * this.rows.length / this.blocks;
+        tasks.add(new Callable<Object>() {
+          @Override
+          public Object call() {
+            for (int s = from; s < to; s++) {
+              int[] indices = LogisticLoss.this.samples.indices(LogisticLoss.this.rows[s]);
+              double[] values = LogisticLoss.this.samples.values(LogisticLoss.this.rows[s]);
+              double sum = 0.0;
+              for (int j = 0; j < indices.length; j++) {
+                sum += values[j] * v[indices[j]];
+              }
+              out[s] = sum;
+            }
+            return null;
+          }
+        });
+      }
+      run(tasks);
+    }
+
+    // out = sum_s a_s x_s, each block sums into its own array
+    private void transTimesRows(final double[] a, double[] out) {
+      List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(this.blocks);
+      for (int b = 0; b < this.blocks; b++) {
+        final int from = b * this.rows.length / this.blocks;
+        final int to = (b + 1) * this.rows.length / this.blocks;
+        if (null == this.partial[b]) {
+          this.partial[b] = new double[this.d];
+        }
+        final double[] sum = this.partial[b];
+        tasks.add(new Callable<Object>() {
+          @Override
+          public Object call() {
+            Arrays.fill(sum, 0.0);
+            for (int s = from; s < to; s++) {
+              if (0.0 == a[s]) {
+                continue;
+              }
+              int[] indices = LogisticLoss.this.samples.indices(LogisticLoss.this.rows[s]);
+              double[] values = LogisticLoss.this.samples.values(LogisticLoss.this.rows[s]);
+              for (int j = 0; j < indices.length; j++) {
+                sum[indices[j]] += a[s] * values[j];
+              }
+            }
+            return null;
+          }
+        });
+      }
+      run(tasks);
+      System.arraycopy(this.partial[0], 0, out, 0, this.d);
+      for (int b = 1; b < this.blocks; b++) {
+        double[] sum = this.partial[b];
+        for (int i = 0; i < this.d; i++) {
+          out[i] += sum[i];
+        }
+      }
+    }
+
+    private void run(List<Callable<Object>> tasks) {
+      if (null == this.executor) {
+        for (Callable<Object> task : tasks) {
+          try {
+            task.call();
+          } catch (Exception e) {
+            throw new IllegalStateException("Logistic regression failed", e);
+          }
+        }
+        return;
+      }
+      try {
+        for (Future<Object> result : this.executor.invokeAll(tasks)) {
+          result.get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Logistic regression interrupted", e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Logistic regression failed", e.getCause());
+      }
+    }
+  }
+}
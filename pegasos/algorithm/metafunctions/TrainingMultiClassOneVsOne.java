@@ -16,16 +16,23 @@
 package org.apache.mahout.classifier.svm.algorithm.metafunctions;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
 import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
+import org.apache.mahout.classifier.svm.datastore.OneVsOthersLabels;
 import org.apache.mahout.classifier.svm.parameters.SVMParameters;
-import org.apache.mahout.math.SparseMatrix;
 
 /**
  * SVM Sequential Multi-classification Training process, which uses linear
  * kernel. Implementing the One-vs.-one scheme.
+ * 
+ * The rows of each class are indexed once. The problem of classes i and j is a
+ * view of their rows (DataSetHandler.rowView) with the labels 1.0 and -1.0,
+ * the vectors are not copied. The problems are trained on
+ * para.getWorkerThreads() threads.
  */
 public class TrainingMultiClassOneVsOne extends Training {
   
@@ -43,61 +50,87 @@ public class TrainingMultiClassOneVsOne extends Training {
   @Override
   public WeightVector training(DataSetHandler trainDataset, SVMParameters para) {
     
-    // the main loop
-    int pos = 0;
     String modelPath = para.getModelFileName();
-    Training binaryClassifier = new TrainingBinaryClassification();
-    
-    // set the model name, shut down write one file for each model.
-    para.setModelFileName(null);
-    
-    // get the all labels from data set.
-    Double[] labelList = new Double[trainDataset.getUniqueLables().size()];
-    int labelIndex = 0;
-    for (Double a : trainDataset.getUniqueLables()) {
-      labelList[labelIndex++] = a;
-    }
     
     // ensure the random pool is null;
     para.setRandomPool(null);
-    List<WeightVector> weightList = new ArrayList<WeightVector>();
     
-    int[] cardinality = {Integer.MAX_VALUE, Integer.MAX_VALUE};
+    List<DataSetHandler> problems = problems(trainDataset, labelList(trainDataset));
+    List<WeightVector> weightList = trainBinaryProblems(problems, para);
     
-    DataSetHandler twoClassData = new DataSetHandler("nofile");
-    twoClassData.getUniqueLables().addAll(trainDataset.getUniqueLables());
-    // currently, we only consider the small number of class.
-    // one-vs-one. i-j classifier.
-    for (int i = 0; i < para.getClassNum(); i++) {
-      for (int j = i + 1; j < para.getClassNum(); j++) {
-        
-        // create a subset of samples.
-        twoClassData.getLabels().clear();
-        twoClassData.setDataset(new SparseMatrix(cardinality));
-        
-        pos = 0;
-        // got related samples from pre-fetched data set.
-        for (int index = 0; index < trainDataset.getLabels().size(); index++) {
-          if (labelList[i].equals(trainDataset.getLabels().get(index))) {
-            twoClassData.getLabels().put(pos, 1.0);
-            twoClassData.getDataset().assignRow(pos, trainDataset.getDataset()
-                .getRow(index));
-            pos++;
-          } else if (labelList[j].equals(trainDataset.getLabels().get(index))) {
-            twoClassData.getLabels().put(pos, -1.0);
-            twoClassData.getDataset().assignRow(pos, trainDataset.getDataset()
-                .getRow(index));
-            pos++;
-          }
-        }
-        
-        // train the model.
-        weightList.add(binaryClassifier.training(twoClassData, para));
-      }
-    }
     // write the vector to file
     WeightVector.batchDumpModels(modelPath, weightList, para,
       trainDataset.getUniqueLables());
     return null;
   }
+  
+  /**
+   * @return the binary problems of the class pairs i < j, in that order
+   */
+  static List<DataSetHandler> problems(DataSetHandler trainDataset, Double[] labelList) {
+    // row numbers of the samples of each class, in ascending order
+    int[][] classRows = classRows(trainDataset, labelList);
+    
+    // currently, we only consider the small number of class.
+    // one-vs-one. i-j classifier on the rows of class i (1.0) and j (-1.0).
+    List<DataSetHandler> problems = new ArrayList<DataSetHandler>();
+    for (int i = 0; i < labelList.length; i++) {
+      for (int j = i + 1; j < labelList.length; j++) {
+        int[] rows = merge(classRows[i], classRows[j]);
+        problems.add(trainDataset.rowView(rows, new OneVsOthersLabels(
+          trainDataset.getLabels(), labelList[i], rows)));
+      }
+    }
+    return problems;
+  }
+  
+  /**
+   * @return for each label of labelList, the row numbers of its samples
+   */
+  private static int[][] classRows(DataSetHandler trainDataset, Double[] labelList) {
+    Map<Double,Integer> classIndex = new HashMap<Double,Integer>();
+    for (int i = 0; i < labelList.length; i++) {
+      classIndex.put(labelList[i], i);
+    }
+    int n = trainDataset.getLabels().size();
+    int[] rowClass = new int[n];
+    int[] counts = new int[labelList.length];
+    for (int index = 0; index < n; index++) {
+      Integer c = classIndex.get(trainDataset.getLabels().get(index));
+      rowClass[index] = null == c ? -1 : c;
+      if (null != c) {
+        counts[c]++;
+      }
+    }
+    int[][] classRows = new int[labelList.length][];
+    for (int c = 0; c < labelList.length; c++) {
+      classRows[c] = new int[counts[c]];
+      counts[c] = 0;
+    }
+    for (int index = 0; index < n; index++) {
+      int c = rowClass[index];
+      if (c >= 0) {
+        classRows[c][counts[c]++] = index;
+      }
+    }
+    return classRows;
+  }
+  
+  /**
+   * @return the ascending row numbers of a and b, which are ascending
+   */
+  private static int[] merge(int[] a, int[] b) {
+    int[] rows = new int[a.length + b.length];
+    int i = 0;
+    int j = 0;
+    int pos = 0;
+    while (i < a.length || j < b.length) {
+      if (j >= b.length || (i < a.length && a[i] < b[j])) {
+        rows[pos++] = a[i++];
+      } else {
+        rows[pos++] = b[j++];
+      }
+    }
+    return rows;
+  }
 }
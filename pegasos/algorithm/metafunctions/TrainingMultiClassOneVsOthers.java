@@ -16,12 +16,11 @@
 package org.apache.mahout.classifier.svm.algorithm.metafunctions;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
 import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
+import org.apache.mahout.classifier.svm.datastore.OneVsOthersLabels;
 import org.apache.mahout.classifier.svm.parameters.SVMParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +29,9 @@ import org.slf4j.LoggerFactory;
  * SVM Sequential Multi-classification Training process, which uses linear
  * kernel. Implementing the One-vs.-others scheme
  * 
+ * The binary problems see the data set through OneVsOthersLabels views, so
+ * they share the rows and are trained at the same time on
+ * para.getWorkerThreads() threads.
  */
 public class TrainingMultiClassOneVsOthers extends Training {
   
@@ -47,39 +49,14 @@ public class TrainingMultiClassOneVsOthers extends Training {
   @Override
   public WeightVector training(DataSetHandler trainDataset, SVMParameters para) {
     
-    Training binaryClassifier = new TrainingBinaryClassification();
-    
     String modelPath = para.getModelFileName();
-    Double[] labelList = new Double[trainDataset.getUniqueLables().size()];
-    int labelIndex = 0;
-    for (Double a : trainDataset.getUniqueLables()) {
-      labelList[labelIndex++] = a;
-    }
     
     // ensure the random pool is null;
     para.setRandomPool(null);
-    List<WeightVector> weightList = new ArrayList<WeightVector>();
-    
-    // one- vs.-others training
-    Map<Integer,Double> originalIndex = new HashMap<Integer,Double>();
     
-    originalIndex.putAll(trainDataset.getLabels());
-    
-    // the main loop for multi-class training
-    for (int i = 0; i < para.getClassNum(); i++) {
-      // process the labels.
-      for (int index = 0; index < originalIndex.size(); index++) {
-        if (labelList[i].equals(originalIndex.get(index))) {
-          trainDataset.getLabels().put(index, 1.0);
-        } else {
-          trainDataset.getLabels().put(index, -1.0);
-        }
-      }
-      
-      // train the model.
-      weightList.add(binaryClassifier.training(trainDataset, para));
-      log.info("Training: " + i);
-    }
+    List<DataSetHandler> problems = problems(trainDataset, labelList(trainDataset));
+    log.info("One-vs.-others training of " + problems.size() + " classes");
+    List<WeightVector> weightList = trainBinaryProblems(problems, para);
     
     // write the vector to file
     WeightVector.batchDumpModels(modelPath, weightList, para,
@@ -87,4 +64,17 @@ public class TrainingMultiClassOneVsOthers extends Training {
     
     return null;
   }
+  
+  /**
+   * @return the binary problems of each class against the others
+   */
+  static List<DataSetHandler> problems(DataSetHandler trainDataset, Double[] labelList) {
+    // the labels of class i against the others, the data set is not changed.
+    List<DataSetHandler> problems = new ArrayList<DataSetHandler>();
+    for (int i = 0; i < labelList.length; i++) {
+      problems.add(trainDataset.labelView(new OneVsOthersLabels(trainDataset
+          .getLabels(), labelList[i])));
+    }
+    return problems;
+  }
 }
@@ -0,0 +1,161 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.algorithm.metafunctions;
+
+import java.util.List;
+import java.util.Random;
+
+import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
+import org.apache.mahout.classifier.svm.datastore.PackedSamples;
+import org.apache.mahout.classifier.svm.parameters.SVMParameters;
+import org.apache.mahout.classifier.svm.svmweightvector.MultiClassWeightBlock;
+import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SVM Sequential Multi-classification Training process, which uses linear
+ * kernel. Implementing the One-vs.-others scheme with all K classifiers trained
+ * in one pass: each sampled example is read once, its K scores are computed in
+ * one walk over its nonzeros (see MultiClassWeightBlock), and the hinge
+ * updates of all classes are applied together.
+ *
+ * Every classifier runs the Pegasos iterations of TrainingBinaryClassification
+ * on the same samples. The models are written as one-vs.-others models
+ * (classification type 3). The weights need a bounded feature space.
+ */
+public class TrainingMultiClassOneVsOthersFused extends Training {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(TrainingMultiClassOneVsOthersFused.class);
+
+  /**
+   * SVM Sequential Multi-classification Training process, which uses linear
+   * kernel. Implementing the One-vs.-others scheme in one pass.
+   *
+   * @param trainDataset
+   *          Training data set
+   * @param para
+   *          Parameters
+   * @return null, the models are written to para.getModelFileName()
+   */
+  @Override
+  public WeightVector training(DataSetHandler trainDataset, SVMParameters para) {
+    int d = para.getHashBits() > 0 ? 1 << para.getHashBits() : trainDataset
+        .getDimension();
+    if (d <= 0 || (0 == para.getHashBits() && d > para.getMaxDenseDimension())) {
+      throw new IllegalArgumentException(
+          "Fused one-vs.-others training needs a bounded feature space, use feature hashing (-hb)");
+    }
+
+    // get the all labels from data set.
+    Double[] labelList = new Double[trainDataset.getUniqueLables().size()];
+    int labelIndex = 0;
+    for (Double a : trainDataset.getUniqueLables()) {
+      labelList[labelIndex++] = a;
+    }
+    int classNum = labelList.length;
+
+    // ensure the random pool is null;
+    para.setRandomPool(null);
+
+    // class index of each row, -1 for rows that are not loaded
+    PackedSamples samples = trainDataset.getPackedSamples();
+    double[] labels = trainDataset.getLabelArray();
+    int[] rowClass = new int[labels.length];
+    for (int r = 0; r < labels.length; r++) {
+      rowClass[r] = -1;
+      for (int c = 0; c < classNum; c++) {
+        if (labelList[c].doubleValue() == labels[r]) {
+          rowClass[r] = c;
+          break;
+        }
+      }
+    }
+
+    MultiClassWeightBlock block = new MultiClassWeightBlock(d, classNum);
+    Random rand = new Random();
+    int n = trainDataset.getLabels().size();
+    int k = para.getExamplesPerIter();
+    int[] batch = new int[k];
+    double[][] gradWeight = new double[k][classNum];
+    double[] scores = new double[classNum];
+    log.info("Fused one-vs.-others training of " + classNum + " classes");
+
+    // main loop
+    for (int i = 0; i < para.getMaxIter(); ++i) {
+      // learning rate
+      double eta = eta(para, i);
+
+      // calc sub-gradients of all classes
+      for (int j = 0; j < k; ++j) {
+        int r = rand.nextInt(n);
+        batch[j] = r;
+        block.times(samples.indices(r), samples.values(r), scores);
+        for (int c = 0; c < classNum; c++) {
+          double y = rowClass[r] == c ? 1.0 : -1.0;
+          gradWeight[j][c] = 1 - y * scores[c] > 0.0 ? eta * y / k : 0.0;
+        }
+      }
+
+      // scale w
+      for (int c = 0; c < classNum; c++) {
+        block.scale(c, 1.0 - eta * para.getLambda());
+      }
+
+      // and add sub-gradients
+      for (int j = 0; j < k; ++j) {
+        block.add(samples.indices(batch[j]), samples.values(batch[j]),
+          gradWeight[j]);
+      }
+
+      project(block, para);
+    }
+
+    List<WeightVector> weightList = block.toWeightVectors();
+
+    // Calculate objective value, of the last class as TrainingMultiClassOneVsOthers
+    int last = classNum - 1;
+    WeightVector w = weightList.get(last);
+    para.setScaleFoldCount(block.getFoldCount());
+    double[] lastLabels = new double[labels.length];
+    for (int r = 0; r < labels.length; r++) {
+      lastLabels[r] = rowClass[r] == last ? 1.0 : -1.0;
+    }
+    ObjectiveEvaluator.trainingResults(w, samples, lastLabels, evaluationRows(null,
+      n), ObjectiveEvaluator.HINGE, para);
+
+    // write the vectors to file, as one-vs.-others models
+    SVMParameters modelPara = para.copy();
+    modelPara.setClassificationType(3);
+    modelPara.setClassNum(classNum);
+    WeightVector.batchDumpModels(para.getModelFileName(), weightList,
+      modelPara, trainDataset.getUniqueLables());
+    return null;
+  }
+
+  /**
+   * Projects the weights of each class, see Training.project.
+   */
+  private static void project(MultiClassWeightBlock block, SVMParameters para) {
+    for (int c = 0; c < block.getClassNum(); c++) {
+      double s = projectionScale(block.getSnorm(c), para);
+      if (1.0 != s) {
+        block.scale(c, s);
+      }
+    }
+  }
+}
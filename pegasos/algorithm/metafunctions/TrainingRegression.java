@@ -15,11 +15,12 @@
  */
 package org.apache.mahout.classifier.svm.algorithm.metafunctions;
 
+import java.util.List;
 import java.util.Random;
-import java.util.Vector;
 
 import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
 import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
+import org.apache.mahout.classifier.svm.datastore.PackedSamples;
 import org.apache.mahout.classifier.svm.parameters.SVMParameters;
 
 /**
@@ -28,51 +29,57 @@ import org.apache.mahout.classifier.svm.parameters.SVMParameters;
  */
 public class TrainingRegression extends Training {
   
+  @Override
+  public boolean supportsWarmStart() {
+    return true;
+  }
+  
   @Override
   public WeightVector training(DataSetHandler trainDataset, SVMParameters para) {
     
     double eta = 0.0;
     
     // create the weight
-    WeightVector w = new WeightVector(Integer.MAX_VALUE);
+    WeightVector w = createInitialWeightVector(trainDataset, para);
     Random rand = new Random();
     
+    // primitive samples and scratch buffers, the main loop does not allocate
+    PackedSamples samples = trainDataset.getPackedSamples();
+    double[] labels = trainDataset.getLabelArray();
+    List<Integer> pool = para.getRandomPool();
+    int n = trainDataset.getLabels().size();
+    int k = para.getExamplesPerIter();
+    int[] gradIndex = new int[k];
+    double[] gradWeight = new double[k];
+    
+    // stop early once the held-out objective does not improve
+    EarlyStopping stopping = EarlyStopping.create(para, n, samples, labels, true,
+      rand);
+    int iterations = para.getMaxIter();
+    
     int r = 0;
     // main loop
     for (int i = 0; i < para.getMaxIter(); ++i) {
       // learning rate
-      // pegasos eta rule
-      if (0 == para.getEtaRuleType()) {
-        eta = 1 / (para.getLambda() * (i + 2));
-      } else if (1 == para.getEtaRuleType()) {
-        eta = para.getEtaConstant() / Math.sqrt(i + 2);
-        w.setAtoOne();
-      } else {
-        eta = para.getEtaConstant();
-      }
-      
-      Vector<Integer> gradIndex = new Vector<Integer>();
-      Vector<Double> gradWeight = new Vector<Double>();
+      eta = eta(para, getInitialIterations() + i);
       
       // calc sub-gradients
-      for (int j = 0; j < para.getExamplesPerIter(); ++j) {
+      int gradSize = 0;
+      for (int j = 0; j < k; ++j) {
         // choose example randomly
-        if (para.getRandomPool() != null) {
-          r = para.getRandomPool().get(i);
-        } else {
-          r = rand.nextInt(trainDataset.getLabels().size());
-        }
+        r = null != pool ? pool.get(i) : null != stopping ? stopping.trainRow(rand)
+            : rand.nextInt(n);
         
         // calculate prediction
-        double prediction = w.times(trainDataset.getDataset().getRow(r));
+        double prediction = w.times(samples.indices(r), samples.values(r));
         
-        double curLoss = trainDataset.getLabels().get(r) - prediction;
+        double curLoss = labels[r] - prediction;
         int lossSign = curLoss > 0 ? 1 : -1;
         // |y - < w, x> | != 0 -> A+ set.
         if (0.0 != curLoss) {
-          gradIndex.add(r);
+          gradIndex[gradSize] = r;
           // sign(y - < w, x >)
-          gradWeight.add(eta * lossSign / para.getExamplesPerIter());
+          gradWeight[gradSize++] = eta * lossSign / k;
         }
       }
       
@@ -80,53 +87,44 @@ public class TrainingRegression extends Training {
       w.scale(1.0 - eta * para.getLambda());
       
       // and add sub-gradients
-      for (int j = 0; j < gradIndex.size(); ++j) {
-        w.add(trainDataset.getDataset().getRow(gradIndex.get(j)), gradWeight.get(j)
-            .doubleValue());
+      for (int j = 0; j < gradSize; ++j) {
+        w.add(samples.indices(gradIndex[j]), samples.values(gradIndex[j]),
+          gradWeight[j]);
       }
       
-      double norm2 = 0.0;
-      
-      // Project if needed
-      if (0 == para.getProjectionRule()) {
-        norm2 = w.getSnorm();
-        if (norm2 > 1.0 / para.getLambda()) {
-          w.scale(Math.sqrt(1.0 / (para.getLambda() * norm2)));
-        }
-      } else if (1 == para.getProjectionRule()) {
-        norm2 = w.getSnorm();
-        if (norm2 > (para.getProjectionConstant() * para.getProjectionConstant())) {
-          w.scale(para.getProjectionConstant() / Math.sqrt(norm2));
-        }
-      } // else -- no projection
+      project(w, para);
+      if (null != stopping && stopping.converged(w, i)) {
+        iterations = i + 1;
+        break;
+      }
     }
     
+    w.freeze();
+    
     // Calculate objective value
+    para.setIterations(iterations);
+    para.setScaleFoldCount(w.getFoldCount());
     para.setNormValue(w.getSnorm());
     para.setObjValue(para.getNormValue() * para.getLambda() / 2.0);
-    para.setLossValue(0.0);
     
     // use the random label
-    if (para.getRandomPool() != null) {
-      for (int i = 0; i < trainDataset.getLabels().size(); ++i) {
-        double curLoss = Math.pow(trainDataset.getLabels().get(para.getRandomPool()
-            .get(i))
-                                  - w.times(trainDataset.getDataset()
-                                      .getRow(para.getRandomPool().get(i))), 2);
-        para.setLossValue(para.getLossValue() + curLoss);
-      }
-    } else {
-      for (int i = 0; i < trainDataset.getLabels().size(); ++i) {
-        double curLoss = Math.pow(trainDataset.getLabels().get(i)
-                                  - w.times(trainDataset.getDataset().getRow(i)), 2);
-        para.setLossValue(para.getLossValue() + curLoss);
-      }
+    ObjectiveEvaluator objective = new ObjectiveEvaluator(para.getWorkerThreads());
+    ObjectiveEvaluator.Result result;
+    try {
+      result = objective.evaluate(w, samples, labels, evaluationRows(pool, n),
+        ObjectiveEvaluator.SQUARED, null);
+    } finally {
+      objective.shutdown();
     }
-    para.setLossValue(para.getLossValue() / trainDataset.getLabels().size());
+    para.setLossValue(result.loss / n);
     
     // save the model to file
     if (para.getModelFileName() != null) {
-      w.writeToFile(para.getModelFileName());
+      if (para.isBinaryModel()) {
+        w.writeBinaryFile(para.getModelFileName(), 0, null);
+      } else {
+        w.writeToFile(para.getModelFileName());
+      }
     }
     return w;
   }
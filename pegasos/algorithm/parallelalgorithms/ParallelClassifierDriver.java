@@ -108,6 +108,13 @@ public class ParallelClassifierDriver {
         .withDescription("Task Time out ( Minutes ) : ").withShortName("ttt")
         .create();
     
+    Option hashBitsOpt = obuilder.withLongName("hashBits").withRequired(false)
+        .withArgument(
+          abuilder.withName("hashBits").withMinimum(1).withMaximum(1).create())
+        .withDescription(
+          "Hash features (indices or names) into 2^hashBits dimensions, the same value for training and prediction (default = 0, no hashing) ")
+        .withShortName("hb").create();
+    
     Option helpOpt = obuilder.withLongName("help").withDescription(
       "Print out help").withShortName("h").create();
     
@@ -115,7 +122,7 @@ public class ParallelClassifierDriver {
         .withOption(testFileOpt).withOption(mapSplitSizeOpt).withOption(
           hdfsServerOpt).withOption(outputFileOpt).withOption(maxHeapSizeOpt)
         .withOption(taskTimeoutOpt).withOption(numberofReducersOpt).withOption(
-          helpOpt).create();
+          hashBitsOpt).withOption(helpOpt).create();
     SVMParameters para = new SVMParameters();
     
     try {
@@ -132,6 +139,11 @@ public class ParallelClassifierDriver {
       para.setOutFile(cmdLine.getValue(outputFileOpt).toString());
       para.setModelFileName(cmdLine.getValue(modelFileOpt).toString());
       
+      // feature hashing
+      if (cmdLine.hasOption(hashBitsOpt)) {
+        para.setHashBits(Integer.parseInt(cmdLine.getValue(hashBitsOpt)
+            .toString()));
+      }
       // hdfs server address
       if (cmdLine.hasOption(hdfsServerOpt)) {
         para.setHdfsServerAddr(cmdLine.getValue(hdfsServerOpt).toString());
@@ -169,7 +181,7 @@ public class ParallelClassifierDriver {
     
     // step 1.2 set mapper parameters
     ParallelClassifierJob.setMapperParameters(job.getConfiguration(),
-      para.getHdfsServerAddr(), para.getModelFileName());
+      para.getHdfsServerAddr(), para.getModelFileName(), para.getHashBits());
     
     // set general parameters related to a job
     MapReduceUtil.setJobParameters(job, para.getTestFile(), para.getOutFile(),
@@ -25,6 +25,8 @@ import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.mahout.classifier.svm.datastore.LibsvmFormatParser;
+import org.apache.mahout.classifier.svm.datastore.NullInputString;
 import org.apache.mahout.classifier.svm.mapreduce.MapReduceUtil;
 import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
 import org.apache.mahout.classifier.svm.parameters.SVMParameters;
@@ -67,17 +69,21 @@ public class ParallelClassifierJob {
    * @param hdfsServer
    * @param modelName
    *          model name
+   * @param hashBits
+   *          bits of the hashed feature space of the model, 0 if the features
+   *          are not hashed
    */
   public static void setMapperParameters(Configuration conf,
                                          String hdfsServer,
-                                         String modelName) {
+                                         String modelName,
+                                         int hashBits) {
     // set the columns to be updated
     if (null != modelName) {
       conf.set(SVMParameters.HADOOP_MODLE_PATH, modelName);
     }
     
     conf.set(SVMParameters.HDFS_SERVER, hdfsServer);
-    
+    conf.setInt(SVMParameters.HADOOP_HASH_BITS, hashBits);
   }
   
   /**
@@ -104,6 +110,7 @@ public class ParallelClassifierJob {
     String modelFile;
     String defaultModelName = "SVM.model";
     String hdfsServer;
+    int hashBits;
     
     @Override
     public void setup(Context context) throws IOException {
@@ -114,6 +121,8 @@ public class ParallelClassifierJob {
                          + this.modelFile);
       hdfsServer = context.getConfiguration().get(SVMParameters.HDFS_SERVER,
         SVMParameters.DEFAULT_HDFS_SERVER);
+      hashBits = context.getConfiguration().getInt(
+        SVMParameters.HADOOP_HASH_BITS, 0);
       //
       this.w = new WeightVector(hdfsServer, modelFile);
     }
@@ -135,14 +144,23 @@ public class ParallelClassifierJob {
       
       this.row = new SequentialAccessSparseVector(Integer.MAX_VALUE, 10);
       
-      temp.trim();
-      array = temp.split(" ");
-      label = Integer.parseInt(array[0].replace("+", ""));
-      
-      for (int j = 1; j < array.length; j++) {
-        this.key = Integer.parseInt(array[j].split(":")[0]);
-        this.value = Double.parseDouble(array[j].split(":")[1]);
-        this.row.setQuick(this.key, this.value);
+      if (this.hashBits > 0) {
+        try {
+          label = (int) LibsvmFormatParser.str2Vector(temp, this.row,
+            this.hashBits);
+        } catch (NullInputString e) {
+          log.error(e.getMessage());
+        }
+      } else {
+        temp.trim();
+        array = temp.split(" ");
+        label = Integer.parseInt(array[0].replace("+", ""));
+        
+        for (int j = 1; j < array.length; j++) {
+          this.key = Integer.parseInt(array[j].split(":")[0]);
+          this.value = Double.parseDouble(array[j].split(":")[1]);
+          this.row.setQuick(this.key, this.value);
+        }
       }
       this.curLoss = 1 - label * w.times(row);
       
@@ -84,6 +84,21 @@ public class ParallelMultiClassPredictionDriver {
           "The number of classes (Categories in multi-classification) ")
         .withShortName("c").create();
     
+    Option svmTypeOpt = obuilder.withLongName("svmType").withRequired(false)
+        .withArgument(
+          abuilder.withName("svmType").withMinimum(1).withMaximum(1).create())
+        .withDescription(
+          "2 -> one-vs.-one, 3 -> one-vs.-others, "
+              + "5 -> one-vs.-one models with decision DAG (default = 3) ")
+        .withShortName("s").create();
+    
+    Option modelPrecisionOpt = obuilder.withLongName("modelPrecision")
+        .withRequired(false).withArgument(
+          abuilder.withName("modelPrecision").withMinimum(1).withMaximum(1)
+              .create()).withDescription(
+          "0 -> double, 1 -> float32, 2 -> int8 model weights (default = 0) ")
+        .withShortName("q").create();
+    
     Option hdfsServerOpt = obuilder.withLongName("HDFSServer").withRequired(
       false).withArgument(
       abuilder.withName("HDFSServer").withMinimum(1).withMaximum(1).create())
@@ -114,14 +129,23 @@ public class ParallelMultiClassPredictionDriver {
         .withDescription("Task Time out ( Minutes ) : ").withShortName("ttt")
         .create();
     
+    Option hashBitsOpt = obuilder.withLongName("hashBits").withRequired(false)
+        .withArgument(
+          abuilder.withName("hashBits").withMinimum(1).withMaximum(1).create())
+        .withDescription(
+          "Hash features (indices or names) into 2^hashBits dimensions, the same value for training and prediction (default = 0, no hashing) ")
+        .withShortName("hb").create();
+    
     Option helpOpt = obuilder.withLongName("help").withDescription(
       "Print out help").withShortName("h").create();
     
     Group group = gbuilder.withName("Options").withOption(modelFileOpt)
         .withOption(testFileOpt).withOption(mapSplitSizeOpt).withOption(
-          classNumOpt).withOption(outputFileOpt).withOption(maxHeapSizeOpt)
+          classNumOpt).withOption(svmTypeOpt).withOption(outputFileOpt)
+        .withOption(modelPrecisionOpt)
+        .withOption(maxHeapSizeOpt)
         .withOption(hdfsServerOpt).withOption(taskTimeoutOpt).withOption(
-          numberofReducersOpt).withOption(helpOpt).create();
+          numberofReducersOpt).withOption(hashBitsOpt).withOption(helpOpt).create();
     
     SVMParameters para = new SVMParameters();
     
@@ -144,6 +168,25 @@ public class ParallelMultiClassPredictionDriver {
       para.setClassNum(Integer
           .parseInt(cmdLine.getValue(classNumOpt).toString()));
       
+      // multi-classification type
+      if (cmdLine.hasOption(svmTypeOpt)) {
+        para.setClassificationType(Integer.parseInt(cmdLine.getValue(svmTypeOpt)
+            .toString()));
+      } else {
+        para.setClassificationType(3);
+      }
+      
+      // model precision
+      if (cmdLine.hasOption(modelPrecisionOpt)) {
+        para.setModelPrecision(Integer.parseInt(cmdLine.getValue(
+          modelPrecisionOpt).toString()));
+      }
+      
+      // feature hashing
+      if (cmdLine.hasOption(hashBitsOpt)) {
+        para.setHashBits(Integer.parseInt(cmdLine.getValue(hashBitsOpt)
+            .toString()));
+      }
       // hdfs server address
       if (cmdLine.hasOption(hdfsServerOpt)) {
         para.setHdfsServerAddr(cmdLine.getValue(hdfsServerOpt).toString());
@@ -180,7 +223,8 @@ public class ParallelMultiClassPredictionDriver {
     // step 1.2 set mapper parameters
     ParallelMultiClassPredictionJob.setMapperParameters(job
         .getConfiguration(), para.getModelFileName(), para.getHdfsServerAddr(),
-      para.getClassNum(), para.getClassificationType());
+      para.getClassNum(), para.getClassificationType(), para.getModelPrecision(),
+      para.getHashBits());
     
     // set general parameters related to a job
     MapReduceUtil.setJobParameters(job, para.getTestFile(), para.getOutFile(),
@@ -91,12 +91,20 @@ public class ParallelMultiClassPredictionJob {
    * @param hdfsServer
    * @param classNum
    * @param classifierType
+   * @param modelPrecision
+   *          precision of the models in the mappers, see
+   *          WeightVector.quantize
+   * @param hashBits
+   *          bits of the hashed feature space of the models, 0 if the features
+   *          are not hashed
    */
   public static void setMapperParameters(Configuration conf,
                                          String modelPath,
                                          String hdfsServer,
                                          Integer classNum,
-                                         Integer classifierType) {
+                                         Integer classifierType,
+                                         Integer modelPrecision,
+                                         Integer hashBits) {
     // set the columns to be updated
     if (null != modelPath) {
       conf.set(SVMParameters.HADOOP_MODLE_PATH, modelPath);
@@ -111,7 +119,15 @@ public class ParallelMultiClassPredictionJob {
     }
     
     if (null != classifierType) {
-      conf.setInt(SVMParameters.CLASSIFICATION_TYPE, classNum);
+      conf.setInt(SVMParameters.CLASSIFICATION_TYPE, classifierType);
+    }
+    
+    if (null != modelPrecision) {
+      conf.setInt(SVMParameters.HADOOP_MODEL_PRECISION, modelPrecision);
+    }
+    
+    if (null != hashBits) {
+      conf.setInt(SVMParameters.HADOOP_HASH_BITS, hashBits);
     }
   }
   
@@ -127,6 +143,8 @@ public class ParallelMultiClassPredictionJob {
     SequentialAccessSparseVector row;
     SVMParameters para = new SVMParameters();
     Map<String,WeightVector> w = new HashMap<String,WeightVector>();
+    // keeps the stacked models across lines
+    Prediction tester;
     String result;
     String defaultModelName = "/user";
     
@@ -142,10 +160,16 @@ public class ParallelMultiClassPredictionJob {
         SVMParameters.HADOOP_CLASS_NUMBER, 3));
       para.setClassificationType(context.getConfiguration().getInt(
         SVMParameters.CLASSIFICATION_TYPE, 3));
+      para.setModelPrecision(context.getConfiguration().getInt(
+        SVMParameters.HADOOP_MODEL_PRECISION, WeightVector.PRECISION_DOUBLE));
       
       // read all weight vectors.
       WeightVector.getBatchModels(para.getHdfsServerAddr(), para.getModelFileName(),
         this.w);
+      Prediction.quantize(this.w, para.getModelPrecision());
+      tester = PredictionFactory.getInstance(para.getClassificationType());
+      tester.setHashBits(context.getConfiguration().getInt(
+        SVMParameters.HADOOP_HASH_BITS, 0));
     }
     
     @Override
@@ -153,7 +177,6 @@ public class ParallelMultiClassPredictionJob {
                                                                   InterruptedException {
       log.info("Multi-classification!");
       
-      Prediction tester = PredictionFactory.getInstance(para.getClassificationType());
       result = tester.oneLineClassifier(w, value);
       
       context.getCounter("map", "Total.successful.tested.line").increment(1);
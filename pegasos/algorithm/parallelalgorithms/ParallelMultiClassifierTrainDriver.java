@@ -154,6 +154,13 @@ public class ParallelMultiClassifierTrainDriver {
         .withDescription("Task Time out ( Minutes ) : ").withShortName("ttt")
         .create();
     
+    Option hashBitsOpt = obuilder.withLongName("hashBits").withRequired(false)
+        .withArgument(
+          abuilder.withName("hashBits").withMinimum(1).withMaximum(1).create())
+        .withDescription(
+          "Hash features (indices or names) into 2^hashBits dimensions, the same value for training and prediction (default = 0, no hashing) ")
+        .withShortName("hb").create();
+    
     Option helpOpt = obuilder.withLongName("help").withDescription(
       "Print out help").withShortName("h").create();
     
@@ -164,7 +171,7 @@ public class ParallelMultiClassifierTrainDriver {
           startingClassIndexOpt).withOption(sampleNumOpt).withOption(
           mapSplitSizeOpt).withOption(maxHeapSizeOpt)
         .withOption(taskTimeoutOpt).withOption(numberofReducersOpt).withOption(
-          helpOpt).create();
+          hashBitsOpt).withOption(helpOpt).create();
     
     SVMParameters para = new SVMParameters();
     
@@ -210,6 +217,11 @@ public class ParallelMultiClassifierTrainDriver {
       }
       // models' path
       para.setModelFileName(cmdLine.getValue(modelFileOpt).toString());
+      // feature hashing
+      if (cmdLine.hasOption(hashBitsOpt)) {
+        para.setHashBits(Integer.parseInt(cmdLine.getValue(hashBitsOpt)
+            .toString()));
+      }
       // hdfs server address
       if (cmdLine.hasOption(hdfsServerOpt)) {
         para.setHdfsServerAddr(cmdLine.getValue(hdfsServerOpt).toString());
@@ -252,7 +264,8 @@ public class ParallelMultiClassifierTrainDriver {
     // step 1.2 set mapper parameters
     ParallelMultiClassifierTrainJob.setMapperParameters(job
         .getConfiguration(), para.getMaxIter(), para.getTrainSampleNumber(),
-      para.getClassNum(), para.getClassificationType(), para.getStartingClassIndex());
+      para.getClassNum(), para.getClassificationType(), para.getStartingClassIndex(),
+      para.getHashBits());
     
     ParallelMultiClassifierTrainJob.setReducerParameters(job
         .getConfiguration(), (float) para.getLambda(), para.getExamplesPerIter(),
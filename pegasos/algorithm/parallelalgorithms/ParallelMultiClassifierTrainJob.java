@@ -20,6 +20,7 @@ import java.util.Random;
 import java.util.regex.Pattern;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
@@ -32,6 +33,8 @@ import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
 import org.apache.mahout.classifier.svm.algorithm.metafunctions.Training;
 import org.apache.mahout.classifier.svm.algorithm.metafunctions.TrainingFactory;
 import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
+import org.apache.mahout.classifier.svm.datastore.LibsvmFormatParser;
+import org.apache.mahout.classifier.svm.datastore.NullInputString;
 import org.apache.mahout.classifier.svm.parameters.SVMParameters;
 import org.apache.mahout.math.SequentialAccessSparseVector;
 import org.slf4j.Logger;
@@ -104,19 +107,24 @@ public class ParallelMultiClassifierTrainJob {
    *          the number of classes
    * @param classificationType
    * @param startingClassIndex
+   * @param hashBits
+   *          the mappers hash the features into 2^hashBits dimensions, 0 keeps
+   *          the raw indices
    */
   public static void setMapperParameters(Configuration conf,
                                          int maxIteration,
                                          long samplesSize,
                                          int classNum,
                                          int classificationType,
-                                         int startingClassIndex) {
+                                         int startingClassIndex,
+                                         int hashBits) {
     // set the columns to be updated
     conf.setInt(SVMParameters.HADOOP_MAX_ITERATION, maxIteration);
     conf.setLong(SVMParameters.HADOOP_SAMPLE_NUMBER, samplesSize);
     conf.setInt(SVMParameters.HADOOP_CLASS_NUMBER, classNum);
     conf.setInt(SVMParameters.HADOOP_MULTI_CLASS_TYPE, classificationType);
     conf.setInt(SVMParameters.HADOOP_STARTING_CLASS_INDEX, startingClassIndex);
+    conf.setInt(SVMParameters.HADOOP_HASH_BITS, hashBits);
   }
   
   /**
@@ -174,6 +182,9 @@ public class ParallelMultiClassifierTrainJob {
     int mapNum;
     int multiClassType;
     int startingClassIndex;
+    int hashBits;
+    // features of the current line, hashed if hashBits > 0
+    String features;
     String[] output;
     Pattern splitter = Pattern.compile("[ ]+");
     
@@ -190,6 +201,8 @@ public class ParallelMultiClassifierTrainJob {
         SVMParameters.HADOOP_MULTI_CLASS_TYPE, 0);
       this.startingClassIndex = context.getConfiguration().getInt(
         SVMParameters.HADOOP_STARTING_CLASS_INDEX, 0);
+      this.hashBits = context.getConfiguration().getInt(
+        SVMParameters.HADOOP_HASH_BITS, 0);
       
       this.sameLabelProbabilityRange = (float) this.scaler * this.classNUM
                                        * this.maxIteration
@@ -217,6 +230,17 @@ public class ParallelMultiClassifierTrainJob {
       temp.trim();
       array = splitter.split(temp);
       label = (int) Double.parseDouble(array[0].replace("+", ""));
+      if (this.hashBits > 0) {
+        // emit the hashed features, the reducers parse raw indices
+        try {
+          LibsvmFormatParser.str2Vector(temp, this.row, this.hashBits);
+        } catch (NullInputString e) {
+          log.error(e.getMessage());
+        }
+        this.features = LibsvmFormatParser.vector2Str(this.row);
+      } else {
+        this.features = temp.replaceFirst(array[0], "");
+      }
       
       this.lowboundary = 0;
       this.outputString = null;
@@ -232,11 +256,11 @@ public class ParallelMultiClassifierTrainJob {
             // for current lab pick it as correct rang of pobability.
             if (label == i) {
               if (randValue < this.sameLabelProbabilityRange) {
-                outputString += i + "@ +1" + temp.replaceFirst(array[0], "")
+                outputString += i + "@ +1" + this.features
                                 + "_"; // label +1
               }
             } else if (randValue < this.otherLabelProbabilityRange) {
-              outputString += i + "@ -1" + temp.replaceFirst(array[0], "")
+              outputString += i + "@ -1" + this.features
                               + "_"; // label -1 for other categories
             }
           }
@@ -244,10 +268,10 @@ public class ParallelMultiClassifierTrainJob {
           for (int i = startingClassIndex; i < this.classNUM
                                                + startingClassIndex; i++) {
             if (label == i) {
-              outputString += i + "@ +1" + temp.replaceFirst(array[0], "")
+              outputString += i + "@ +1" + this.features
                               + "_";
             } else {
-              outputString += i + "@ -1" + temp.replaceFirst(array[0], "")
+              outputString += i + "@ -1" + this.features
                               + "_";
             }
           }
@@ -271,7 +295,7 @@ public class ParallelMultiClassifierTrainJob {
         // one-against-one emit
         for (int i = startingClassIndex; i < label; i++) {
           outputString = i + "_" + label + "@-1"
-                         + temp.replaceFirst(array[0], "");
+                         + this.features;
           
           if (null == outputString) {
             context.getCounter("map", "Emit.null.samples.string").increment(1);
@@ -288,7 +312,7 @@ public class ParallelMultiClassifierTrainJob {
         
         for (int i = label + 1; i < this.classNUM + startingClassIndex; i++) {
           outputString = label + "_" + i + "@1"
-                         + temp.replaceFirst(array[0], "");
+                         + this.features;
           
           if (null == outputString) {
             context.getCounter("map", "Emit.null.samples.string").increment(1);
@@ -317,6 +341,8 @@ public class ParallelMultiClassifierTrainJob {
   public static final class InnerReducer extends Reducer<Text,Text,Text,Text> {
     
     private Text outValue = new Text();
+    // the model text is streamed into this buffer, then into outValue
+    private DataOutputBuffer modelBuffer = new DataOutputBuffer();
     SVMParameters para;
     Training classifier;
     
@@ -334,6 +360,9 @@ public class ParallelMultiClassifierTrainJob {
         SVMParameters.HADOOP_MODLE_PATH, "/user/maximzhao/multiclassification"));
       para.setHdfsServerAddr(context.getConfiguration().get(
         SVMParameters.HDFS_SERVER, "hdfs://localhost:12009"));
+      // the mappers have hashed the features, this only sizes the weights
+      para.setHashBits(context.getConfiguration().getInt(
+        SVMParameters.HADOOP_HASH_BITS, 0));
     }
     
     /**
@@ -364,8 +393,10 @@ public class ParallelMultiClassifierTrainJob {
           .increment(1);
       
       // output
-      outValue.set(weight.dumpToString(para.getClassificationType(), para.getClassNum(),
-        key.toString()));
+      modelBuffer.reset();
+      weight.dumpTo(modelBuffer, para.getClassificationType(), para.getClassNum(),
+        key.toString());
+      outValue.set(modelBuffer.getData(), 0, modelBuffer.getLength());
       context.write(key, outValue);
     }
   }
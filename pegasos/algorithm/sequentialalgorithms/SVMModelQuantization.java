@@ -0,0 +1,232 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.algorithm.sequentialalgorithms;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.cli2.CommandLine;
+import org.apache.commons.cli2.Group;
+import org.apache.commons.cli2.Option;
+import org.apache.commons.cli2.OptionException;
+import org.apache.commons.cli2.builder.ArgumentBuilder;
+import org.apache.commons.cli2.builder.DefaultOptionBuilder;
+import org.apache.commons.cli2.builder.GroupBuilder;
+import org.apache.commons.cli2.commandline.Parser;
+import org.apache.mahout.classifier.svm.algorithm.metafunctions.Prediction;
+import org.apache.mahout.classifier.svm.algorithm.metafunctions.PredictionFactory;
+import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
+import org.apache.mahout.classifier.svm.parameters.SVMParameters;
+import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
+import org.apache.mahout.common.CommandLineUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts a model to float32 or int8 weights (see WeightVector.quantize) and
+ * reports the memory of the weights and the test error (loss for regression)
+ * of the double and the quantized model.
+ */
+public class SVMModelQuantization {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(SVMModelQuantization.class);
+
+  public SVMModelQuantization() {
+
+  }
+
+  public static void main(String[] args) throws IOException, OptionException {
+    DefaultOptionBuilder obuilder = new DefaultOptionBuilder();
+    ArgumentBuilder abuilder = new ArgumentBuilder();
+    GroupBuilder gbuilder = new GroupBuilder();
+
+    Option testFileOpt = obuilder.withLongName("testFile").withRequired(true)
+        .withArgument(
+          abuilder.withName("testFile").withMinimum(1).withMaximum(1).create())
+        .withDescription("Name of test data file").withShortName("te")
+        .create();
+
+    Option svmTypeOpt = obuilder
+        .withLongName("svmType")
+        .withRequired(false)
+        .withArgument(
+          abuilder.withName("svmType").withMinimum(1).withMaximum(1).create())
+        .withDescription(
+          "0 -> Binary Classfication, 1 -> Regression, "
+              + "2 -> Multi-Classification (one-vs.-one), 3 -> Multi-Classification (one-vs.-others), "
+              + "5 -> Multi-Classification (one-vs.-one models, decision DAG), "
+              + "6 -> Binary Classfication (averaged SGD), "
+              + "7 -> Binary Classfication (Hogwild parallel SGD), "
+              + "8 -> Multi-Classification (one-vs.-others, all classes in one pass), "
+              + "9 -> Binary Classfication (dual coordinate descent), "
+              + "10 -> Logistic Regression (trust region Newton) ")
+        .withShortName("s").create();
+
+    Option modelFileOpt = obuilder
+        .withLongName("modelFile")
+        .withRequired(true)
+        .withArgument(
+          abuilder.withName("modelFile").withMinimum(1).withMaximum(1).create())
+        .withDescription("Name of model file").withShortName("m").create();
+
+    Option modelPrecisionOpt = obuilder.withLongName("modelPrecision")
+        .withRequired(false).withArgument(
+          abuilder.withName("modelPrecision").withMinimum(1).withMaximum(1)
+              .create()).withDescription(
+          "1 -> float32, 2 -> int8 model weights (default = 2) ")
+        .withShortName("q").create();
+
+    Option hdfsServerOpt = obuilder.withLongName("HDFSServer").withRequired(
+      false).withArgument(
+      abuilder.withName("HDFSServer").withMinimum(1).withMaximum(1).create())
+        .withDescription("HDFS Server's Address (default = null) ")
+        .withShortName("hdfs").create();
+
+    Option hashBitsOpt = obuilder.withLongName("hashBits").withRequired(false)
+        .withArgument(
+          abuilder.withName("hashBits").withMinimum(1).withMaximum(1).create())
+        .withDescription(
+          "Hash features (indices or names) into 2^hashBits dimensions, the same value for training and prediction (default = 0, no hashing) ")
+        .withShortName("hb").create();
+    
+    Option helpOpt = obuilder.withLongName("help").withDescription(
+      "Print out help").withShortName("h").create();
+
+    Group group = gbuilder.withName("Options").withOption(modelFileOpt)
+        .withOption(testFileOpt).withOption(svmTypeOpt).withOption(
+          modelPrecisionOpt).withOption(hdfsServerOpt).withOption(hashBitsOpt).withOption(helpOpt)
+        .create();
+
+    SVMParameters para = new SVMParameters();
+    int precision = WeightVector.PRECISION_INT8;
+    try {
+      Parser parser = new Parser();
+      parser.setGroup(group);
+      CommandLine cmdLine = parser.parse(args);
+
+      if (cmdLine.hasOption(helpOpt)) {
+        CommandLineUtil.printHelp(group);
+        return;
+      }
+      para.setTestFile(cmdLine.getValue(testFileOpt).toString());
+      para.setModelFileName(cmdLine.getValue(modelFileOpt).toString());
+
+      // svm classificationType
+      if (cmdLine.hasOption(svmTypeOpt)) {
+        para.setClassificationType(Integer.parseInt(cmdLine.getValue(svmTypeOpt)
+            .toString()));
+      }
+
+      if (cmdLine.hasOption(modelPrecisionOpt)) {
+        precision = Integer.parseInt(cmdLine.getValue(modelPrecisionOpt)
+            .toString());
+      }
+
+      // feature hashing
+      if (cmdLine.hasOption(hashBitsOpt)) {
+        para.setHashBits(Integer.parseInt(cmdLine.getValue(hashBitsOpt)
+            .toString()));
+      }
+      // hdfs server address
+      if (cmdLine.hasOption(hdfsServerOpt)) {
+        para.setHdfsServerAddr(cmdLine.getValue(hdfsServerOpt).toString());
+      } else {
+        para.setHdfsServerAddr(null);
+      }
+    } catch (OptionException e) {
+      log.error("Exception", e);
+      CommandLineUtil.printHelp(group);
+      return;
+    }
+
+    report(para, precision);
+    log.info("Done!");
+  }
+
+  /**
+   * Predicts the test set with the double and the quantized model and logs
+   * the memory and the error (or loss) of both.
+   *
+   * @param para
+   *          test file, model file, classification type
+   * @param precision
+   *          WeightVector.PRECISION_FLOAT or PRECISION_INT8
+   * @throws IOException
+   */
+  public static void report(SVMParameters para, int precision) throws IOException {
+    boolean regression = 1 == para.getClassificationType();
+
+    // memory of the weights
+    Map<String,WeightVector> weightList = loadModels(para);
+    long doubleMemory = 0;
+    for (WeightVector w : weightList.values()) {
+      doubleMemory += w.getMemorySize();
+    }
+    Prediction.quantize(weightList, precision);
+    long quantizedMemory = 0;
+    for (WeightVector w : weightList.values()) {
+      quantizedMemory += w.getMemorySize();
+    }
+    weightList.clear();
+
+    // double model
+    para.setModelPrecision(WeightVector.PRECISION_DOUBLE);
+    PredictionFactory.getInstance(para.getClassificationType()).prediction(
+      new DataSetHandler(para.getTestFile()), para);
+    double doubleValue = regression ? para.getTestLoss() : para.getTestError();
+
+    // quantized model
+    para.setModelPrecision(precision);
+    PredictionFactory.getInstance(para.getClassificationType()).prediction(
+      new DataSetHandler(para.getTestFile()), para);
+    double quantizedValue = regression ? para.getTestLoss() : para.getTestError();
+
+    String measure = regression ? " = avg Loss over test" : " = avg zero-one error over test";
+    StringBuffer output = new StringBuffer();
+    output.append(doubleMemory + " = bytes of double weights\n");
+    output.append(quantizedMemory + " = bytes of "
+                  + (WeightVector.PRECISION_INT8 == precision ? "int8" : "float32")
+                  + " weights\n");
+    output.append(doubleValue + measure + " (double)\n");
+    output.append(quantizedValue + measure + " (quantized)\n");
+    output.append((quantizedValue - doubleValue) + measure + " (delta)");
+    log.info(output.toString());
+  }
+
+  private static Map<String,WeightVector> loadModels(SVMParameters para) throws IOException {
+    Map<String,WeightVector> weightList = new HashMap<String,WeightVector>();
+    switch (para.getClassificationType()) {
+      case 2:
+      case 3:
+      case 5:
+      case 8:
+        // multi-classification, all models in one file
+        if (null != para.getHdfsServerAddr()) {
+          WeightVector.getBatchModels(para.getHdfsServerAddr(), para
+              .getModelFileName(), weightList);
+        } else {
+          WeightVector.getBatchModels(para.getModelFileName(), weightList);
+        }
+        break;
+      default:
+        weightList.put(SVMParameters.W, new WeightVector(para.getModelFileName()));
+        break;
+    }
+    return weightList;
+  }
+}
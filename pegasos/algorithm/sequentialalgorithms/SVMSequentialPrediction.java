@@ -91,7 +91,13 @@ public class SVMSequentialPrediction {
           abuilder.withName("svmType").withMinimum(1).withMaximum(1).create())
         .withDescription(
           "0 -> Binary Classfication, 1 -> Regression, "
-              + "2 -> Multi-Classification (one-vs.-one), 3 -> Multi-Classification (one-vs.-others) ")
+              + "2 -> Multi-Classification (one-vs.-one), 3 -> Multi-Classification (one-vs.-others), "
+              + "5 -> Multi-Classification (one-vs.-one models, decision DAG), "
+              + "6 -> Binary Classfication (averaged SGD), "
+              + "7 -> Binary Classfication (Hogwild parallel SGD), "
+              + "8 -> Multi-Classification (one-vs.-others, all classes in one pass), "
+              + "9 -> Binary Classfication (dual coordinate descent), "
+              + "10 -> Logistic Regression (trust region Newton) ")
         .withShortName("s").create();
     
     Option modelFileOpt = obuilder
@@ -115,12 +121,27 @@ public class SVMSequentialPrediction {
           "File to store predicted label(default = testFile.predict) ")
         .withShortName("p").create();
     
+    Option modelPrecisionOpt = obuilder.withLongName("modelPrecision")
+        .withRequired(false).withArgument(
+          abuilder.withName("modelPrecision").withMinimum(1).withMaximum(1)
+              .create()).withDescription(
+          "0 -> double, 1 -> float32, 2 -> int8 model weights (default = 0) ")
+        .withShortName("q").create();
+    
+    Option hashBitsOpt = obuilder.withLongName("hashBits").withRequired(false)
+        .withArgument(
+          abuilder.withName("hashBits").withMinimum(1).withMaximum(1).create())
+        .withDescription(
+          "Hash features (indices or names) into 2^hashBits dimensions, the same value for training and prediction (default = 0, no hashing) ")
+        .withShortName("hb").create();
+    
     Option helpOpt = obuilder.withLongName("help").withDescription(
       "Print out help").withShortName("h").create();
     
     Group group = gbuilder.withName("Options").withOption(modelFileOpt)
         .withOption(predictedFileOpt).withOption(testFileOpt).withOption(
-          svmTypeOpt).withOption(helpOpt).withOption(hdfsServerOpt).create();
+          svmTypeOpt).withOption(hashBitsOpt).withOption(helpOpt).withOption(hdfsServerOpt).withOption(
+          modelPrecisionOpt).create();
     
     SVMParameters para = new SVMParameters();
     try {
@@ -149,6 +170,17 @@ public class SVMSequentialPrediction {
         para.setOutFile(para.getTestFile() + ".predict");
       }
       
+      // model precision
+      if (cmdLine.hasOption(modelPrecisionOpt)) {
+        para.setModelPrecision(Integer.parseInt(cmdLine.getValue(
+          modelPrecisionOpt).toString()));
+      }
+      
+      // feature hashing
+      if (cmdLine.hasOption(hashBitsOpt)) {
+        para.setHashBits(Integer.parseInt(cmdLine.getValue(hashBitsOpt)
+            .toString()));
+      }
       // hdfs server address
       if (cmdLine.hasOption(hdfsServerOpt)) {
         para.setHdfsServerAddr(cmdLine.getValue(hdfsServerOpt).toString());
@@ -25,6 +25,8 @@ import org.apache.commons.cli2.builder.ArgumentBuilder;
 import org.apache.commons.cli2.builder.DefaultOptionBuilder;
 import org.apache.commons.cli2.builder.GroupBuilder;
 import org.apache.commons.cli2.commandline.Parser;
+import org.apache.mahout.classifier.svm.algorithm.metafunctions.CrossValidation;
+import org.apache.mahout.classifier.svm.algorithm.metafunctions.RegularizationPath;
 import org.apache.mahout.classifier.svm.algorithm.metafunctions.Training;
 import org.apache.mahout.classifier.svm.algorithm.metafunctions.TrainingFactory;
 import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
@@ -95,7 +97,12 @@ public class SVMSequentialTraining {
           abuilder.withName("svmType").withMinimum(1).withMaximum(1).create())
         .withDescription(
           "0 -> Binary Classfication, 1 -> Regression, "
-              + "2 -> Multi-Classification (one-vs.-one), 3 -> Multi-Classification (one-vs.-others) ")
+              + "2 -> Multi-Classification (one-vs.-one), 3 -> Multi-Classification (one-vs.-others), "
+              + "6 -> Binary Classfication (averaged SGD), "
+              + "7 -> Binary Classfication (Hogwild parallel SGD), "
+              + "8 -> Multi-Classification (one-vs.-others, all classes in one pass), "
+              + "9 -> Binary Classfication (dual coordinate descent), "
+              + "10 -> Logistic Regression (trust region Newton) ")
         .withShortName("s").create();
     
     Option epsilonOpt = obuilder.withLongName("epsilon").withRequired(false)
@@ -144,6 +151,72 @@ public class SVMSequentialTraining {
         .withDescription("HDFS Server's Address (default = null) ")
         .withShortName("hdfs").create();
     
+    Option binaryModelOpt = obuilder.withLongName("binaryModel")
+        .withRequired(false).withDescription(
+          "Write the model in binary format (default = text) ")
+        .withShortName("bm").create();
+    
+    Option averageIterationOpt = obuilder.withLongName("averageIteration")
+        .withRequired(false).withArgument(
+          abuilder.withName("averageIteration").withMinimum(1).withMaximum(1)
+              .create()).withDescription(
+          "Iteration from which averaged SGD averages the weights (default = iter / 2) ")
+        .withShortName("ai").create();
+    
+    Option threadNumberOpt = obuilder.withLongName("threadNumber")
+        .withRequired(false).withArgument(
+          abuilder.withName("threadNumber").withMinimum(1).withMaximum(1)
+              .create()).withDescription(
+          "Worker threads of parallel training (default = number of processors) ")
+        .withShortName("nt").create();
+    
+    Option hashBitsOpt = obuilder.withLongName("hashBits").withRequired(false)
+        .withArgument(
+          abuilder.withName("hashBits").withMinimum(1).withMaximum(1).create())
+        .withDescription(
+          "Hash features (indices or names) into 2^hashBits dimensions, the same value for training and prediction (default = 0, no hashing) ")
+        .withShortName("hb").create();
+    
+    Option lossTypeOpt = obuilder.withLongName("lossType").withRequired(false)
+        .withArgument(
+          abuilder.withName("lossType").withMinimum(1).withMaximum(1).create())
+        .withDescription(
+          "Loss of dual coordinate descent (svmType 9): 1 -> hinge (L1), 2 -> squared hinge (L2) (default = 1) ")
+        .withShortName("lt").create();
+    
+    Option toleranceOpt = obuilder.withLongName("tolerance").withRequired(false)
+        .withArgument(
+          abuilder.withName("tolerance").withMinimum(1).withMaximum(1).create())
+        .withDescription(
+          "Stopping tolerance of dual coordinate descent (svmType 9, default = 0.1) and of the Newton method (svmType 10, default = 0.01) ")
+        .withShortName("tol").create();
+    
+    Option earlyStopOpt = obuilder.withLongName("earlyStopTolerance")
+        .withRequired(false).withArgument(
+          abuilder.withName("earlyStopTolerance").withMinimum(1).withMaximum(1)
+              .create()).withDescription(
+          "Stop Pegasos (svmType 0 - 3) once the held-out objective improves by less than this fraction between checkpoints (default = 0, off) ")
+        .withShortName("est").create();
+    
+    Option averageCandidatesOpt = obuilder.withLongName("averageCandidates")
+        .withRequired(false).withDescription(
+          "Validated training (svmType 4) also validates the average of its candidate models ")
+        .withShortName("ac").create();
+    
+    Option lambdaPathOpt = obuilder.withLongName("lambdaPath")
+        .withRequired(false).withArgument(
+          abuilder.withName("lambdaPath").withMinimum(1).withMaximum(1)
+              .create()).withDescription(
+          "Comma separated lambdas of a regularization path (svmType 0, 1, 4, 9, 10): one model per lambda, from the largest one, warm-started where possible ")
+        .withShortName("lp").create();
+    
+    Option crossValidationOpt = obuilder.withLongName("crossValidation")
+        .withRequired(false).withArgument(
+          abuilder.withName("crossValidation").withMinimum(1).withMaximum(1)
+              .create()).withDescription(
+          "Number of folds of cross-validation (svmType 0 - 4, 9, 10), the fold models are trained in parallel and not written (default = 0, off) ")
+        .withShortName("cv").create();
+    
     Option helpOpt = obuilder.withLongName("help").withDescription(
       "Print out help").withShortName("h").create();
     
@@ -151,7 +224,12 @@ public class SVMSequentialTraining {
         .withOption(validateExampleNumberOpt).withOption(modelFileOpt)
         .withOption(svmTypeOpt).withOption(lambdaOpt).withOption(hdfsServerOpt)
         .withOption(iterOpt).withOption(epsilonOpt).withOption(kOpt)
-        .withOption(sampleNumOpt).withOption(helpOpt).create();
+        .withOption(sampleNumOpt).withOption(binaryModelOpt)
+        .withOption(averageIterationOpt).withOption(threadNumberOpt)
+        .withOption(hashBitsOpt).withOption(lossTypeOpt).withOption(toleranceOpt)
+        .withOption(earlyStopOpt).withOption(averageCandidatesOpt)
+        .withOption(lambdaPathOpt).withOption(crossValidationOpt)
+        .withOption(helpOpt).create();
     
     SVMParameters para = new SVMParameters();
     try {
@@ -208,12 +286,63 @@ public class SVMSequentialTraining {
         para.setModelFileName("SVM.model");
       }
       
+      para.setBinaryModel(cmdLine.hasOption(binaryModelOpt));
+      para.setAverageCandidates(cmdLine.hasOption(averageCandidatesOpt));
+      
+      // averaged SGD
+      if (cmdLine.hasOption(averageIterationOpt)) {
+        para.setAverageIteration(Integer.parseInt(cmdLine.getValue(
+          averageIterationOpt).toString()));
+      }
+      
       // number of samples in training data set.
       if (cmdLine.hasOption(sampleNumOpt)) {
         para.setTrainSampleNumber(Integer.parseInt(cmdLine
             .getValue(sampleNumOpt).toString()));
       }
       
+      if (cmdLine.hasOption(threadNumberOpt)) {
+        para.setThreadNumber(Integer.parseInt(cmdLine.getValue(threadNumberOpt)
+            .toString()));
+      }
+      
+      // feature hashing
+      if (cmdLine.hasOption(hashBitsOpt)) {
+        para.setHashBits(Integer.parseInt(cmdLine.getValue(hashBitsOpt)
+            .toString()));
+      }
+      // dual coordinate descent
+      if (cmdLine.hasOption(lossTypeOpt)) {
+        para.setLossType(Integer.parseInt(cmdLine.getValue(lossTypeOpt)
+            .toString()));
+      }
+      if (cmdLine.hasOption(toleranceOpt)) {
+        para.setTolerance(Double.parseDouble(cmdLine.getValue(toleranceOpt)
+            .toString()));
+      }
+      
+      // early stopping
+      if (cmdLine.hasOption(earlyStopOpt)) {
+        para.setEarlyStopTolerance(Double.parseDouble(cmdLine.getValue(
+          earlyStopOpt).toString()));
+      }
+      
+      // regularization path
+      if (cmdLine.hasOption(lambdaPathOpt)) {
+        String[] values = cmdLine.getValue(lambdaPathOpt).toString().split(",");
+        double[] lambdas = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+          lambdas[i] = Double.parseDouble(values[i].trim());
+        }
+        para.setLambdaPath(lambdas);
+      }
+      
+      // cross-validation
+      if (cmdLine.hasOption(crossValidationOpt)) {
+        para.setCrossValidationFolds(Integer.parseInt(cmdLine.getValue(
+          crossValidationOpt).toString()));
+      }
+      
       // hdfs server address
       if (cmdLine.hasOption(hdfsServerOpt)) {
         para.setHdfsServerAddr(cmdLine.getValue(hdfsServerOpt).toString());
@@ -230,9 +359,15 @@ public class SVMSequentialTraining {
     // Get data set
     train.getData(para);
     
-    Training classifier = TrainingFactory.getInstance(para.getClassificationType());
-    classifier.training(train, para);
-    para.report(para.getClassificationType());
+    if (para.getCrossValidationFolds() > 1) {
+      new CrossValidation().training(train, para);
+      para.crossValidationReport(para.getClassificationType());
+    } else {
+      Training classifier = null != para.getLambdaPath() ? new RegularizationPath()
+          : TrainingFactory.getInstance(para.getClassificationType());
+      classifier.training(train, para);
+      para.report(para.getClassificationType());
+    }
     log.info("All Processes are Finished!!");
   }
 }
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -57,9 +58,15 @@ public class DataSetHandler {
   private static final Logger log = LoggerFactory
       .getLogger(DataSetHandler.class);
   private Matrix dataset;
+  // primitive copy of the rows of dataset, built on first use
+  private PackedSamples packedSamples;
   private Map<Integer,Double> labels = new HashMap<Integer,Double>();
   // for counting the unique labels the data set has.
   private Set<Double> uniqueLables = new TreeSet<Double>();
+  // max feature index + 1 of the loaded samples, used to size dense weights.
+  private int dimension;
+  // hash features into 2^hashBits dimensions, 0 keeps the raw indices.
+  private int hashBits;
   private String fileName;
   
   public DataSetHandler(String fileName) {
@@ -84,6 +91,7 @@ public class DataSetHandler {
    * @throws IOException
    */
   public void getData(SVMParameters para) throws IOException {
+    setHashBits(para.getHashBits());
     // For small data set
     if (para.getMaxIter() > para.getTrainSampleNumber()) {
       
@@ -352,23 +360,113 @@ public class DataSetHandler {
     double label = 0.0;
     Vector row = new RandomAccessSparseVector(Integer.MAX_VALUE, 10);
     try {
-      label = LibsvmFormatParser.str2Vector(strLine, row);
+      label = LibsvmFormatParser.str2Vector(strLine, row, this.hashBits);
     } catch (NullInputString ex) {
       log.error("NULLInput: " + ex.getMessage());
     }
     this.getLabels().put(lineNum, label);
     this.getUniqueLables().add(label);
+    Iterator<Vector.Element> iter = row.iterateNonZero();
+    while (iter.hasNext()) {
+      int index = iter.next().index();
+      if (index >= this.dimension) {
+        this.dimension = index + 1;
+      }
+    }
     return row;
   }
 
   public void setDataset(Matrix dataset) {
     this.dataset = dataset;
+    this.packedSamples = null;
   }
 
   public Matrix getDataset() {
     return dataset;
   }
 
+  /**
+   * @return max row number + 1 of the loaded samples
+   */
+  public int getRowCount() {
+    int count = 0;
+    for (Integer r : this.labels.keySet()) {
+      if (r >= count) {
+        count = r + 1;
+      }
+    }
+    return count;
+  }
+  
+  /**
+   * The rows as primitive arrays, see PackedSamples. They are built once per
+   * data set (setDataset() drops them), so the rows must be loaded before.
+   * 
+   * @return packed rows
+   */
+  public PackedSamples getPackedSamples() {
+    if (null == this.packedSamples) {
+      this.packedSamples = new PackedSamples(this.dataset, getRowCount());
+    }
+    return this.packedSamples;
+  }
+  
+  /**
+   * Copies the labels to an array indexed by row number. Unlike the rows, the
+   * labels are copied on each call, since trainers relabel the samples in
+   * place (e.g. one-vs.-one) or through views (see labelView).
+   * 
+   * @return labels, 0 for rows that are not loaded
+   */
+  public double[] getLabelArray() {
+    double[] array = new double[getRowCount()];
+    for (Map.Entry<Integer,Double> entry : this.labels.entrySet()) {
+      array[entry.getKey()] = entry.getValue();
+    }
+    return array;
+  }
+
+  /**
+   * A data set that shares the rows, the packed rows and the unique labels of
+   * this one, with other labels (e.g. OneVsOthersLabels). The packed rows are
+   * built before, so that views can be trained on by several threads.
+   * 
+   * @param viewLabels
+   *          labels of the view, by row number
+   * @return the view
+   */
+  public DataSetHandler labelView(Map<Integer,Double> viewLabels) {
+    DataSetHandler view = new DataSetHandler(this.fileName);
+    view.dataset = this.dataset;
+    view.packedSamples = getPackedSamples();
+    view.labels = viewLabels;
+    view.uniqueLables = this.uniqueLables;
+    view.dimension = this.dimension;
+    view.hashBits = this.hashBits;
+    return view;
+  }
+
+  /**
+   * A data set of some rows of this one, renumbered 0, 1, ... The packed rows
+   * are shared, not copied, and the view has no matrix (getDataset() is
+   * null): only trainers that read the packed rows can use it.
+   * 
+   * @param rows
+   *          row numbers of the rows of the view
+   * @param viewLabels
+   *          labels of the view, by row number of the view
+   * @return the view
+   */
+  public DataSetHandler rowView(int[] rows, Map<Integer,Double> viewLabels) {
+    DataSetHandler view = new DataSetHandler(this.fileName);
+    view.packedSamples = getPackedSamples().select(rows);
+    view.labels = viewLabels;
+    view.uniqueLables = this.uniqueLables;
+    view.dimension = this.dimension;
+    view.hashBits = this.hashBits;
+    return view;
+  }
+  
   public void setLabels(Map<Integer,Double> labels) {
     this.labels = labels;
   }
@@ -384,4 +482,33 @@ public class DataSetHandler {
   public Set<Double> getUniqueLables() {
     return uniqueLables;
   }
+
+  public void setDimension(int dimension) {
+    this.dimension = dimension;
+  }
+
+  /**
+   * Hashes the features of the loaded samples into 2^hashBits dimensions, which
+   * becomes the dimension of the data set.
+   * 
+   * @param hashBits
+   *          0 keeps the raw feature indices
+   */
+  public void setHashBits(int hashBits) {
+    this.hashBits = hashBits;
+    if (hashBits > 0) {
+      this.dimension = 1 << hashBits;
+    }
+  }
+
+  public int getHashBits() {
+    return hashBits;
+  }
+
+  /**
+   * @return max feature index + 1 of the loaded samples, 0 if unknown.
+   */
+  public int getDimension() {
+    return dimension;
+  }
 }
@@ -16,11 +16,13 @@
 package org.apache.mahout.classifier.svm.datastore;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
@@ -141,6 +143,95 @@ public class HDFSReader {
     return lines;
   }
   
+  /**
+   * Open a file for streaming.
+   * 
+   * @param filePath
+   *          file name.
+   * @return input stream, to be closed by the caller
+   * @throws IOException
+   */
+  public FSDataInputStream open(Path filePath) throws IOException {
+    return FileSystem.get(this.conf).open(filePath);
+  }
+  
+  /**
+   * List the files (not sub-folders) of a folder.
+   * 
+   * @param filePath
+   *          folder name.
+   * @return paths of the files
+   * @throws IOException
+   */
+  public List<Path> listFiles(Path filePath) throws IOException {
+    FileSystem fs = FileSystem.get(this.conf);
+    List<Path> files = new ArrayList<Path>();
+    for (FileStatus file : fs.listStatus(filePath)) {
+      if (!file.isDir()) {
+        files.add(new Path(filePath.toString() + "/" + file.getPath().getName()));
+      }
+    }
+    return files;
+  }
+  
+  /**
+   * Read the first bytes of a file.
+   * 
+   * @param filePath
+   *          file name.
+   * @param length
+   *          number of bytes
+   * @return the bytes, shorter than length if the file is shorter.
+   * @throws IOException
+   */
+  public byte[] readHead(Path filePath, int length) throws IOException {
+    FileSystem fs = FileSystem.get(this.conf);
+    FSDataInputStream in = fs.open(filePath);
+    byte[] head = new byte[length];
+    int n = 0;
+    try {
+      while (n < length) {
+        int r = in.read(head, n, length - n);
+        if (r < 0) {
+          break;
+        }
+        n += r;
+      }
+    } finally {
+      in.close();
+    }
+    if (n < length) {
+      byte[] shorter = new byte[n];
+      System.arraycopy(head, 0, shorter, 0, n);
+      return shorter;
+    }
+    return head;
+  }
+  
+  /**
+   * Read a whole (binary) file into a buffer.
+   * 
+   * @param filePath
+   *          file name.
+   * @return buffer of the file content
+   * @throws IOException
+   */
+  public ByteBuffer readAllBytes(Path filePath) throws IOException {
+    FileSystem fs = FileSystem.get(this.conf);
+    long length = fs.getFileStatus(filePath).getLen();
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("File is too large: " + filePath.getName());
+    }
+    byte[] content = new byte[(int) length];
+    FSDataInputStream in = fs.open(filePath);
+    try {
+      in.readFully(content);
+    } finally {
+      in.close();
+    }
+    return ByteBuffer.wrap(content);
+  }
+  
   /**
    * Read all files. Very Dangerous.
    * 
@@ -15,6 +15,8 @@
  */
 package org.apache.mahout.classifier.svm.datastore;
 
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.regex.Pattern;
 
 import org.apache.mahout.math.Vector;
@@ -40,6 +42,27 @@ public class LibsvmFormatParser {
    * @throws NullInputString
    */
   public static double str2Vector(String str, Vector row) throws NullInputString {
+    return str2Vector(str, row, 0);
+  }
+  
+  /**
+   * String to SparseVector converter with optional feature hashing. If
+   * hashBits > 0, each feature (a raw index or a name such as "word:1.5") is
+   * hashed into [0, 2^hashBits) and its value is multiplied by a sign taken from
+   * the same hash, so collisions cancel out in expectation. Colliding features
+   * are summed. A hashed feature without ":value" has value 1.
+   * 
+   * @param str
+   *          sample's string ( label feature:value ... )
+   * @param row
+   *          SparseVector.
+   * @param hashBits
+   *          bits of the hashed feature space, 0 to keep the raw indices
+   * @return label label of this sample, if the sample does NOT have label,
+   *         return -Double.MAX_VALUE
+   * @throws NullInputString
+   */
+  public static double str2Vector(String str, Vector row, int hashBits) throws NullInputString {
     
     if (null == str) {
       throw new NullInputString();
@@ -80,10 +103,98 @@ public class LibsvmFormatParser {
     }
     
     for (int j = i + 1; j < array.length; j++) {
+      if (hashBits > 0) {
+        int colon = array[j].lastIndexOf(':');
+        if (colon < 0) {
+          addHashed(row, array[j], 1.0, hashBits);
+        } else {
+          addHashed(row, array[j].substring(0, colon), Double
+              .parseDouble(array[j].substring(colon + 1)), hashBits);
+        }
+        continue;
+      }
       key = Integer.parseInt(array[j].split(":")[0]);
       v = Double.parseDouble(array[j].split(":")[1]);
       row.setQuick(key, v);
     }
     return label;
   }
+  
+  /**
+   * row[h(feature)] += sign(feature) * value
+   */
+  private static void addHashed(Vector row, String feature, double value, int hashBits) {
+    int hash = hashFeature(feature);
+    int index = hash & ((1 << hashBits) - 1);
+    // the sign comes from the top bit, which is not part of the index
+    double signed = hash < 0 ? -value : value;
+    row.setQuick(index, row.getQuick(index) + signed);
+  }
+  
+  /**
+   * 32-bit MurmurHash3 of the chars of a feature name (or raw index). It only
+   * depends on the text, so training and prediction (also in other JVMs and
+   * mappers) hash a feature the same way.
+   * 
+   * @param feature
+   *          feature name
+   * @return hash value
+   */
+  public static int hashFeature(String feature) {
+    final int c1 = 0xcc9e2d51;
+    final int c2 = 0x1b873593;
+    int h = 0x9747b28c;
+    int length = feature.length();
+    int i = 0;
+    // two chars per block
+    for (; i + 1 < length; i += 2) {
+      int k = feature.charAt(i) | (feature.charAt(i + 1) << 16);
+      k *= c1;
+      k = Integer.rotateLeft(k, 15);
+      k *= c2;
+      h ^= k;
+      h = Integer.rotateLeft(h, 13);
+      h = h * 5 + 0xe6546b64;
+    }
+    if (i < length) {
+      int k = feature.charAt(i);
+      k *= c1;
+      k = Integer.rotateLeft(k, 15);
+      k *= c2;
+      h ^= k;
+    }
+    h ^= length << 1;
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+  
+  /**
+   * Writes the features of row as " index:value" pairs in index order, the
+   * format parsed by str2Vector (without hashing).
+   * 
+   * @param row
+   *          features
+   * @return feature string with a leading space, empty for an empty row
+   */
+  public static String vector2Str(Vector row) {
+    int[] indices = new int[row.getNumNondefaultElements()];
+    int n = 0;
+    Iterator<Vector.Element> iter = row.iterateNonZero();
+    while (iter.hasNext()) {
+      Vector.Element elt = iter.next();
+      if (0.0 != elt.get()) {
+        indices[n++] = elt.index();
+      }
+    }
+    Arrays.sort(indices, 0, n);
+    StringBuilder out = new StringBuilder(n * 12);
+    for (int j = 0; j < n; j++) {
+      out.append(' ').append(indices[j]).append(':').append(row.getQuick(indices[j]));
+    }
+    return out.toString();
+  }
 }
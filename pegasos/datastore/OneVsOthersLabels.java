@@ -0,0 +1,170 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.datastore;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only one-vs.-others view of the labels of a data set: 1.0 for the
+ * samples of one class, -1.0 for all others. Nothing is copied, so several
+ * views of the same labels can be used at the same time.
+ * 
+ * A view can also be restricted to some rows, which are renumbered 0, 1, ...
+ * (see DataSetHandler.rowView), e.g. the rows of the two classes of a
+ * one-vs.-one problem. Without a positive label the view keeps the labels, e.g.
+ * for the training rows of a validation split.
+ */
+public class OneVsOthersLabels extends AbstractMap<Integer,Double> {
+
+  private static final Double POSITIVE = 1.0;
+  private static final Double NEGATIVE = -1.0;
+
+  private final Map<Integer,Double> labels;
+  private final Double positiveLabel;
+  // row numbers of the view in the original labels, null for all rows
+  private final int[] rows;
+
+  /**
+   * @param labels
+   *          original labels, must not change while the view is used
+   * @param positiveLabel
+   *          label of the class that becomes 1.0
+   */
+  public OneVsOthersLabels(Map<Integer,Double> labels, Double positiveLabel) {
+    this(labels, positiveLabel, null);
+  }
+
+  /**
+   * @param labels
+   *          original labels, must not change while the view is used
+   * @param positiveLabel
+   *          label of the class that becomes 1.0, null keeps the labels
+   * @param rows
+   *          original row numbers of the rows 0, 1, ... of the view
+   */
+  public OneVsOthersLabels(Map<Integer,Double> labels,
+                           Double positiveLabel,
+                           int[] rows) {
+    this.labels = labels;
+    this.positiveLabel = positiveLabel;
+    this.rows = rows;
+  }
+
+  private Double relabel(Double label) {
+    if (null == this.positiveLabel) {
+      return label;
+    }
+    return this.positiveLabel.equals(label) ? POSITIVE : NEGATIVE;
+  }
+
+  // key of the original labels, null if the view has no such row
+  private Object originalKey(Object key) {
+    if (null == this.rows) {
+      return key;
+    }
+    if (!(key instanceof Integer)) {
+      return null;
+    }
+    int p = (Integer) key;
+    return p >= 0 && p < this.rows.length ? Integer.valueOf(this.rows[p]) : null;
+  }
+
+  @Override
+  public Double get(Object key) {
+    Object original = originalKey(key);
+    Double label = null == original ? null : this.labels.get(original);
+    return null == label ? null : relabel(label);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    Object original = originalKey(key);
+    return null != original && this.labels.containsKey(original);
+  }
+
+  @Override
+  public int size() {
+    return null == this.rows ? this.labels.size() : this.rows.length;
+  }
+
+  @Override
+  public Set<Map.Entry<Integer,Double>> entrySet() {
+    return new AbstractSet<Map.Entry<Integer,Double>>() {
+      @Override
+      public Iterator<Map.Entry<Integer,Double>> iterator() {
+        if (null != OneVsOthersLabels.this.rows) {
+          return rowIterator();
+        }
+        final Iterator<Map.Entry<Integer,Double>> iter = OneVsOthersLabels.this.labels
+            .entrySet().iterator();
+        return new Iterator<Map.Entry<Integer,Double>>() {
+          @Override
+          public boolean hasNext() {
+            return iter.hasNext();
+          }
+
+          @Override
+          public Map.Entry<Integer,Double> next() {
+            Map.Entry<Integer,Double> entry = iter.next();
+            return new SimpleImmutableEntry<Integer,Double>(entry.getKey(),
+                relabel(entry.getValue()));
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return OneVsOthersLabels.this.size();
+      }
+    };
+  }
+
+  private Iterator<Map.Entry<Integer,Double>> rowIterator() {
+    return new Iterator<Map.Entry<Integer,Double>>() {
+      private int p;
+
+      @Override
+      public boolean hasNext() {
+        return this.p < OneVsOthersLabels.this.rows.length;
+      }
+
+      @Override
+      public Map.Entry<Integer,Double> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Double label = OneVsOthersLabels.this.labels
+            .get(OneVsOthersLabels.this.rows[this.p]);
+        return new SimpleImmutableEntry<Integer,Double>(this.p++, relabel(label));
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+}
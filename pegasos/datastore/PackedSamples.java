@@ -0,0 +1,118 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.datastore;
+
+import java.util.Iterator;
+
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.Vector;
+
+/**
+ * The rows of a data set as primitive arrays, for training loops that must not
+ * allocate: row r has the feature indices indices(r) and the values
+ * values(r). Rows that are not loaded (batch fetching) are empty.
+ */
+public class PackedSamples {
+
+  private static final int[] NO_INDICES = new int[0];
+  private static final double[] NO_VALUES = new double[0];
+
+  private final int[][] indices;
+  private final double[][] values;
+
+  /**
+   * @param dataset
+   *          rows of the samples
+   * @param size
+   *          number of rows, max row number + 1
+   */
+  public PackedSamples(Matrix dataset, int size) {
+    this.indices = new int[size][];
+    this.values = new double[size][];
+    for (int r = 0; r < size; r++) {
+      Vector row = dataset.getRow(r);
+      int nnz = row.getNumNondefaultElements();
+      if (0 == nnz) {
+        this.indices[r] = NO_INDICES;
+        this.values[r] = NO_VALUES;
+        continue;
+      }
+      int[] rowIndices = new int[nnz];
+      double[] rowValues = new double[nnz];
+      int n = 0;
+      Iterator<Vector.Element> iter = row.iterateNonZero();
+      while (iter.hasNext() && n < nnz) {
+        Vector.Element elt = iter.next();
+        rowIndices[n] = elt.index();
+        rowValues[n++] = elt.get();
+      }
+      if (n < nnz) {
+        int[] shorterIndices = new int[n];
+        System.arraycopy(rowIndices, 0, shorterIndices, 0, n);
+        rowIndices = shorterIndices;
+        double[] shorterValues = new double[n];
+        System.arraycopy(rowValues, 0, shorterValues, 0, n);
+        rowValues = shorterValues;
+      }
+      this.indices[r] = rowIndices;
+      this.values[r] = rowValues;
+    }
+  }
+
+  private PackedSamples(int[][] indices, double[][] values) {
+    this.indices = indices;
+    this.values = values;
+  }
+
+  /**
+   * The rows rows[0], rows[1], ... as rows 0, 1, ... The row arrays are
+   * shared, not copied.
+   *
+   * @param rows
+   *          row numbers of the selected rows
+   * @return selected rows
+   */
+  public PackedSamples select(int[] rows) {
+    int[][] selectedIndices = new int[rows.length][];
+    double[][] selectedValues = new double[rows.length][];
+    for (int p = 0; p < rows.length; p++) {
+      selectedIndices[p] = this.indices[rows[p]];
+      selectedValues[p] = this.values[rows[p]];
+    }
+    return new PackedSamples(selectedIndices, selectedValues);
+  }
+
+  /**
+   * @return number of rows
+   */
+  public int size() {
+    return this.indices.length;
+  }
+
+  /**
+   * @return feature indices of row r
+   */
+  public int[] indices(int r) {
+    return this.indices[r];
+  }
+
+  /**
+   * @return feature values of row r, in the order of indices(r)
+   */
+  public double[] values(int r) {
+    return this.values[r];
+  }
+}
@@ -22,7 +22,7 @@ import org.slf4j.LoggerFactory;
 /**
  * 
  */
-public class SVMParameters {
+public class SVMParameters implements Cloneable {
 
   private static final Logger log = LoggerFactory.getLogger(SVMParameters.class);
   
@@ -36,6 +36,8 @@ public class SVMParameters {
   public static final String HADOOP_K = "para.mahout.classifier.svm.k";
   public static final String HDFS_SERVER = "para.mahout.classifier.svm.hdfs.server";
   public static final String HADOOP_STARTING_CLASS_INDEX = "para.mahout.classifier.svm.starting.class.index";
+  public static final String HADOOP_MODEL_PRECISION = "para.mahout.classifier.svm.model.precision";
+  public static final String HADOOP_HASH_BITS = "para.mahout.classifier.svm.hash.bits";
   public static final String DEFAULT_HDFS_SERVER = "hdfs://localhost:12009";
   // For HBASE
   public static final String DEFAULT_HBASE_SERVER = "localhost:60000";
@@ -65,6 +67,8 @@ public class SVMParameters {
   private double testLoss;
   private double testError;
   private double testAccuracy;
+  private long scaleFoldCount;
+  private int iterations;
   
   // additional parameters
   private int etaRuleType;
@@ -91,6 +95,41 @@ public class SVMParameters {
   private String testFile;
   private int startingClassIndex;
   private int validateExampleNumber;
+  // use dense weight vector if the dimension of data set is not larger than it.
+  private int maxDenseDimension = 1 << 24;
+  // write models in binary model file format instead of text.
+  private boolean binaryModel;
+  // precision of the models used for prediction, see WeightVector.quantize
+  private int modelPrecision;
+  // hash features into 2^hashBits dimensions, 0 keeps the raw feature indices.
+  private int hashBits;
+  // worker threads of the parallel trainers, 0 for one per available processor.
+  private int threadNumber;
+  // loss of the dual coordinate descent solver: 1 hinge (L1), 2 squared hinge (L2).
+  private int lossType = 1;
+  // stopping tolerance of dual coordinate descent and TRON, NaN for the
+  // default of the solver
+  private double tolerance = Double.NaN;
+  // relative improvement of the held-out objective below which Pegasos stops, 0 = off.
+  private double earlyStopTolerance;
+  // validated training (svmType 4) also validates the average of its candidate models.
+  private boolean averageCandidates;
+  // lambdas of a regularization path, null trains the single lambda.
+  private double[] lambdaPath;
+  // folds of cross-validation, 0 trains one model on all samples.
+  private int crossValidationFolds;
+  
+  /**
+   * @return a shallow copy, e.g. for trainers that run several trainings at
+   *         the same time and write their results to the parameters
+   */
+  public SVMParameters copy() {
+    try {
+      return (SVMParameters) super.clone();
+    } catch (CloneNotSupportedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
   
   public void report() {
     StringBuffer output = new StringBuffer();
@@ -129,6 +168,10 @@ public class SVMParameters {
     output.append(String.valueOf(this.getObjValue())
                        + " = primal objective of solution");
     output.append("\n");
+    output.append(String.valueOf(this.getScaleFoldCount())
+                       + " = scale folds of weight vector");
+    output.append("\n");
+    appendIterations(output);
     log.info(output.toString());
 
   }
@@ -143,9 +186,22 @@ public class SVMParameters {
     output.append(String.valueOf(this.getObjValue())
                        + " = primal objective of solution");
     output.append("\n");
+    output.append(String.valueOf(this.getScaleFoldCount())
+                       + " = scale folds of weight vector");
+    output.append("\n");
+    appendIterations(output);
     log.info(output.toString());
   }
   
+  private void appendIterations(StringBuffer output) {
+    if (this.getEarlyStopTolerance() > 0.0 && this.getIterations() > 0) {
+      output.append(String.valueOf(this.getIterations()) + " = iterations ("
+                    + (this.getMaxIter() - this.getIterations())
+                    + " saved by early stopping)");
+      output.append("\n");
+    }
+  }
+  
   public void testReport() {
     StringBuffer output = new StringBuffer();
     output.append(String.valueOf(this.getTestLoss()) + " = avg Loss over test");
@@ -163,6 +219,20 @@ public class SVMParameters {
     log.info(String.valueOf(this.getTestLoss()) + " = avg Loss over test");
   }
   
+  /**
+   * The training results averaged over the folds, and the results on the
+   * held-out folds.
+   */
+  public void crossValidationReport(int type) {
+    log.info(this.getCrossValidationFolds() + "-fold cross-validation");
+    report(type);
+    if (1 == type) {
+      testRegressionReport();
+    } else {
+      testReport();
+    }
+  }
+  
   public void report(int type) {
     if (getTrainFile() != null) {
       switch (type) {
@@ -204,6 +274,30 @@ public class SVMParameters {
           // multiple classification one-vs-others.
           testReport();
           break;
+        case 5:
+          // multiple classification one-vs-one, decision DAG.
+          testReport();
+          break;
+        case 6:
+          // binary classification, averaged SGD
+          testReport();
+          break;
+        case 7:
+          // binary classification, Hogwild parallel SGD
+          testReport();
+          break;
+        case 8:
+          // multiple classification one-vs-others, trained in one pass.
+          testReport();
+          break;
+        case 9:
+          // binary classification, dual coordinate descent
+          testReport();
+          break;
+        case 10:
+          // logistic regression, the loss is the log loss
+          testReport();
+          break;
         default:
           trainReport();
           break;
@@ -315,6 +409,27 @@ public class SVMParameters {
     return testAccuracy;
   }
 
+  public void setScaleFoldCount(long scaleFoldCount) {
+    this.scaleFoldCount = scaleFoldCount;
+  }
+
+  public long getScaleFoldCount() {
+    return scaleFoldCount;
+  }
+
+  /**
+   * @param iterations
+   *          iterations run by the trainer, fewer than maxIter with early
+   *          stopping
+   */
+  public void setIterations(int iterations) {
+    this.iterations = iterations;
+  }
+
+  public int getIterations() {
+    return iterations;
+  }
+
   public void setEtaRuleType(int etaRuleType) {
     this.etaRuleType = etaRuleType;
   }
@@ -475,6 +590,109 @@ public class SVMParameters {
     return validateExampleNumber;
   }
 
+  public void setMaxDenseDimension(int maxDenseDimension) {
+    this.maxDenseDimension = maxDenseDimension;
+  }
+
+  public int getMaxDenseDimension() {
+    return maxDenseDimension;
+  }
+
+  public void setBinaryModel(boolean binaryModel) {
+    this.binaryModel = binaryModel;
+  }
+
+  public boolean isBinaryModel() {
+    return binaryModel;
+  }
+
+  public void setModelPrecision(int modelPrecision) {
+    this.modelPrecision = modelPrecision;
+  }
+
+  public int getModelPrecision() {
+    return modelPrecision;
+  }
+
+  public void setHashBits(int hashBits) {
+    if (hashBits < 0 || hashBits > 30) {
+      throw new IllegalArgumentException("hashBits must be in [0, 30]: " + hashBits);
+    }
+    this.hashBits = hashBits;
+  }
+
+  public int getHashBits() {
+    return hashBits;
+  }
+
+  public void setThreadNumber(int threadNumber) {
+    this.threadNumber = threadNumber;
+  }
+
+  public int getThreadNumber() {
+    return threadNumber;
+  }
+
+  /**
+   * @return threadNumber, or the number of available processors if it is not
+   *         set
+   */
+  public int getWorkerThreads() {
+    return threadNumber > 0 ? threadNumber : Runtime.getRuntime()
+        .availableProcessors();
+  }
+
+  public void setLossType(int lossType) {
+    if (lossType != 1 && lossType != 2) {
+      throw new IllegalArgumentException("lossType must be 1 (L1) or 2 (L2): " + lossType);
+    }
+    this.lossType = lossType;
+  }
+
+  public int getLossType() {
+    return lossType;
+  }
+
+  public void setTolerance(double tolerance) {
+    this.tolerance = tolerance;
+  }
+
+  public double getTolerance() {
+    return tolerance;
+  }
+
+  public void setEarlyStopTolerance(double earlyStopTolerance) {
+    this.earlyStopTolerance = earlyStopTolerance;
+  }
+
+  public double getEarlyStopTolerance() {
+    return earlyStopTolerance;
+  }
+
+  public void setAverageCandidates(boolean averageCandidates) {
+    this.averageCandidates = averageCandidates;
+  }
+
+  public boolean isAverageCandidates() {
+    return averageCandidates;
+  }
+
+  public void setLambdaPath(double[] lambdaPath) {
+    this.lambdaPath = lambdaPath;
+  }
+
+  public double[] getLambdaPath() {
+    return lambdaPath;
+  }
+
+  public void setCrossValidationFolds(int crossValidationFolds) {
+    this.crossValidationFolds = crossValidationFolds;
+  }
+
+  public int getCrossValidationFolds() {
+    return crossValidationFolds;
+  }
+
   public void setLambda(double lambda) {
     this.lambda = lambda;
   }
@@ -0,0 +1,203 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.svmweightvector;
+
+import java.util.Iterator;
+
+import org.apache.mahout.math.Vector;
+
+/**
+ * Polyak average of the iterates of a working WeightVector, kept lazily.
+ *
+ * Between two updates of feature i, the stored weight v_i is constant and the
+ * true weight is A_t * v_i, so its contribution to the sum of iterates is v_i
+ * times the sum of A_t over those iterations. Hence each feature only keeps its
+ * partial sum and a timestamp (the running sum of A at its last update), and is
+ * brought up to date when the working vector touches it. An iteration costs
+ * O(nnz(x)); only a fold of A (rare) or scale(0) touches all features.
+ *
+ * The working vector must only be updated through scale() and add() of this
+ * class.
+ */
+public class AveragedWeightVector {
+
+  private final WeightVector w;
+  // per-feature sums and timestamps, dense when w is dense
+  private double[] sums;
+  private double[] stamps;
+  private OpenAddressingWeightMap sumMap;
+  private OpenAddressingWeightMap stampMap;
+  // sum of A over the averaged iterations
+  private double scaleSum;
+  // number of averaged iterations
+  private long count;
+
+  /**
+   * @param w
+   *          the working weight vector
+   */
+  public AveragedWeightVector(WeightVector w) {
+    this.w = w;
+    if (w.isDense()) {
+      this.sums = new double[w.getDimension()];
+      this.stamps = new double[w.getDimension()];
+    } else {
+      this.sumMap = new OpenAddressingWeightMap();
+      this.stampMap = new OpenAddressingWeightMap();
+    }
+  }
+
+  /**
+   * @return the working weight vector
+   */
+  public WeightVector getWeightVector() {
+    return this.w;
+  }
+
+  /**
+   * @return number of iterates in the average
+   */
+  public long getCount() {
+    return this.count;
+  }
+
+  /**
+   * Brings feature index up to date with the current scale sum.
+   */
+  private void flush(int index) {
+    double v = this.w.storedValue(index);
+    if (null != this.sums) {
+      if (index >= this.sums.length) {
+        return;
+      }
+      this.sums[index] += v * (this.scaleSum - this.stamps[index]);
+      this.stamps[index] = this.scaleSum;
+    } else {
+      double stamp = this.stampMap.get(index);
+      if (0.0 != v) {
+        this.sumMap.add(index, v * (this.scaleSum - stamp));
+      }
+      this.stampMap.put(index, this.scaleSum);
+    }
+  }
+
+  /**
+   * Brings all stored features up to date, before their stored values change.
+   */
+  private void flushAll() {
+    int[] indices = this.w.storedIndices();
+    for (int i = 0; i < indices.length; i++) {
+      flush(indices[i]);
+    }
+  }
+
+  /**
+   * w = s * w
+   */
+  public void scale(double s) {
+    // stored values are rewritten when A is folded or w is cleared
+    if (this.count > 0 && (0.0 == s || WeightVector.needsFold(this.w.getA() * s))) {
+      flushAll();
+    }
+    this.w.scale(s);
+  }
+
+  /**
+   * w = w + s * x
+   */
+  public void add(Vector x, double s) {
+    if (this.count > 0) {
+      Iterator<Vector.Element> iter = x.iterateNonZero();
+      while (iter.hasNext()) {
+        flush(iter.next().index());
+      }
+    }
+    this.w.add(x, s);
+  }
+
+  /**
+   * w = w + s * x, with x given by its feature indices and values
+   */
+  public void add(int[] indices, double[] values, double s) {
+    if (this.count > 0) {
+      for (int i = 0; i < indices.length; i++) {
+        flush(indices[i]);
+      }
+    }
+    this.w.add(indices, values, s);
+  }
+
+  /**
+   * Adds the current iterate to the average.
+   */
+  public void average() {
+    this.scaleSum += this.w.getA();
+    this.count++;
+  }
+
+  /**
+   * Builds the averaged weight vector, with the store type of the working
+   * vector. It returns the working vector if nothing has been averaged.
+   *
+   * @return averaged weights
+   */
+  public WeightVector getAverage() {
+    if (0 == this.count) {
+      return this.w;
+    }
+    double snorm = 0.0;
+    WeightVector avg;
+    if (null != this.sums) {
+      avg = new WeightVector(this.w.getDimension(), WeightVector.DENSE);
+      for (int i = 0; i < this.sums.length; i++) {
+        double value = (this.sums[i] + this.w.storedValue(i)
+                        * (this.scaleSum - this.stamps[i])) / this.count;
+        if (0.0 != value) {
+          avg.putStored(i, value);
+          snorm += value * value;
+        }
+      }
+    } else {
+      avg = new WeightVector(this.w.getDimension(), WeightVector.HASHED);
+      int[] touched = this.sumMap.sortedKeys();
+      int[] stored = this.w.storedIndices();
+      // merge the two sorted index lists
+      int i = 0;
+      int j = 0;
+      while (i < touched.length || j < stored.length) {
+        int index;
+        if (j >= stored.length || (i < touched.length && touched[i] < stored[j])) {
+          index = touched[i++];
+        } else if (i >= touched.length || stored[j] < touched[i]) {
+          index = stored[j++];
+        } else {
+          index = touched[i++];
+          j++;
+        }
+        double value = (this.sumMap.get(index) + this.w.storedValue(index)
+                        * (this.scaleSum - this.stampMap.get(index)))
+                       / this.count;
+        if (0.0 != value) {
+          avg.putStored(index, value);
+          snorm += value * value;
+        }
+      }
+      avg.freeze();
+    }
+    avg.setSnorm(snorm);
+    return avg;
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.svmweightvector;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Versioned binary model file. All numbers are big-endian.
+ *
+ * <pre>
+ * header: int magic, int version, int classificationType, int classNum,
+ *         int labelNum, double[labelNum] labels, int dimension, int modelNum
+ * model:  int keyLength, byte[keyLength] key (e.g. W, W0_1), double A,
+ *         double Snorm, int nnz, int[nnz] indices, double[nnz] values
+ * </pre>
+ *
+ * The loader maps the file with FileChannel.map and fills the weight stores
+ * straight from the mapped buffer.
+ */
+public final class BinaryModelFile {
+
+  /** "PGSV" */
+  public static final int MAGIC = 0x50475356;
+  public static final int VERSION = 1;
+
+  private BinaryModelFile() {
+
+  }
+
+  /**
+   * Writes models to a binary model file.
+   *
+   * @param fileName
+   *          Name of file
+   * @param classificationType
+   *          The type of classifier
+   * @param classNum
+   *          The number of categories
+   * @param labels
+   *          A set of unique labels of the data set, can be null
+   * @param keys
+   *          Model keys, e.g. W0_1
+   * @param weightList
+   *          Models, in the order of keys
+   * @throws IOException
+   */
+  public static void write(String fileName,
+                           int classificationType,
+                           int classNum,
+                           Set<Double> labels,
+                           List<String> keys,
+                           List<WeightVector> weightList) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(fileName), 1 << 16));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(classificationType);
+      out.writeInt(classNum);
+      if (null == labels) {
+        out.writeInt(0);
+      } else {
+        out.writeInt(labels.size());
+        for (Double l : labels) {
+          out.writeDouble(l);
+        }
+      }
+      out.writeInt(weightList.get(0).getDimension());
+      out.writeInt(weightList.size());
+      for (int m = 0; m < weightList.size(); m++) {
+        WeightVector w = weightList.get(m);
+        byte[] key = keys.get(m).getBytes("UTF-8");
+        out.writeInt(key.length);
+        out.write(key);
+        out.writeDouble(w.getA());
+        out.writeDouble(w.getSnorm());
+        int[] indices = w.storedIndices();
+        double[] values = w.storedValues(indices);
+        out.writeInt(indices.length);
+        for (int i = 0; i < indices.length; i++) {
+          out.writeInt(indices[i]);
+        }
+        for (int i = 0; i < values.length; i++) {
+          out.writeDouble(values[i]);
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * @param head
+   *          the first bytes of a model file
+   * @return true if it is a binary model file
+   */
+  public static boolean isBinary(byte[] head) {
+    return head.length >= 4 && MAGIC == ByteBuffer.wrap(head).getInt();
+  }
+
+  /**
+   * @param fileName
+   *          model file on local file system
+   * @return true if it is a binary model file
+   * @throws IOException
+   */
+  public static boolean isBinary(String fileName) throws IOException {
+    DataInputStream in = new DataInputStream(new FileInputStream(fileName));
+    try {
+      return MAGIC == in.readInt();
+    } catch (IOException e) {
+      // shorter than the magic number, so not a binary model
+      return false;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Maps a local model file into memory.
+   *
+   * @param fileName
+   *          model file
+   * @return read-only buffer of the whole file
+   * @throws IOException
+   */
+  public static ByteBuffer map(String fileName) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(fileName, "r");
+    try {
+      FileChannel channel = file.getChannel();
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      // the mapping stays valid after the channel is closed
+      file.close();
+    }
+  }
+
+  /**
+   * Reads all models in the buffer.
+   *
+   * @param buffer
+   *          binary model file content
+   * @param weightList
+   *          key -> model
+   * @throws IOException
+   *           Not a binary model file, or unsupported version
+   */
+  public static void read(ByteBuffer buffer, Map<String,WeightVector> weightList) throws IOException {
+    if (MAGIC != buffer.getInt()) {
+      throw new IOException("Not a binary model file");
+    }
+    int version = buffer.getInt();
+    if (version > VERSION) {
+      throw new IOException("Unsupported binary model version: " + version);
+    }
+    buffer.getInt(); // classification type
+    int classNum = buffer.getInt();
+    int labelNum = buffer.getInt();
+    Set<Double> labels = null;
+    if (labelNum > 1) {
+      labels = new TreeSet<Double>();
+    }
+    for (int i = 0; i < labelNum; i++) {
+      double l = buffer.getDouble();
+      if (null != labels) {
+        labels.add(l);
+      }
+    }
+    int d = buffer.getInt();
+    int modelNum = buffer.getInt();
+    for (int m = 0; m < modelNum; m++) {
+      byte[] key = new byte[buffer.getInt()];
+      buffer.get(key);
+      double a = buffer.getDouble();
+      double snorm = buffer.getDouble();
+      int nnz = buffer.getInt();
+
+      ByteBuffer indices = buffer.slice();
+      indices.limit(nnz * 4);
+      buffer.position(buffer.position() + nnz * 4);
+      ByteBuffer values = buffer.slice();
+      values.limit(nnz * 8);
+      buffer.position(buffer.position() + nnz * 8);
+
+      WeightVector w = WeightVector.fromBuffers(d, a, snorm, indices
+          .asIntBuffer(), values.asDoubleBuffer());
+      w.setClassInfo(classNum, labels);
+      weightList.put(new String(key, "UTF-8"), w);
+    }
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.svmweightvector;
+
+import java.util.Arrays;
+
+/**
+ * Dense weights shared by Hogwild workers. The true weights are a * v[i], with
+ * v written by all workers without locks.
+ *
+ * The scale a is never written while workers run: each worker derives the
+ * scale of its iteration from its own iteration number (see
+ * TrainingBinaryClassificationHogwild), so only the sparse writes to v race.
+ * A lost write drops one sub-gradient coordinate, which SGD tolerates on sparse
+ * data.
+ *
+ * The squared norm of v is kept up to date from the changes that add() returns,
+ * so that the weights can be projected without a pass over v. Lost writes make
+ * it drift slightly, fold() and computeSnorm() recompute it. setA(), fold(),
+ * scale(), addToNorm(), computeSnorm() and getSnorm() must only be called when
+ * the workers are stopped.
+ */
+public class HogwildWeightVector {
+
+  private final double[] v;
+  // scale of v at the start of the current round
+  private double a = 1.0;
+  // |v|^2, up to the lost writes since the last recomputation
+  private double vnorm2;
+  private long foldCount;
+
+  /**
+   * @param d
+   *          dimension, all feature indices must be smaller
+   */
+  public HogwildWeightVector(int d) {
+    this.v = new double[d];
+  }
+
+  public int getDimension() {
+    return this.v.length;
+  }
+
+  public double getA() {
+    return this.a;
+  }
+
+  public void setA(double a) {
+    this.a = a;
+  }
+
+  /**
+   * @return number of folds of the scale into the stored values
+   */
+  public long getFoldCount() {
+    return this.foldCount;
+  }
+
+  /**
+   * @return true if a is about to leave the range in which v is stored
+   *         accurately
+   */
+  public boolean needsFold() {
+    return WeightVector.needsFold(this.a);
+  }
+
+  /**
+   * @return true if the weights have to be folded (or cleared) at scale a
+   */
+  public static boolean needsFold(double a) {
+    return WeightVector.needsFold(a);
+  }
+
+  /**
+   * v = a * v, a = 1
+   */
+  public void fold() {
+    double[] values = this.v;
+    double scale = this.a;
+    double sum = 0.0;
+    for (int i = 0; i < values.length; i++) {
+      values[i] *= scale;
+      sum += values[i] * values[i];
+    }
+    this.vnorm2 = sum;
+    this.a = 1.0;
+    this.foldCount++;
+  }
+
+  /**
+   * w = s * w
+   */
+  public void scale(double s) {
+    this.a *= s;
+    if (0.0 == this.a) {
+      Arrays.fill(this.v, 0.0);
+      this.vnorm2 = 0.0;
+      this.a = 1.0;
+    } else if (needsFold()) {
+      fold();
+    }
+  }
+
+  /**
+   * @param indices
+   *          feature indices of the sample
+   * @param values
+   *          feature values of the sample
+   * @param scale
+   *          scale of the weights in the caller's iteration
+   * @return inner product of the sample and scale * v
+   */
+  public double times(int[] indices, double[] values, double scale) {
+    double[] stored = this.v;
+    double result = 0.0;
+    for (int i = 0; i < indices.length; i++) {
+      result += values[i] * stored[indices[i]];
+    }
+    return result * scale;
+  }
+
+  /**
+   * w = w + s * x, with the weights at the given scale. Not atomic, see the
+   * class comment.
+   *
+   * @return the change of |v|^2 seen by the caller, for addToNorm()
+   */
+  public double add(int[] indices, double[] values, double s, double scale) {
+    double[] stored = this.v;
+    double factor = s / scale;
+    double change = 0.0;
+    for (int i = 0; i < indices.length; i++) {
+      double delta = values[i] * factor;
+      double old = stored[indices[i]];
+      stored[indices[i]] = old + delta;
+      change += delta * (2.0 * old + delta);
+    }
+    return change;
+  }
+
+  /**
+   * Adds the changes of |v|^2 returned by add().
+   */
+  public void addToNorm(double change) {
+    this.vnorm2 = Math.max(0.0, this.vnorm2 + change);
+  }
+
+  /**
+   * Recomputes |v|^2 from v, in O(d).
+   */
+  public void computeSnorm() {
+    double[] values = this.v;
+    double sum = 0.0;
+    for (int i = 0; i < values.length; i++) {
+      sum += values[i] * values[i];
+    }
+    this.vnorm2 = sum;
+  }
+
+  /**
+   * @return squared norm of the weights, in O(1)
+   */
+  public double getSnorm() {
+    return this.vnorm2 * this.a * this.a;
+  }
+
+  /**
+   * @return the weights as a dense WeightVector
+   */
+  public WeightVector toWeightVector() {
+    WeightVector w = new WeightVector(this.v.length, WeightVector.DENSE);
+    double[] values = this.v;
+    double snorm = 0.0;
+    for (int i = 0; i < values.length; i++) {
+      double value = values[i] * this.a;
+      if (0.0 != value) {
+        w.putStored(i, value);
+        snorm += value * value;
+      }
+    }
+    w.setSnorm(snorm);
+    return w;
+  }
+}
@@ -0,0 +1,339 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.svmweightvector;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.mahout.classifier.svm.parameters.SVMParameters;
+
+/**
+ * Text model parser. It scans the characters of "Key#value" lines once,
+ * decodes the "index:value" pairs of the W lines in place and appends them to
+ * primitive arrays, from which the weight store is filled. Only the short
+ * header values and the model keys become Strings.
+ *
+ * Several files can be parsed in a row (e.g. the part files of a reducer
+ * output), header values read later overwrite earlier ones.
+ */
+final class ModelTextParser {
+
+  private static final int EOF = -1;
+  // 10^k is exact as a double for k <= 22
+  private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5,
+                                                 1e6, 1e7, 1e8, 1e9, 1e10,
+                                                 1e11, 1e12, 1e13, 1e14, 1e15,
+                                                 1e16, 1e17, 1e18, 1e19, 1e20,
+                                                 1e21, 1e22};
+  // integers up to 2^53 are exact as a double
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+  private Reader in;
+  private final char[] buffer = new char[1 << 16];
+  private int pos;
+  private int limit;
+  private char[] token = new char[64];
+  private int tokenLength;
+  private final StringBuilder text = new StringBuilder();
+
+  private int classNum;
+  private int d;
+  private double snorm;
+  private Set<Double> labels;
+  private final List<String> weightKeys = new ArrayList<String>();
+  private final List<WeightVector> weights = new ArrayList<WeightVector>();
+  // A of each model, by the key suffix, e.g. "0_1" for A0_1
+  private final Map<String,Double> scales = new HashMap<String,Double>();
+
+  // entries of the W line being parsed
+  private int[] indices = new int[1024];
+  private double[] values = new double[1024];
+
+  /**
+   * Parses all lines of in; in is not closed.
+   */
+  void parse(Reader reader) throws IOException {
+    this.in = reader;
+    this.pos = 0;
+    this.limit = 0;
+    int c;
+    while (EOF != (c = skipBlank())) {
+      // key
+      this.text.setLength(0);
+      while (EOF != c && '#' != c && '\n' != c && '\r' != c) {
+        this.text.append((char) c);
+        this.pos++;
+        c = peek();
+      }
+      if ('#' != c) {
+        continue;
+      }
+      this.pos++;
+      String key = this.text.toString().trim();
+      if (key.startsWith(SVMParameters.W)) {
+        parseWeights(key);
+      } else {
+        parseHeader(key);
+      }
+      skipLine();
+    }
+  }
+
+  private void parseHeader(String key) throws IOException {
+    if (SVMParameters.LABELS.equals(key)) {
+      Set<Double> lineLabels = new TreeSet<Double>();
+      while (readToken()) {
+        lineLabels.add(decodeDouble());
+      }
+      this.labels = lineLabels.size() > 1 ? lineLabels : null;
+      return;
+    }
+    if (!readToken()) {
+      return;
+    }
+    if (SVMParameters.CLASS_NUMBER.equals(key)) {
+      this.classNum = (int) decodeLong();
+    } else if (SVMParameters.DIMENSION.equals(key)) {
+      this.d = (int) decodeLong();
+    } else if (SVMParameters.SNORM.equals(key)) {
+      this.snorm = decodeDouble();
+    } else if (key.startsWith(SVMParameters.A)) {
+      this.scales.put(key.substring(SVMParameters.A.length()), decodeDouble());
+    }
+  }
+
+  private void parseWeights(String key) throws IOException {
+    int nnz = 0;
+    while (readToken()) {
+      if (nnz == this.indices.length) {
+        int[] moreIndices = new int[nnz << 1];
+        System.arraycopy(this.indices, 0, moreIndices, 0, nnz);
+        this.indices = moreIndices;
+        double[] moreValues = new double[nnz << 1];
+        System.arraycopy(this.values, 0, moreValues, 0, nnz);
+        this.values = moreValues;
+      }
+      this.indices[nnz] = (int) decodeLong();
+      if (':' != peek()) {
+        throw new IOException("Bad weight entry in model " + key);
+      }
+      this.pos++;
+      if (!readToken()) {
+        throw new IOException("Bad weight entry in model " + key);
+      }
+      this.values[nnz++] = decodeDouble();
+    }
+    this.weightKeys.add(key);
+    this.weights.add(WeightVector.fromBuffers(this.d, 1.0, 0.0, IntBuffer.wrap(
+      this.indices, 0, nnz), DoubleBuffer.wrap(this.values, 0, nnz)));
+  }
+
+  /**
+   * @return the keys of the models, e.g. W, W0_1, in the order of the file
+   */
+  List<String> getWeightKeys() {
+    return this.weightKeys;
+  }
+
+  /**
+   * @return the i-th model with its A, Snorm, class number and labels of the
+   *         header
+   * @throws IOException
+   *           the model has no A
+   */
+  WeightVector getModel(int i) throws IOException {
+    WeightVector w = this.weights.get(i);
+    Double a = this.scales.get(this.weightKeys.get(i).substring(
+      SVMParameters.W.length()));
+    if (null == a) {
+      throw new IOException("No A for model " + this.weightKeys.get(i));
+    }
+    w.setAtoX(a);
+    w.setSnorm(this.snorm);
+    w.setClassInfo(this.classNum, this.labels);
+    return w;
+  }
+
+  private int peek() throws IOException {
+    if (this.pos == this.limit) {
+      this.limit = this.in.read(this.buffer, 0, this.buffer.length);
+      this.pos = 0;
+      if (this.limit <= 0) {
+        this.limit = 0;
+        return EOF;
+      }
+    }
+    return this.buffer[this.pos];
+  }
+
+  /**
+   * Skips white space and line ends.
+   *
+   * @return the next char
+   */
+  private int skipBlank() throws IOException {
+    int c;
+    while (EOF != (c = peek()) && c <= ' ') {
+      this.pos++;
+    }
+    return c;
+  }
+
+  private void skipLine() throws IOException {
+    int c;
+    while (EOF != (c = peek()) && '\n' != c && '\r' != c) {
+      this.pos++;
+    }
+  }
+
+  /**
+   * Reads the next token of the current line into token, a token ends at white
+   * space, ':' or '#'.
+   *
+   * @return false at the end of the line (or value)
+   */
+  private boolean readToken() throws IOException {
+    int c;
+    while (' ' == (c = peek()) || '\t' == c) {
+      this.pos++;
+    }
+    this.tokenLength = 0;
+    while (EOF != c && c > ' ' && ':' != c && '#' != c) {
+      if (this.tokenLength == this.token.length) {
+        char[] longer = new char[this.tokenLength << 1];
+        System.arraycopy(this.token, 0, longer, 0, this.tokenLength);
+        this.token = longer;
+      }
+      this.token[this.tokenLength++] = (char) c;
+      this.pos++;
+      c = peek();
+    }
+    return this.tokenLength > 0;
+  }
+
+  private long decodeLong() throws IOException {
+    int i = 0;
+    boolean negative = false;
+    if ('-' == this.token[0] || '+' == this.token[0]) {
+      negative = '-' == this.token[0];
+      i++;
+    }
+    if (i == this.tokenLength) {
+      throw new IOException("Bad integer: " + tokenString());
+    }
+    long value = 0;
+    for (; i < this.tokenLength; i++) {
+      int digit = this.token[i] - '0';
+      if (digit < 0 || digit > 9) {
+        throw new IOException("Bad integer: " + tokenString());
+      }
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Decodes the token as double. The token must be a decimal number
+   * [sign] digits [. digits] [(e|E) [sign] digits] with at least one digit in
+   * the mantissa, or NaN or Infinity as written by Double.toString. Tokens
+   * whose digits fit in 2^53 with a small decimal exponent are computed exactly
+   * with one multiplication or division, others fall back to
+   * Double.parseDouble.
+   */
+  private double decodeDouble() throws IOException {
+    char[] t = this.token;
+    int n = this.tokenLength;
+    int i = 0;
+    boolean negative = false;
+    if ('-' == t[0] || '+' == t[0]) {
+      negative = '-' == t[0];
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean exact = true;
+    for (; i < n && t[i] >= '0' && t[i] <= '9'; i++) {
+      if (mantissa > (MAX_EXACT_MANTISSA - 9) / 10) {
+        exact = false;
+      } else {
+        mantissa = mantissa * 10 + (t[i] - '0');
+      }
+      digits++;
+    }
+    if (i < n && '.' == t[i]) {
+      for (i++; i < n && t[i] >= '0' && t[i] <= '9'; i++) {
+        if (mantissa > (MAX_EXACT_MANTISSA - 9) / 10) {
+          exact = false;
+        } else {
+          mantissa = mantissa * 10 + (t[i] - '0');
+          exponent--;
+        }
+        digits++;
+      }
+    }
+    if (0 == digits) {
+      String rest = new String(t, i, n - i);
+      if ("NaN".equals(rest) || "Infinity".equals(rest)) {
+        return Double.parseDouble(tokenString());
+      }
+      throw new IOException("Bad number: " + tokenString());
+    }
+    if (i < n && ('E' == t[i] || 'e' == t[i])) {
+      i++;
+      boolean negativeExponent = false;
+      if (i < n && ('-' == t[i] || '+' == t[i])) {
+        negativeExponent = '-' == t[i];
+        i++;
+      }
+      int e = 0;
+      int exponentDigits = 0;
+      for (; i < n && t[i] >= '0' && t[i] <= '9'; i++) {
+        // larger exponents only have to stay out of the exact range
+        if (e < 100000) {
+          e = e * 10 + (t[i] - '0');
+        }
+        exponentDigits++;
+      }
+      if (0 == exponentDigits) {
+        throw new IOException("Bad number: " + tokenString());
+      }
+      exponent += negativeExponent ? -e : e;
+    }
+    if (i != n) {
+      // a second point or exponent, or trailing characters
+      throw new IOException("Bad number: " + tokenString());
+    }
+    if (exact && exponent >= -22 && exponent <= 22) {
+      double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent]
+          : mantissa * POWERS_OF_TEN[exponent];
+      return negative ? -value : value;
+    }
+    return Double.parseDouble(tokenString());
+  }
+
+  private String tokenString() {
+    return new String(this.token, 0, this.tokenLength);
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.svmweightvector;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Streams text models to a Writer through a fixed char buffer, so that a model
+ * is never held as one String. Integers are encoded straight into the buffer.
+ * Doubles give the same text as Double.toString (so models read back exactly),
+ * with fast paths for integral values and for fractions of at most
+ * MAX_FRACTION_DIGITS decimals, such as the values of fixed-precision features.
+ */
+public class ModelTextWriter {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+  // the longest double text is shorter than this
+  private static final int MAX_NUMBER_LENGTH = 32;
+  // longest fraction of the fast path, longer ones go through Double.toString
+  private static final int MAX_FRACTION_DIGITS = 9;
+  private static final long[] POW10 = {1L, 10L, 100L, 1000L, 10000L, 100000L,
+    1000000L, 10000000L, 100000000L, 1000000000L};
+  // decimals with up to 53 bits of digits are exact doubles
+  private static final long MAX_EXACT = 1L << 53;
+
+  private final Writer out;
+  private final char[] buffer = new char[BUFFER_SIZE];
+  private int pos;
+  // scratch for the non-integral doubles
+  private final StringBuilder scratch = new StringBuilder(MAX_NUMBER_LENGTH);
+
+  public ModelTextWriter(Writer out) {
+    this.out = out;
+  }
+
+  /**
+   * @param out
+   *          output stream, the text is written in UTF-8
+   * @throws IOException
+   */
+  public ModelTextWriter(OutputStream out) throws IOException {
+    this(new OutputStreamWriter(out, "UTF-8"));
+  }
+
+  private void ensure(int length) throws IOException {
+    if (this.pos + length > this.buffer.length) {
+      flushBuffer();
+    }
+  }
+
+  private void flushBuffer() throws IOException {
+    this.out.write(this.buffer, 0, this.pos);
+    this.pos = 0;
+  }
+
+  public ModelTextWriter write(String s) throws IOException {
+    int length = s.length();
+    if (length > this.buffer.length) {
+      flushBuffer();
+      this.out.write(s);
+      return this;
+    }
+    ensure(length);
+    s.getChars(0, length, this.buffer, this.pos);
+    this.pos += length;
+    return this;
+  }
+
+  public ModelTextWriter write(char c) throws IOException {
+    ensure(1);
+    this.buffer[this.pos++] = c;
+    return this;
+  }
+
+  public ModelTextWriter write(long value) throws IOException {
+    ensure(MAX_NUMBER_LENGTH);
+    if (Long.MIN_VALUE == value) {
+      return write(Long.toString(value));
+    }
+    if (value < 0) {
+      this.buffer[this.pos++] = '-';
+      value = -value;
+    }
+    // digits are written backwards, then reversed
+    int start = this.pos;
+    do {
+      this.buffer[this.pos++] = (char) ('0' + value % 10);
+      value /= 10;
+    } while (value > 0);
+    for (int i = start, j = this.pos - 1; i < j; i++, j--) {
+      char c = this.buffer[i];
+      this.buffer[i] = this.buffer[j];
+      this.buffer[j] = c;
+    }
+    return this;
+  }
+
+  public ModelTextWriter write(double value) throws IOException {
+    // Double.toString writes integral values below 10^7 as "n.0"
+    if (value == (long) value && Math.abs(value) < 1e7
+        && !(0.0 == value && 1.0 / value < 0)) {
+      write((long) value);
+      ensure(2);
+      this.buffer[this.pos++] = '.';
+      this.buffer[this.pos++] = '0';
+      return this;
+    }
+    // Double.toString writes values in [10^-3, 10^7) without exponent
+    double abs = Math.abs(value);
+    if (abs >= 1e-3 && abs < 1e7 && writeFraction(value < 0, abs)) {
+      return this;
+    }
+    this.scratch.setLength(0);
+    this.scratch.append(value);
+    int length = this.scratch.length();
+    ensure(length);
+    this.scratch.getChars(0, length, this.buffer, this.pos);
+    this.pos += length;
+    return this;
+  }
+
+  /**
+   * Writes abs as the shortest decimal fraction of at most MAX_FRACTION_DIGITS
+   * decimals that reads back as abs. m / 10^k is the correctly rounded value of
+   * the decimal m * 10^-k, as Double.parseDouble, since both are exact doubles.
+   * 
+   * @return false, with nothing written, if abs needs more decimals
+   */
+  private boolean writeFraction(boolean negative, double abs) throws IOException {
+    // a shorter fraction is also one of MAX_FRACTION_DIGITS decimals, so most
+    // full precision values are rejected by one try
+    if (!isFraction(abs, MAX_FRACTION_DIGITS)) {
+      return false;
+    }
+    for (int k = 1; k <= MAX_FRACTION_DIGITS; k++) {
+      if (isFraction(abs, k)) {
+        long m = Math.round(abs * POW10[k]);
+        long integral = m / POW10[k];
+        long fraction = m % POW10[k];
+        while (k > 1 && 0 == fraction % 10) {
+          fraction /= 10;
+          k--;
+        }
+        if (negative) {
+          write('-');
+        }
+        write(integral);
+        ensure(k + 1);
+        this.buffer[this.pos++] = '.';
+        for (int i = this.pos + k - 1; i >= this.pos; i--) {
+          this.buffer[i] = (char) ('0' + fraction % 10);
+          fraction /= 10;
+        }
+        this.pos += k;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isFraction(double abs, int k) {
+    long m = Math.round(abs * POW10[k]);
+    return m < MAX_EXACT && (double) m / POW10[k] == abs;
+  }
+
+  /**
+   * Writes "\r\n", the line separator of model files.
+   */
+  public ModelTextWriter newLine() throws IOException {
+    ensure(2);
+    this.buffer[this.pos++] = '\r';
+    this.buffer[this.pos++] = '\n';
+    return this;
+  }
+
+  public void flush() throws IOException {
+    flushBuffer();
+    this.out.flush();
+  }
+
+  public void close() throws IOException {
+    flushBuffer();
+    this.out.close();
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.svmweightvector;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.mahout.math.Vector;
+
+/**
+ * All weight vectors of a multi-classification model stacked feature-major:
+ * for each feature that is non-zero in any model, one contiguous block holds
+ * the weights (scaled by A) of all models. Scoring a sample walks its non-zero
+ * features once and accumulates the scores of every model.
+ *
+ * If all models are quantized (see WeightVector.quantize) with the same
+ * precision, the stack keeps that precision: float32 weights, or int8 weights
+ * with one scale per model applied to the final scores.
+ */
+public class MultiClassModel {
+
+  private static final int EMPTY = -1;
+
+  private final int modelNum;
+  // feature -> block, open addressing
+  private int[] featureKeys;
+  private int[] featureBlocks;
+  private int mask;
+  // featureNum * modelNum weights, only one of them is used
+  private double[] weights;
+  private float[] floatWeights;
+  private byte[] byteWeights;
+  // scale of each model for int8 weights
+  private double[] modelScales;
+
+  /**
+   * Stacks the models given by keys, the i-th score is the one of keys.get(i).
+   *
+   * @param weightList
+   *          key -> model, e.g. W0_1 -> w
+   * @param keys
+   *          keys of models in score order
+   */
+  public MultiClassModel(Map<String,WeightVector> weightList, List<String> keys) {
+    this.modelNum = keys.size();
+    WeightVector[] models = new WeightVector[this.modelNum];
+    int[][] indices = new int[this.modelNum][];
+    int total = 0;
+    for (int m = 0; m < this.modelNum; m++) {
+      models[m] = weightList.get(keys.get(m));
+      if (null == models[m]) {
+        throw new IllegalArgumentException("No model for key: " + keys.get(m));
+      }
+      indices[m] = models[m].storedIndices();
+      total += indices[m].length;
+    }
+
+    // union of non-zero features
+    int[] features = new int[total];
+    int pos = 0;
+    for (int m = 0; m < this.modelNum; m++) {
+      System.arraycopy(indices[m], 0, features, pos, indices[m].length);
+      pos += indices[m].length;
+    }
+    Arrays.sort(features);
+    int featureNum = 0;
+    for (int i = 0; i < features.length; i++) {
+      if (0 == i || features[i] != features[i - 1]) {
+        features[featureNum++] = features[i];
+      }
+    }
+
+    int capacity = 16;
+    while (capacity < 2 * featureNum) {
+      capacity <<= 1;
+    }
+    this.featureKeys = new int[capacity];
+    Arrays.fill(this.featureKeys, EMPTY);
+    this.featureBlocks = new int[capacity];
+    this.mask = capacity - 1;
+    for (int f = 0; f < featureNum; f++) {
+      int slot = slot(features[f]);
+      while (EMPTY != this.featureKeys[slot]) {
+        slot = (slot + 1) & this.mask;
+      }
+      this.featureKeys[slot] = features[f];
+      this.featureBlocks[slot] = f * this.modelNum;
+    }
+
+    int precision = models.length > 0 ? models[0].getPrecision()
+        : WeightVector.PRECISION_DOUBLE;
+    for (int m = 1; m < this.modelNum; m++) {
+      if (models[m].getPrecision() != precision) {
+        precision = WeightVector.PRECISION_DOUBLE;
+      }
+    }
+    int size = featureNum * this.modelNum;
+    if (WeightVector.PRECISION_FLOAT == precision) {
+      this.floatWeights = new float[size];
+    } else if (WeightVector.PRECISION_INT8 == precision) {
+      this.byteWeights = new byte[size];
+      this.modelScales = new double[this.modelNum];
+    } else {
+      this.weights = new double[size];
+    }
+    for (int m = 0; m < this.modelNum; m++) {
+      double[] values = models[m].storedValues(indices[m]);
+      double a = models[m].getA();
+      for (int i = 0; i < values.length; i++) {
+        int offset = block(indices[m][i]) + m;
+        if (null != this.byteWeights) {
+          // the stored values are the int8 ones, A is the scale
+          this.byteWeights[offset] = (byte) values[i];
+        } else if (null != this.floatWeights) {
+          this.floatWeights[offset] = (float) (values[i] * a);
+        } else {
+          this.weights[offset] = values[i] * a;
+        }
+      }
+      if (null != this.modelScales) {
+        this.modelScales[m] = a;
+      }
+    }
+  }
+
+  private int slot(int key) {
+    int h = key * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & this.mask;
+  }
+
+  /**
+   * @return offset of the feature's block, -1 if all models are zero on it.
+   */
+  private int block(int feature) {
+    int slot = slot(feature);
+    while (EMPTY != this.featureKeys[slot]) {
+      if (feature == this.featureKeys[slot]) {
+        return this.featureBlocks[slot];
+      }
+      slot = (slot + 1) & this.mask;
+    }
+    return -1;
+  }
+
+  public int getModelNum() {
+    return this.modelNum;
+  }
+
+  /**
+   * Computes the scores of all models for one sample.
+   *
+   * @param row
+   *          sample
+   * @param scores
+   *          output, at least getModelNum() long; it is overwritten.
+   */
+  public void scores(Vector row, double[] scores) {
+    int n = this.modelNum;
+    double[] w = this.weights;
+    float[] fw = this.floatWeights;
+    byte[] bw = this.byteWeights;
+    Arrays.fill(scores, 0, n, 0.0);
+    Iterator<Vector.Element> iter = row.iterateNonZero();
+    while (iter.hasNext()) {
+      Vector.Element elt = iter.next();
+      int base = block(elt.index());
+      if (base < 0) {
+        continue;
+      }
+      double x = elt.get();
+      if (null != w) {
+        for (int m = 0; m < n; m++) {
+          scores[m] += x * w[base + m];
+        }
+      } else if (null != fw) {
+        for (int m = 0; m < n; m++) {
+          scores[m] += x * fw[base + m];
+        }
+      } else {
+        for (int m = 0; m < n; m++) {
+          scores[m] += x * bw[base + m];
+        }
+      }
+    }
+    if (null != bw) {
+      for (int m = 0; m < n; m++) {
+        scores[m] *= this.modelScales[m];
+      }
+    }
+  }
+}
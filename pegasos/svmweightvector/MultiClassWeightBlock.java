@@ -0,0 +1,165 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.svmweightvector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dense weights of K classifiers, stored feature-major: the weights of feature
+ * f are v[f * K], ..., v[f * K + K - 1], so the K inner products of a sample
+ * take one walk over its nonzeros. Like WeightVector, the weights of class c
+ * are a[c] * v[f * K + c], with a lazily folded scale and a running squared
+ * norm per class.
+ */
+public class MultiClassWeightBlock {
+
+  private final int d;
+  private final int classNum;
+  private final double[] v;
+  private final double[] a;
+  private final double[] snorm;
+  private long foldCount;
+
+  /**
+   * @param d
+   *          dimension, all feature indices must be smaller
+   * @param classNum
+   *          number of classifiers K
+   */
+  public MultiClassWeightBlock(int d, int classNum) {
+    if ((long) d * classNum > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Weight block of " + d + " x " + classNum
+                                         + " weights is too large");
+    }
+    this.d = d;
+    this.classNum = classNum;
+    this.v = new double[d * classNum];
+    this.a = new double[classNum];
+    this.snorm = new double[classNum];
+    for (int c = 0; c < classNum; c++) {
+      this.a[c] = 1.0;
+    }
+  }
+
+  public int getDimension() {
+    return this.d;
+  }
+
+  public int getClassNum() {
+    return this.classNum;
+  }
+
+  /**
+   * @return squared norm of the weights of class c
+   */
+  public double getSnorm(int c) {
+    return this.snorm[c];
+  }
+
+  /**
+   * @return number of folds of the scales into the stored values
+   */
+  public long getFoldCount() {
+    return this.foldCount;
+  }
+
+  /**
+   * scores[c] = inner product of x and the weights of class c, for all classes.
+   */
+  public void times(int[] indices, double[] values, double[] scores) {
+    int k = this.classNum;
+    double[] weights = this.v;
+    for (int c = 0; c < k; c++) {
+      scores[c] = 0.0;
+    }
+    for (int i = 0; i < indices.length; i++) {
+      int base = indices[i] * k;
+      double x = values[i];
+      for (int c = 0; c < k; c++) {
+        scores[c] += x * weights[base + c];
+      }
+    }
+    for (int c = 0; c < k; c++) {
+      scores[c] *= this.a[c];
+    }
+  }
+
+  /**
+   * w_c = s * w_c
+   */
+  public void scale(int c, double s) {
+    this.a[c] *= s;
+    this.snorm[c] *= s * s;
+    if (0.0 == this.a[c]) {
+      for (int f = c; f < this.v.length; f += this.classNum) {
+        this.v[f] = 0.0;
+      }
+      this.a[c] = 1.0;
+      this.snorm[c] = 0.0;
+    } else if (WeightVector.needsFold(this.a[c])) {
+      double scale = this.a[c];
+      for (int f = c; f < this.v.length; f += this.classNum) {
+        this.v[f] *= scale;
+      }
+      this.a[c] = 1.0;
+      this.foldCount++;
+    }
+  }
+
+  /**
+   * w_c = w_c + s[c] * x for all classes with s[c] != 0, in one walk over the
+   * nonzeros of x.
+   */
+  public void add(int[] indices, double[] values, double[] s) {
+    int k = this.classNum;
+    double[] weights = this.v;
+    for (int i = 0; i < indices.length; i++) {
+      int base = indices[i] * k;
+      double x = values[i];
+      for (int c = 0; c < k; c++) {
+        if (0.0 != s[c]) {
+          double scale = this.a[c];
+          double old = weights[base + c];
+          double value = old + x * s[c] / scale;
+          weights[base + c] = value;
+          this.snorm[c] += scale * scale * (value * value - old * old);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the weights of each class as dense WeightVectors, in class order
+   */
+  public List<WeightVector> toWeightVectors() {
+    List<WeightVector> weightList = new ArrayList<WeightVector>(this.classNum);
+    for (int c = 0; c < this.classNum; c++) {
+      WeightVector w = new WeightVector(this.d, WeightVector.DENSE);
+      double norm = 0.0;
+      for (int f = 0; f < this.d; f++) {
+        double value = this.v[f * this.classNum + c] * this.a[c];
+        if (0.0 != value) {
+          w.putStored(f, value);
+          norm += value * value;
+        }
+      }
+      w.setSnorm(norm);
+      weightList.add(w);
+    }
+    return weightList;
+  }
+}
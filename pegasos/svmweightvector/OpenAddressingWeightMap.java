@@ -0,0 +1,203 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.svmweightvector;
+
+import java.util.Arrays;
+
+/**
+ * Primitive int -> double hash map with open addressing (linear probing), used
+ * as weight store during training when the feature space is too large for a
+ * dense array. Feature indices must be non-negative. Entries are never removed,
+ * so probing stops at the first empty slot.
+ */
+public class OpenAddressingWeightMap {
+
+  private static final int EMPTY = -1;
+  private static final double MAX_LOAD = 0.5;
+
+  private int[] keys;
+  private double[] values;
+  private int size;
+  private int mask;
+  private int threshold;
+
+  public OpenAddressingWeightMap() {
+    this(16);
+  }
+
+  /**
+   * @param expectedSize
+   *          expected number of features
+   */
+  public OpenAddressingWeightMap(int expectedSize) {
+    int capacity = 16;
+    while (capacity * MAX_LOAD < expectedSize) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  private void allocate(int capacity) {
+    this.keys = new int[capacity];
+    Arrays.fill(this.keys, EMPTY);
+    this.values = new double[capacity];
+    this.mask = capacity - 1;
+    this.threshold = (int) (capacity * MAX_LOAD);
+    this.size = 0;
+  }
+
+  private int slot(int key) {
+    int h = key * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & this.mask;
+  }
+
+  /**
+   * @return the value of key, 0.0 if key is absent.
+   */
+  public double get(int key) {
+    int[] k = this.keys;
+    int pos = slot(key);
+    while (k[pos] != EMPTY) {
+      if (k[pos] == key) {
+        return this.values[pos];
+      }
+      pos = (pos + 1) & this.mask;
+    }
+    return 0.0;
+  }
+
+  public void put(int key, double value) {
+    // insert may rehash, so look up the values array afterwards
+    int pos = insert(key);
+    this.values[pos] = value;
+  }
+
+  /**
+   * Sets the value of key only if key is absent, a present key keeps its value
+   * even if it is 0.0.
+   */
+  public void putIfAbsent(int key, double value) {
+    int before = this.size;
+    int pos = insert(key);
+    if (this.size != before) {
+      this.values[pos] = value;
+    }
+  }
+
+  /**
+   * @return true if key is stored, even with value 0.0.
+   */
+  public boolean containsKey(int key) {
+    int[] k = this.keys;
+    int pos = slot(key);
+    while (k[pos] != EMPTY) {
+      if (k[pos] == key) {
+        return true;
+      }
+      pos = (pos + 1) & this.mask;
+    }
+    return false;
+  }
+
+  /**
+   * Adds delta to the value of key.
+   *
+   * @return the value before adding.
+   */
+  public double add(int key, double delta) {
+    int pos = insert(key);
+    double old = this.values[pos];
+    this.values[pos] = old + delta;
+    return old;
+  }
+
+  /**
+   * Finds the slot of key, inserting key (with value 0.0) if absent.
+   */
+  private int insert(int key) {
+    int pos = slot(key);
+    while (this.keys[pos] != EMPTY) {
+      if (this.keys[pos] == key) {
+        return pos;
+      }
+      pos = (pos + 1) & this.mask;
+    }
+    if (this.size >= this.threshold) {
+      rehash(this.keys.length << 1);
+      return insert(key);
+    }
+    this.keys[pos] = key;
+    this.size++;
+    return pos;
+  }
+
+  private void rehash(int capacity) {
+    int[] oldKeys = this.keys;
+    double[] oldValues = this.values;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY) {
+        int pos = slot(oldKeys[i]);
+        while (this.keys[pos] != EMPTY) {
+          pos = (pos + 1) & this.mask;
+        }
+        this.keys[pos] = oldKeys[i];
+        this.values[pos] = oldValues[i];
+        this.size++;
+      }
+    }
+  }
+
+  /**
+   * Multiplies all values by s.
+   */
+  public void scale(double s) {
+    for (int i = 0; i < this.keys.length; i++) {
+      if (this.keys[i] != EMPTY) {
+        this.values[i] *= s;
+      }
+    }
+  }
+
+  public void clear() {
+    Arrays.fill(this.keys, EMPTY);
+    Arrays.fill(this.values, 0.0);
+    this.size = 0;
+  }
+
+  /**
+   * @return number of stored keys, including those whose value is 0.0.
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * @return the non-zero keys in ascending order.
+   */
+  public int[] sortedKeys() {
+    int[] out = new int[this.size];
+    int n = 0;
+    for (int i = 0; i < this.keys.length; i++) {
+      if (this.keys[i] != EMPTY && 0.0 != this.values[i]) {
+        out[n++] = this.keys[i];
+      }
+    }
+    out = Arrays.copyOf(out, n);
+    Arrays.sort(out);
+    return out;
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.svmweightvector;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.mahout.math.Vector;
+
+/**
+ * Read-only float32 or int8 weight store of a quantized WeightVector. The
+ * values are either indexed by feature (dense) or kept as sorted index/value
+ * pairs, whichever is smaller.
+ */
+final class QuantizedWeights {
+
+  // null if the values are indexed by feature
+  private final int[] indices;
+  private final float[] floats;
+  private final byte[] bytes;
+
+  private QuantizedWeights(int[] indices, float[] floats, byte[] bytes) {
+    this.indices = indices;
+    this.floats = floats;
+    this.bytes = bytes;
+  }
+
+  /**
+   * @param d
+   *          dimension
+   * @param indices
+   *          sorted indices of the non-zero weights
+   * @param values
+   *          weights
+   * @param factor
+   *          the stored value is values[i] * factor (rounded for int8)
+   * @param int8
+   *          int8 if true, float32 otherwise
+   */
+  static QuantizedWeights create(int d,
+                                 int[] indices,
+                                 double[] values,
+                                 double factor,
+                                 boolean int8) {
+    int valueBytes = int8 ? 1 : 4;
+    int nnz = indices.length;
+    boolean dense = (0 == nnz || indices[nnz - 1] < d)
+                    && denseFits(d, nnz, valueBytes);
+    int length = dense ? (0 == nnz ? 0 : indices[nnz - 1] + 1) : nnz;
+    float[] floats = int8 ? null : new float[length];
+    byte[] bytes = int8 ? new byte[length] : null;
+    for (int i = 0; i < nnz; i++) {
+      int pos = dense ? indices[i] : i;
+      double value = values[i] * factor;
+      if (int8) {
+        bytes[pos] = (byte) Math.max(-127, Math.min(127, Math.round(value)));
+      } else {
+        floats[pos] = (float) value;
+      }
+    }
+    return new QuantizedWeights(dense ? null : indices.clone(), floats, bytes);
+  }
+
+  /**
+   * @return true if an array of d values of valueBytes each takes at most twice
+   *         the memory of nnz int index/value pairs
+   */
+  static boolean denseFits(int d, int nnz, int valueBytes) {
+    return (long) d * valueBytes <= 2L * nnz * (4 + valueBytes);
+  }
+
+  double get(int index) {
+    int pos;
+    if (null == this.indices) {
+      pos = index;
+      if (index >= length()) {
+        return 0.0;
+      }
+    } else {
+      pos = Arrays.binarySearch(this.indices, index);
+      if (pos < 0) {
+        return 0.0;
+      }
+    }
+    return null == this.bytes ? this.floats[pos] : this.bytes[pos];
+  }
+
+  private int length() {
+    return null == this.bytes ? this.floats.length : this.bytes.length;
+  }
+
+  /**
+   * @return sorted indices of the non-zero values
+   */
+  int[] nonZeroIndices() {
+    int n = length();
+    int[] out = new int[n];
+    int nnz = 0;
+    for (int i = 0; i < n; i++) {
+      if (0 != (null == this.bytes ? this.floats[i] : this.bytes[i])) {
+        out[nnz++] = null == this.indices ? i : this.indices[i];
+      }
+    }
+    return Arrays.copyOf(out, nnz);
+  }
+
+  /**
+   * @return bytes held by the store
+   */
+  long memorySize() {
+    long size = null == this.bytes ? 4L * this.floats.length : this.bytes.length;
+    return null == this.indices ? size : size + 4L * this.indices.length;
+  }
+
+  /**
+   * Inner product of u and the stored values. Pairs are looked up by binary
+   * search from the last match, so samples in index order walk them once.
+   */
+  double times(Vector u) {
+    double result = 0.0;
+    Iterator<Vector.Element> iter = u.iterateNonZero();
+    float[] f = this.floats;
+    byte[] b = this.bytes;
+    if (null == this.indices) {
+      int n = length();
+      while (iter.hasNext()) {
+        Vector.Element elt = iter.next();
+        int index = elt.index();
+        if (index < n) {
+          result += elt.get() * (null == b ? f[index] : b[index]);
+        }
+      }
+      return result;
+    }
+    int[] keys = this.indices;
+    int from = 0;
+    int last = -1;
+    while (iter.hasNext()) {
+      Vector.Element elt = iter.next();
+      int index = elt.index();
+      if (index < last) {
+        // not in index order
+        from = 0;
+      }
+      last = index;
+      int pos = Arrays.binarySearch(keys, from, keys.length, index);
+      if (pos >= 0) {
+        result += elt.get() * (null == b ? f[pos] : b[pos]);
+        from = pos + 1;
+      } else {
+        from = -pos - 1;
+      }
+    }
+    return result;
+  }
+}
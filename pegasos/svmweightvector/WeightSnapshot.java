@@ -0,0 +1,118 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.svmweightvector;
+
+/**
+ * Copy-on-write view of a WeightVector at the time of WeightVector.snapshot().
+ * Taking a snapshot only records A and Snorm; afterwards the source saves the
+ * old stored value of each weight on its first update, so a snapshot costs
+ * O(weights updated since) instead of O(d). Updates that rewrite all weights
+ * (folding A, scale(0), add(WeightVector), quantize()) copy the snapshot once
+ * and detach it from the source.
+ *
+ * Release snapshots that are no longer needed, every live snapshot adds a hash
+ * lookup to each weight update of the source.
+ */
+public final class WeightSnapshot {
+
+  private final double a;
+  private final double snorm;
+  // the live vector, or the private copy once detached, null once released
+  private WeightVector source;
+  // stored values at snapshot time of the weights updated since
+  private OpenAddressingWeightMap saved;
+
+  WeightSnapshot(WeightVector source) {
+    this.a = source.getA();
+    this.snorm = source.getSnorm();
+    this.source = source;
+    this.saved = new OpenAddressingWeightMap();
+  }
+
+  /**
+   * Called by the source before it updates the stored weight of index.
+   */
+  void preserve(int index, double stored) {
+    this.saved.putIfAbsent(index, stored);
+  }
+
+  /**
+   * Called by the source before it rewrites all stored weights.
+   */
+  void detach() {
+    WeightVector copy = toWeightVector();
+    this.source = copy;
+    this.saved = new OpenAddressingWeightMap();
+  }
+
+  /**
+   * @return |w|^2 at snapshot time
+   */
+  public double getSnorm() {
+    return this.snorm;
+  }
+
+  /**
+   * @return the weights at snapshot time as a new WeightVector, with the store
+   *         type and class information of the source. It costs O(nnz(w)) (O(d)
+   *         for the dense store).
+   */
+  public WeightVector toWeightVector() {
+    if (null == this.source) {
+      throw new IllegalStateException("The snapshot has been released");
+    }
+    WeightVector w = new WeightVector(this.source.getDimension(),
+      this.source.storeType());
+    w.setClassInfo(this.source.getclassNum(), this.source.getLabels());
+
+    // the sorted union of the current non-zero weights and the saved ones
+    int[] current = this.source.storedIndices();
+    int[] old = this.saved.sortedKeys();
+    int i = 0;
+    int k = 0;
+    while (i < current.length || k < old.length) {
+      int index;
+      if (k >= old.length || (i < current.length && current[i] < old[k])) {
+        index = current[i++];
+      } else if (i >= current.length || old[k] < current[i]) {
+        index = old[k++];
+      } else {
+        index = current[i++];
+        k++;
+      }
+      double value = this.saved.containsKey(index) ? this.saved.get(index)
+          : this.source.storedValue(index);
+      if (0.0 != value && index < w.getDimension()) {
+        w.putStored(index, value);
+      }
+    }
+    w.setAtoX(this.a);
+    w.setSnorm(this.snorm);
+    return w;
+  }
+
+  /**
+   * Stops saving the updates of the source, toWeightVector() cannot be called
+   * afterwards.
+   */
+  public void release() {
+    if (null != this.source) {
+      this.source.releaseSnapshot(this);
+    }
+    this.source = null;
+    this.saved = null;
+  }
+}
@@ -15,12 +15,18 @@
  */
 package org.apache.mahout.classifier.svm.svmweightvector;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -30,6 +36,7 @@ import java.util.TreeSet;
 import org.apache.hadoop.fs.Path;
 import org.apache.mahout.classifier.svm.datastore.HDFSReader;
 import org.apache.mahout.classifier.svm.parameters.SVMParameters;
+import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.SequentialAccessSparseVector;
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.map.OpenHashMap;
@@ -43,6 +50,22 @@ import org.slf4j.LoggerFactory;
 public class WeightVector {
   // for multi-classification
   
+  /** weights stored in a sequential access sparse vector */
+  public static final int SPARSE = 0;
+  /** weights stored in a dense primitive array */
+  public static final int DENSE = 1;
+  /** weights stored in an open-addressing hash map */
+  public static final int HASHED = 2;
+  /** full precision weights */
+  public static final int PRECISION_DOUBLE = 0;
+  /** read-only float32 weights, see quantize() */
+  public static final int PRECISION_FLOAT = 1;
+  /** read-only int8 weights with one scale per model, see quantize() */
+  public static final int PRECISION_INT8 = 2;
+  // A is folded into the stored weights once it leaves [MIN_A, MAX_A]
+  private static final double MIN_A = 1e-9;
+  private static final double MAX_A = 1e9;
+  
   private static final Logger log = LoggerFactory.getLogger(WeightVector.class);
   private int classNum;
   private Set<Double> labels;
@@ -50,6 +73,20 @@ public class WeightVector {
   private double myA;
   private double mySnorm;
   private Vector myVector;
+  // dense store, only used when the dimension is bounded (myVector is null)
+  private double[] myWeights;
+  // hashed store for huge sparse feature spaces (myVector is null)
+  private OpenAddressingWeightMap myMap;
+  // sorted non-zero indices/values of myMap, built by freeze()
+  private int[] myFrozenIndices;
+  private double[] myFrozenValues;
+  // read-only quantized store (all other stores are null)
+  private QuantizedWeights myQuantized;
+  private int precision;
+  // how many times A has been folded into the stored weights
+  private long foldCount;
+  // live snapshots, null if there is none
+  private List<WeightSnapshot> snapshots;
   
   /**
    * Construction function
@@ -61,6 +98,7 @@ public class WeightVector {
     this.myA = 1.0;
     this.mySnorm = 0.0;
     this.myVector = null;
+    this.myWeights = null;
   }
   
   /**
@@ -76,10 +114,47 @@ public class WeightVector {
     this.myA = 1.0;
     this.mySnorm = 0.0;
     this.myVector = new SequentialAccessSparseVector(d, 10);
+    this.myWeights = null;
   }
   
   /**
-   * Constructing a WeightVector from file
+   * Constructing a WeightVector by given dimension and store type.
+   * <ul>
+   * <li>SPARSE: sequential access sparse vector.</li>
+   * <li>DENSE: primitive array of length d, which makes times, add and scale
+   * array-indexed. Thus d should be the (max feature index + 1) of the data set
+   * rather than Integer.MAX_VALUE.</li>
+   * <li>HASHED: open-addressing int -> double map for random order updates on
+   * huge sparse feature spaces. Call freeze() before reading the weights in
+   * index order.</li>
+   * </ul>
+   * 
+   * @param d
+   *          dimension
+   * @param storeType
+   *          SPARSE, DENSE or HASHED
+   */
+  public WeightVector(int d, int storeType) {
+    this.classNum = 0;
+    this.labels = null;
+    this.d = d;
+    this.myA = 1.0;
+    this.mySnorm = 0.0;
+    switch (storeType) {
+      case DENSE:
+        this.myWeights = new double[d];
+        break;
+      case HASHED:
+        this.myMap = new OpenAddressingWeightMap();
+        break;
+      default:
+        this.myVector = new SequentialAccessSparseVector(d, 10);
+        break;
+    }
+  }
+  
+  /**
+   * Constructing a WeightVector from file, either text or binary model file.
    * 
    * @param fileName
    *          File stored weight vector
@@ -87,50 +162,18 @@ public class WeightVector {
    *           File not found or cannot be read
    */
   public WeightVector(String fileName) throws IOException {
-    BufferedReader modelFile = new BufferedReader(new FileReader(fileName));
-    Map<String,String> keyValue = new OpenHashMap<String,String>();
-    String line = null;
-    String[] vectorString = null;
-    String[] labelList = null;
-    
-    // read all line from file
-    while ((line = modelFile.readLine()) != null) {
-      String[] words = line.trim().split("#");
-      if (words.length > 1) {
-        keyValue.put(words[0], words[1]);
-      }
+    if (BinaryModelFile.isBinary(fileName)) {
+      copyFrom(readFirstModel(BinaryModelFile.map(fileName)));
+      return;
     }
-    
-    // process the variables.
-    this.classNum = Integer.parseInt(keyValue.get(SVMParameters.CLASS_NUMBER));
-    Integer.parseInt(keyValue
-        .get(SVMParameters.CLASSIFICATION_TYPE));
-    this.d = Integer.parseInt(keyValue.get(SVMParameters.DIMENSION));
-    this.mySnorm = Double.parseDouble(keyValue.get(SVMParameters.SNORM));
-    
-    // label
-    labelList = keyValue.get(SVMParameters.LABELS).trim().split(" ");
-    if (labelList.length > 1) {
-      this.labels = new TreeSet<Double>();
-      for (int i = 0; i < labelList.length; i++) {
-        this.labels.add(new Double(labelList[i]));
-      }
-    }
-    
-    // A
-    this.myA = Double.parseDouble(keyValue.get(SVMParameters.A));
-    
-    // weight vector
-    vectorString = keyValue.get(SVMParameters.W).split(" ");
-    this.myVector = new SequentialAccessSparseVector(this.d, 10);
-    for (int i = 0; i < vectorString.length; i++) {
-      String[] iv = vectorString[i].split(":");
-      this.myVector
-          .setQuick(Integer.parseInt(iv[0]), Double.parseDouble(iv[1]));
+    Reader modelFile = new FileReader(fileName);
+    ModelTextParser parser = new ModelTextParser();
+    try {
+      parser.parse(modelFile);
+    } finally {
+      modelFile.close();
     }
-    
-    modelFile.close();
-    
+    copyFrom(firstModel(parser));
   }
   
   /**
@@ -144,65 +187,376 @@ public class WeightVector {
     HDFSReader rd = new HDFSReader();
     rd.setServerAddress(serverAddr);
     Path file = new Path(fileName);
+    if (BinaryModelFile.isBinary(rd.readHead(file, 4))) {
+      copyFrom(readFirstModel(rd.readAllBytes(file)));
+      return;
+    }
     
-    List<String> lines = rd.readLines(file, 0, 3);
-    Iterator<String> elt = lines.iterator();
-    String line = null;
-    String[] vectorString = null;
-    Map<String,String> keyValue = new OpenHashMap<String,String>();
-    String[] labelList = null;
-    
-    // read all line from file
-    while (elt.hasNext()) {
-      line = elt.next().toString();
-      String[] words = line.trim().split("#");
-      if (words.length > 1) {
-        keyValue.put(words[0], words[1]);
+    Reader modelFile = new InputStreamReader(rd.open(file), "UTF-8");
+    ModelTextParser parser = new ModelTextParser();
+    try {
+      parser.parse(modelFile);
+    } finally {
+      modelFile.close();
+    }
+    copyFrom(firstModel(parser));
+  }
+  
+  private static WeightVector firstModel(ModelTextParser parser) throws IOException {
+    if (parser.getWeightKeys().isEmpty()) {
+      throw new IOException("No model in text model file");
+    }
+    return parser.getModel(0);
+  }
+  
+  private static WeightVector readFirstModel(ByteBuffer buffer) throws IOException {
+    Map<String,WeightVector> models = new OpenHashMap<String,WeightVector>();
+    BinaryModelFile.read(buffer, models);
+    if (models.isEmpty()) {
+      throw new IOException("No model in binary model file");
+    }
+    return models.values().iterator().next();
+  }
+  
+  private void copyFrom(WeightVector w) {
+    this.classNum = w.classNum;
+    this.labels = w.labels;
+    this.d = w.d;
+    this.myA = w.myA;
+    this.mySnorm = w.mySnorm;
+    this.myVector = w.myVector;
+    this.myWeights = w.myWeights;
+    this.myMap = w.myMap;
+    this.myQuantized = w.myQuantized;
+    this.precision = w.precision;
+  }
+  
+  /**
+   * Creates a weight vector from the stored indices/values of a binary model.
+   * Dense store is used if the non-zero weights are dense enough that an
+   * array of d doubles takes at most twice the memory of the index/value
+   * pairs (the rule of QuantizedWeights), hashed store otherwise.
+   */
+  static WeightVector fromBuffers(int d,
+                                  double a,
+                                  double snorm,
+                                  IntBuffer indices,
+                                  DoubleBuffer values) {
+    int nnz = indices.remaining();
+    WeightVector w = new WeightVector();
+    w.d = d;
+    w.myA = a;
+    w.mySnorm = snorm;
+    if (QuantizedWeights.denseFits(d, nnz, 8)) {
+      double[] weights = new double[d];
+      for (int i = 0; i < nnz; i++) {
+        weights[indices.get(i)] = values.get(i);
       }
+      w.myWeights = weights;
+    } else {
+      OpenAddressingWeightMap map = new OpenAddressingWeightMap(nnz);
+      for (int i = 0; i < nnz; i++) {
+        map.put(indices.get(i), values.get(i));
+      }
+      w.myMap = map;
     }
-    
-    // process the variables.
-    this.classNum = Integer.parseInt(keyValue.get(SVMParameters.CLASS_NUMBER));
-    Integer.parseInt(keyValue
-        .get(SVMParameters.CLASSIFICATION_TYPE));
-    this.d = Integer.parseInt(keyValue.get(SVMParameters.DIMENSION));
-    this.mySnorm = Double.parseDouble(keyValue.get(SVMParameters.SNORM));
-    
-    // label
-    labelList = keyValue.get(SVMParameters.LABELS).trim().split(" ");
-    if (labelList.length > 1) {
-      this.labels = new TreeSet<Double>();
-      for (int i = 0; i < labelList.length; i++) {
-        this.labels.add(new Double(labelList[i]));
+    return w;
+  }
+  
+  void setClassInfo(int classNumber, Set<Double> uniqueLabels) {
+    this.classNum = classNumber;
+    this.labels = uniqueLabels;
+  }
+  
+  /**
+   * @return indices of the non-zero stored weights, in ascending order.
+   */
+  int[] storedIndices() {
+    if (null != this.myWeights) {
+      int nnz = 0;
+      for (int i = 0; i < this.myWeights.length; i++) {
+        if (0.0 != this.myWeights[i]) {
+          nnz++;
+        }
+      }
+      int[] indices = new int[nnz];
+      nnz = 0;
+      for (int i = 0; i < this.myWeights.length; i++) {
+        if (0.0 != this.myWeights[i]) {
+          indices[nnz++] = i;
+        }
       }
+      return indices;
+    } else if (null != this.myMap) {
+      freeze();
+      return this.myFrozenIndices;
+    } else if (null != this.myQuantized) {
+      return this.myQuantized.nonZeroIndices();
     }
-    
-    // A
-    this.myA = Double.parseDouble(keyValue.get(SVMParameters.A));
-    
-    // weight vector
-    vectorString = keyValue.get(SVMParameters.W).split(" ");
-    this.myVector = new SequentialAccessSparseVector(this.d, 10);
-    for (int i = 0; i < vectorString.length; i++) {
-      String[] iv = vectorString[i].split(":");
-      this.myVector
-          .setQuick(Integer.parseInt(iv[0]), Double.parseDouble(iv[1]));
+    int[] indices = new int[this.myVector.getNumNondefaultElements()];
+    int nnz = 0;
+    Iterator<Vector.Element> iter = this.myVector.iterateNonZero();
+    while (iter.hasNext()) {
+      indices[nnz++] = iter.next().index();
+    }
+    return nnz == indices.length ? indices : Arrays.copyOf(indices, nnz);
+  }
+  
+  /**
+   * @return the stored (unscaled by A) weights of given indices.
+   */
+  double[] storedValues(int[] indices) {
+    double[] values = new double[indices.length];
+    for (int i = 0; i < indices.length; i++) {
+      values[i] = storedValue(indices[i]);
+    }
+    return values;
+  }
+  
+  /**
+   * @return the stored (unscaled by A) weight of index.
+   */
+  double storedValue(int index) {
+    if (null != this.myWeights) {
+      return index < this.myWeights.length ? this.myWeights[index] : 0.0;
+    } else if (null != this.myMap) {
+      return this.myMap.get(index);
+    } else if (null != this.myQuantized) {
+      return this.myQuantized.get(index);
     }
+    return index < this.d ? this.myVector.getQuick(index) : 0.0;
   }
   
+  /**
+   * Sets the stored (unscaled by A) weight of index, Snorm is not updated.
+   */
+  void putStored(int index, double value) {
+    checkWritable();
+    if (null != this.snapshots) {
+      preserve(index);
+    }
+    if (null != this.myWeights) {
+      this.myWeights[index] = value;
+    } else if (null != this.myMap) {
+      this.myMap.put(index, value);
+      this.myFrozenIndices = null;
+    } else {
+      this.myVector.setQuick(index, value);
+    }
+  }
+  
+  /**
+   * @return true if scale() folds A into the stored weights once A becomes a,
+   *         i.e. |a| is outside [MIN_A, MAX_A]
+   */
+  static boolean needsFold(double a) {
+    double absA = Math.abs(a);
+    return absA < MIN_A || absA > MAX_A;
+  }
+  
+  /**
+   * Folds A into the stored weights, it costs O(nnz(w)). The training loop does
+   * not need to call it, scale() folds A only when it is about to underflow or
+   * overflow.
+   */
   public void setAtoOne() {
-    this.myVector.times(this.myA);
+    checkWritable();
+    detachSnapshots();
+    if (null != this.myWeights) {
+      for (int i = 0; i < this.myWeights.length; i++) {
+        this.myWeights[i] *= this.myA;
+      }
+    } else if (null != this.myMap) {
+      this.myMap.scale(this.myA);
+      this.myFrozenIndices = null;
+    } else {
+      Iterator<Vector.Element> iter = this.myVector.iterateNonZero();
+      while (iter.hasNext()) {
+        Vector.Element elt = iter.next();
+        elt.set(elt.get() * this.myA);
+      }
+    }
     this.myA = 1.0;
   }
   
+  /**
+   * @return how many times A has been folded into the stored weights by scale()
+   */
+  public long getFoldCount() {
+    return this.foldCount;
+  }
+  
   public void setVector(double[] value) {
+    checkWritable();
+    detachSnapshots();
     for (int i = 0; i < value.length; i++) {
       if (value[i] > 0) {
-        this.myVector.setQuick(i, value[i]);
+        if (null != this.myWeights) {
+          this.myWeights[i] = value[i];
+        } else if (null != this.myMap) {
+          this.myMap.put(i, value[i]);
+          this.myFrozenIndices = null;
+        } else {
+          this.myVector.setQuick(i, value[i]);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Converts the weights in place to a read-only store for prediction, A is
+   * folded into the stored values. PRECISION_FLOAT keeps 4 bytes per weight,
+   * PRECISION_INT8 keeps 1 byte per weight, rounded to the nearest multiple of
+   * one scale per model (max |w| / 127), which becomes A. Only the non-zero
+   * weights are kept when that is smaller than a dense array. times(), get()
+   * and the dump methods still work, any update throws
+   * UnsupportedOperationException.
+   * 
+   * @param targetPrecision
+   *          PRECISION_FLOAT or PRECISION_INT8, PRECISION_DOUBLE does nothing.
+   */
+  public void quantize(int targetPrecision) {
+    if (PRECISION_DOUBLE == targetPrecision || targetPrecision == this.precision) {
+      return;
+    }
+    detachSnapshots();
+    int[] indices = storedIndices();
+    double[] values = storedValues(indices);
+    double factor = this.myA;
+    double a = 1.0;
+    if (PRECISION_INT8 == targetPrecision) {
+      double max = 0.0;
+      for (int i = 0; i < values.length; i++) {
+        max = Math.max(max, Math.abs(values[i] * this.myA));
       }
+      if (max > 0.0) {
+        a = max / 127;
+        factor = this.myA / a;
+      }
+    } else if (PRECISION_FLOAT != targetPrecision) {
+      throw new IllegalArgumentException("Unknown precision: " + targetPrecision);
+    }
+    this.myQuantized = QuantizedWeights.create(this.d, indices, values, factor,
+      PRECISION_INT8 == targetPrecision);
+    this.precision = targetPrecision;
+    this.myA = a;
+    this.myVector = null;
+    this.myWeights = null;
+    this.myMap = null;
+    this.myFrozenIndices = null;
+    this.myFrozenValues = null;
+  }
+  
+  /**
+   * @return PRECISION_DOUBLE, PRECISION_FLOAT or PRECISION_INT8
+   */
+  public int getPrecision() {
+    return this.precision;
+  }
+  
+  /**
+   * @return approximate bytes held by the weight store
+   */
+  public long getMemorySize() {
+    if (null != this.myQuantized) {
+      return this.myQuantized.memorySize();
+    } else if (null != this.myWeights) {
+      return 8L * this.myWeights.length;
+    }
+    // index and value of each non-zero weight
+    return 12L * storedIndices().length;
+  }
+  
+  private void checkWritable() {
+    if (null != this.myQuantized) {
+      throw new UnsupportedOperationException("Quantized weights are read-only");
     }
   }
   
+  /**
+   * Takes a copy-on-write snapshot of the current weights (see WeightSnapshot)
+   * in O(1). Until the snapshot is released, each update saves the old value of
+   * the weights it writes first.
+   * 
+   * @return the snapshot, release() it when it is no longer needed
+   */
+  public WeightSnapshot snapshot() {
+    WeightSnapshot snapshot = new WeightSnapshot(this);
+    if (null == this.snapshots) {
+      this.snapshots = new ArrayList<WeightSnapshot>(2);
+    }
+    this.snapshots.add(snapshot);
+    return snapshot;
+  }
+  
+  void releaseSnapshot(WeightSnapshot snapshot) {
+    if (null != this.snapshots && this.snapshots.remove(snapshot)
+        && this.snapshots.isEmpty()) {
+      this.snapshots = null;
+    }
+  }
+  
+  /**
+   * Saves the stored weight of index into the live snapshots.
+   */
+  private void preserve(int index) {
+    double stored = storedValue(index);
+    for (int i = 0; i < this.snapshots.size(); i++) {
+      this.snapshots.get(i).preserve(index, stored);
+    }
+  }
+  
+  /**
+   * Copies the live snapshots before all stored weights are rewritten.
+   */
+  private void detachSnapshots() {
+    if (null == this.snapshots) {
+      return;
+    }
+    List<WeightSnapshot> live = this.snapshots;
+    this.snapshots = null;
+    for (WeightSnapshot snapshot : live) {
+      snapshot.detach();
+    }
+  }
+  
+  /**
+   * @return DENSE, HASHED or SPARSE (also for the quantized store)
+   */
+  int storeType() {
+    if (null != this.myWeights) {
+      return DENSE;
+    } else if (null != this.myMap) {
+      return HASHED;
+    }
+    return SPARSE;
+  }
+  
+  /**
+   * @return true if the weights are stored in a dense array
+   */
+  public boolean isDense() {
+    return null != this.myWeights;
+  }
+  
+  /**
+   * Freezes the hashed store into sorted index/value arrays, which are used to
+   * dump the model. It does nothing for the other stores. Any later update
+   * drops the frozen arrays.
+   */
+  public void freeze() {
+    if (null == this.myMap || null != this.myFrozenIndices) {
+      return;
+    }
+    int[] indices = this.myMap.sortedKeys();
+    double[] values = new double[indices.length];
+    for (int i = 0; i < indices.length; i++) {
+      values[i] = this.myMap.get(indices[i]);
+    }
+    this.myFrozenValues = values;
+    this.myFrozenIndices = indices;
+  }
+  
   public void setAtoX(double x) {
     this.myA = x;
   }
@@ -232,12 +586,37 @@ public class WeightVector {
   }
   
   public Vector getVector() {
+    if (null != this.myWeights) {
+      return new DenseVector(this.myWeights, true);
+    } else if (null != this.myQuantized) {
+      int[] indices = storedIndices();
+      Vector v = new SequentialAccessSparseVector(this.d, indices.length);
+      for (int i = 0; i < indices.length; i++) {
+        v.setQuick(indices[i], this.myQuantized.get(indices[i]));
+      }
+      return v;
+    } else if (null != this.myMap) {
+      freeze();
+      Vector v = new SequentialAccessSparseVector(this.d,
+          this.myFrozenIndices.length);
+      for (int i = 0; i < this.myFrozenIndices.length; i++) {
+        v.setQuick(this.myFrozenIndices[i], this.myFrozenValues[i]);
+      }
+      return v;
+    }
     return this.myVector;
   }
   
   // get weight
   public double get(int index) {
-    if (index < this.d) {
+    if (null != this.myWeights) {
+      return index < this.myWeights.length ? this.myWeights[index] * this.myA
+          : 0.0;
+    } else if (null != this.myMap) {
+      return this.myMap.get(index) * this.myA;
+    } else if (null != this.myQuantized) {
+      return this.myQuantized.get(index) * this.myA;
+    } else if (index < this.d) {
       return this.myVector.get(index) * this.myA;
     } else {
       return 0.0;
@@ -245,41 +624,283 @@ public class WeightVector {
   }
   
   public void scale(double s) {
+    checkWritable();
     this.mySnorm *= (s * s);
     if (0.0 != s) {
       this.myA *= s;
+      if (needsFold(this.myA)) {
+        setAtoOne();
+        this.foldCount++;
+      }
     } else {
+      detachSnapshots();
       this.myA = 1.0;
-      this.myVector.times(0.0);
+      if (null != this.myWeights) {
+        Arrays.fill(this.myWeights, 0.0);
+      } else if (null != this.myMap) {
+        this.myMap.clear();
+        this.myFrozenIndices = null;
+      } else {
+        this.myVector = new SequentialAccessSparseVector(this.d, 10);
+      }
     }
   }
   
   public void add(Vector x, double s) {
+    checkWritable();
+    if (null != this.snapshots) {
+      Iterator<Vector.Element> saved = x.iterateNonZero();
+      while (saved.hasNext()) {
+        preserve(saved.next().index());
+      }
+    }
     double pred = 0.0;
     double xNorm = 0.0;
     Iterator<Vector.Element> iter = x.iterateNonZero();
-    while (iter.hasNext()) {
-      Vector.Element elt = iter.next();
-      double value = elt.get() * s;
-      xNorm += value * value;
-      pred += 2.0 * this.myVector.getQuick(elt.index()) * value;
-      this.myVector.setQuick(elt.index(), this.myVector.getQuick(elt.index())
-                                          + value / this.myA);
+    if (null != this.myWeights) {
+      double[] weights = this.myWeights;
+      while (iter.hasNext()) {
+        Vector.Element elt = iter.next();
+        int index = elt.index();
+        if (index >= weights.length) {
+          continue;
+        }
+        double value = elt.get() * s;
+        xNorm += value * value;
+        pred += 2.0 * weights[index] * value;
+        weights[index] += value / this.myA;
+      }
+    } else if (null != this.myMap) {
+      OpenAddressingWeightMap map = this.myMap;
+      this.myFrozenIndices = null;
+      while (iter.hasNext()) {
+        Vector.Element elt = iter.next();
+        double value = elt.get() * s;
+        xNorm += value * value;
+        pred += 2.0 * map.add(elt.index(), value / this.myA) * value;
+      }
+    } else {
+      while (iter.hasNext()) {
+        Vector.Element elt = iter.next();
+        double value = elt.get() * s;
+        xNorm += value * value;
+        pred += 2.0 * this.myVector.getQuick(elt.index()) * value;
+        this.myVector.setQuick(elt.index(), this.myVector.getQuick(elt.index())
+                                            + value / this.myA);
+      }
     }
     this.mySnorm += xNorm + this.myA * pred;
   }
   
+  /**
+   * this = this + s * x, for x given as parallel index and value arrays (see
+   * PackedSamples). Same as add(Vector, double), without iterators.
+   * 
+   * @param indices
+   *          feature indices of x
+   * @param values
+   *          feature values of x
+   * @param s
+   *          scale of x
+   */
+  public void add(int[] indices, double[] values, double s) {
+    checkWritable();
+    if (null != this.snapshots) {
+      for (int i = 0; i < indices.length; i++) {
+        preserve(indices[i]);
+      }
+    }
+    double pred = 0.0;
+    double xNorm = 0.0;
+    double a = this.myA;
+    int n = indices.length;
+    if (null != this.myWeights) {
+      double[] weights = this.myWeights;
+      for (int i = 0; i < n; i++) {
+        int index = indices[i];
+        if (index >= weights.length) {
+          continue;
+        }
+        double value = values[i] * s;
+        xNorm += value * value;
+        pred += 2.0 * weights[index] * value;
+        weights[index] += value / a;
+      }
+    } else if (null != this.myMap) {
+      OpenAddressingWeightMap map = this.myMap;
+      this.myFrozenIndices = null;
+      for (int i = 0; i < n; i++) {
+        double value = values[i] * s;
+        xNorm += value * value;
+        pred += 2.0 * map.add(indices[i], value / a) * value;
+      }
+    } else {
+      for (int i = 0; i < n; i++) {
+        int index = indices[i];
+        double value = values[i] * s;
+        xNorm += value * value;
+        double stored = this.myVector.getQuick(index);
+        pred += 2.0 * stored * value;
+        this.myVector.setQuick(index, stored + value / a);
+      }
+    }
+    this.mySnorm += xNorm + a * pred;
+  }
+  
+  /**
+   * this = this + s * x. Only the non-zero weights are visited (all weights of
+   * a dense store): the sorted supports of both vectors are merged, the A
+   * scales of both are applied and Snorm is recomputed in the same pass. The
+   * result has A = 1.
+   */
   public void add(WeightVector x, double s) {
-    this.mySnorm = 0.0;
-    Iterator<Vector.Element> iter = this.myVector.iterateAll();
-    while (iter.hasNext()) {
-      Vector.Element elt = iter.next();
-      this.myVector.set(elt.index(), elt.get() * this.myA + x.get(elt.index())
-                                     * s);
-      this.mySnorm += this.myVector.get(elt.index())
-                      * this.myVector.get(elt.index());
+    checkWritable();
+    if (x == this) {
+      scale(1.0 + s);
+      return;
+    }
+    detachSnapshots();
+    int[] xIndices = x.storedIndices();
+    double[] xValues = x.storedValues(xIndices);
+    double xs = x.myA * s;
+    double a = this.myA;
+    double snorm = 0.0;
+    if (null != this.myWeights) {
+      double[] weights = this.myWeights;
+      int k = 0;
+      for (int i = 0; i < weights.length; i++) {
+        double value = weights[i] * a;
+        if (k < xIndices.length && xIndices[k] == i) {
+          value += xValues[k++] * xs;
+        }
+        weights[i] = value;
+        snorm += value * value;
+      }
+    } else {
+      int[] indices = storedIndices();
+      double[] values = storedValues(indices);
+      if (null != this.myMap) {
+        this.myFrozenIndices = null;
+      } else {
+        this.myVector = new SequentialAccessSparseVector(this.d, indices.length
+                                                                 + xIndices.length);
+      }
+      int i = 0;
+      int k = 0;
+      while (i < indices.length || k < xIndices.length) {
+        int index;
+        double value;
+        if (k >= xIndices.length
+            || (i < indices.length && indices[i] < xIndices[k])) {
+          index = indices[i];
+          value = values[i++] * a;
+        } else if (i >= indices.length || xIndices[k] < indices[i]) {
+          index = xIndices[k];
+          value = xValues[k++] * xs;
+        } else {
+          index = indices[i];
+          value = values[i++] * a + xValues[k++] * xs;
+        }
+        // the hashed store overwrites every old entry, the new sparse vector
+        // is filled in index order
+        if (null != this.myMap) {
+          putStored(index, value);
+        } else if (index >= this.d) {
+          continue;
+        } else if (0.0 != value) {
+          putStored(index, value);
+        }
+        snorm += value * value;
+      }
     }
     this.myA = 1.0;
+    this.mySnorm = snorm;
+  }
+  
+  /**
+   * Averages many models (e.g. trained on different shards) in one sweep: the
+   * sorted supports of all models are merged through a heap, so it costs
+   * O(nnz log(n)) for n models with nnz non-zero weights in total.
+   * 
+   * @param models
+   *          models to average, the first one gives the class information
+   * @return the average with A = 1, dense if all models are dense, else sparse
+   */
+  public static WeightVector average(List<WeightVector> models) {
+    int n = models.size();
+    int[][] indices = new int[n][];
+    double[][] values = new double[n][];
+    int[] cursor = new int[n];
+    int d = 0;
+    boolean dense = true;
+    for (int m = 0; m < n; m++) {
+      WeightVector w = models.get(m);
+      indices[m] = w.storedIndices();
+      values[m] = w.storedValues(indices[m]);
+      d = Math.max(d, w.d);
+      dense &= w.isDense();
+    }
+    WeightVector avg = new WeightVector(d, dense ? DENSE : SPARSE);
+    if (n > 0) {
+      avg.setClassInfo(models.get(0).classNum, models.get(0).labels);
+    }
+    
+    // min-heap of models by their current index
+    int[] heap = new int[n];
+    int heapSize = 0;
+    for (int m = 0; m < n; m++) {
+      if (indices[m].length > 0) {
+        heap[heapSize++] = m;
+      }
+    }
+    for (int i = heapSize / 2 - 1; i >= 0; i--) {
+      siftDown(heap, heapSize, i, indices, cursor);
+    }
+    
+    double snorm = 0.0;
+    while (heapSize > 0) {
+      int index = indices[heap[0]][cursor[heap[0]]];
+      double value = 0.0;
+      while (heapSize > 0 && indices[heap[0]][cursor[heap[0]]] == index) {
+        int m = heap[0];
+        value += values[m][cursor[m]] * models.get(m).myA;
+        if (++cursor[m] == indices[m].length) {
+          heap[0] = heap[--heapSize];
+        }
+        if (heapSize > 0) {
+          siftDown(heap, heapSize, 0, indices, cursor);
+        }
+      }
+      value /= n;
+      if (0.0 != value) {
+        avg.putStored(index, value);
+        snorm += value * value;
+      }
+    }
+    avg.mySnorm = snorm;
+    return avg;
+  }
+  
+  private static void siftDown(int[] heap,
+                               int heapSize,
+                               int i,
+                               int[][] indices,
+                               int[] cursor) {
+    int m = heap[i];
+    int key = indices[m][cursor[m]];
+    while (2 * i + 1 < heapSize) {
+      int child = 2 * i + 1;
+      if (child + 1 < heapSize
+          && indices[heap[child + 1]][cursor[heap[child + 1]]] < indices[heap[child]][cursor[heap[child]]]) {
+        child++;
+      }
+      if (indices[heap[child]][cursor[heap[child]]] >= key) {
+        break;
+      }
+      heap[i] = heap[child];
+      i = child;
+    }
+    heap[i] = m;
   }
   
   // careful u * v [* this.myA]
@@ -298,13 +919,7 @@ public class WeightVector {
   // }
   // careful u * v [* this.myA]
   public double times(Vector u, WeightVector v) {
-    double result = 0.0;
-    Iterator<Vector.Element> elt = u.iterateNonZero();
-    while (elt.hasNext()) {
-      Vector.Element it = elt.next();
-      result += it.get() * v.myVector.getQuick(it.index()) * this.myA;
-    }
-    return result;
+    return v.rawTimes(u) * this.myA;
   }
   
   public double times(WeightVector v, Vector u) {
@@ -312,15 +927,111 @@ public class WeightVector {
   }
   
   public double times(Vector u) {
+    return rawTimes(u) * this.myA;
+  }
+  
+  /**
+   * Inner product with x given as parallel index and value arrays (see
+   * PackedSamples), without iterators.
+   * 
+   * @param indices
+   *          feature indices of x
+   * @param values
+   *          feature values of x
+   * @return w * x
+   */
+  public double times(int[] indices, double[] values) {
+    double result = 0.0;
+    int n = indices.length;
+    if (null != this.myWeights) {
+      double[] weights = this.myWeights;
+      for (int i = 0; i < n; i++) {
+        int index = indices[i];
+        if (index < weights.length) {
+          result += values[i] * weights[index];
+        }
+      }
+    } else if (null != this.myMap) {
+      OpenAddressingWeightMap map = this.myMap;
+      for (int i = 0; i < n; i++) {
+        result += values[i] * map.get(indices[i]);
+      }
+    } else if (null != this.myQuantized) {
+      QuantizedWeights quantized = this.myQuantized;
+      for (int i = 0; i < n; i++) {
+        result += values[i] * quantized.get(indices[i]);
+      }
+    } else {
+      for (int i = 0; i < n; i++) {
+        result += values[i] * this.myVector.getQuick(indices[i]);
+      }
+    }
+    return result * this.myA;
+  }
+  
+  /**
+   * Inner product of u and the stored (unscaled) weights.
+   */
+  private double rawTimes(Vector u) {
+    if (null != this.myQuantized) {
+      return this.myQuantized.times(u);
+    }
     double result = 0.0;
     Iterator<Vector.Element> elt = u.iterateNonZero();
-    while (elt.hasNext()) {
-      Vector.Element it = elt.next();
-      result += it.get() * this.myVector.getQuick(it.index()) * this.myA;
+    if (null != this.myWeights) {
+      double[] weights = this.myWeights;
+      while (elt.hasNext()) {
+        Vector.Element it = elt.next();
+        if (it.index() < weights.length) {
+          result += it.get() * weights[it.index()];
+        }
+      }
+    } else if (null != this.myMap) {
+      OpenAddressingWeightMap map = this.myMap;
+      while (elt.hasNext()) {
+        Vector.Element it = elt.next();
+        result += it.get() * map.get(it.index());
+      }
+    } else {
+      while (elt.hasNext()) {
+        Vector.Element it = elt.next();
+        result += it.get() * this.myVector.getQuick(it.index());
+      }
     }
     return result;
   }
   
+  /**
+   * Write the non-zero stored weights as "index:value " pairs.
+   */
+  private void writeNonZero(ModelTextWriter out, double factor) throws IOException {
+    if (null != this.myQuantized) {
+      int[] indices = storedIndices();
+      for (int i = 0; i < indices.length; i++) {
+        out.write(indices[i]).write(':').write(
+          this.myQuantized.get(indices[i]) * factor).write(' ');
+      }
+    } else if (null != this.myWeights) {
+      for (int i = 0; i < this.myWeights.length; i++) {
+        if (0.0 != this.myWeights[i]) {
+          out.write(i).write(':').write(this.myWeights[i] * factor).write(' ');
+        }
+      }
+    } else if (null != this.myMap) {
+      freeze();
+      for (int i = 0; i < this.myFrozenIndices.length; i++) {
+        out.write(this.myFrozenIndices[i]).write(':').write(
+          this.myFrozenValues[i] * factor).write(' ');
+      }
+    } else {
+      Iterator<Vector.Element> iter = this.myVector.iterateNonZero();
+      while (iter.hasNext()) {
+        Vector.Element elt = iter.next();
+        out.write(elt.index()).write(':').write(elt.get() * factor).write(' ');
+      }
+    }
+  }
+  
   /**
    * Dump the weight vector to string for MapReduce framework.
    * 
@@ -333,40 +1044,73 @@ public class WeightVector {
    * @return The string of model
    */
   public String dumpToString(int classifierType, int classNumber, String classLabel) {
-    
-    StringBuffer temp = new StringBuffer();
-    temp.append(SVMParameters.CLASSIFICATION_TYPE + "#" + classifierType
-                + "\r\n");
-    temp.append(SVMParameters.CLASS_NUMBER + "#" + classNumber + "\r\n");
-    temp.append(SVMParameters.LABELS + "#" + 0 + "\r\n");
-    temp
-        .append(SVMParameters.DIMENSION + "#" + String.valueOf(this.d) + "\r\n");
-    temp.append(SVMParameters.A + classLabel + "#" + String.valueOf(this.myA)
-                + "\r\n");
-    temp.append(SVMParameters.SNORM + "#" + String.valueOf(this.mySnorm)
-                + "\r\n");
-    temp.append(SVMParameters.W + classLabel + "#");
-    Iterator<Vector.Element> iter = this.myVector.iterateNonZero();
-    while (iter.hasNext()) {
-      Vector.Element elt = iter.next();
-      temp.append(elt.index() + ":" + elt.get() + " ");
+    StringWriter temp = new StringWriter();
+    try {
+      ModelTextWriter out = new ModelTextWriter(temp);
+      dump(out, classifierType, classNumber, classLabel);
+      out.flush();
+    } catch (IOException e) {
+      // StringWriter does not throw
+      log.error("Dump Model Error:" + e.getMessage());
     }
-    temp.append("\r\n");
     return temp.toString();
   }
   
+  /**
+   * Stream the weight vector in the format of dumpToString, e.g. straight to
+   * the output of a reducer.
+   * 
+   * @param out
+   *          output stream
+   * @param classifierType
+   *          The type of Classifier
+   * @param classNumber
+   *          The number of categories.
+   * @param classLabel
+   *          The unique Label of such data set.
+   * @throws IOException
+   */
+  public void dumpTo(OutputStream out,
+                     int classifierType,
+                     int classNumber,
+                     String classLabel) throws IOException {
+    ModelTextWriter writer = new ModelTextWriter(out);
+    dump(writer, classifierType, classNumber, classLabel);
+    writer.flush();
+  }
+  
+  private void dump(ModelTextWriter out,
+                    int classifierType,
+                    int classNumber,
+                    String classLabel) throws IOException {
+    out.write(SVMParameters.CLASSIFICATION_TYPE).write('#').write(classifierType)
+        .newLine();
+    out.write(SVMParameters.CLASS_NUMBER).write('#').write(classNumber).newLine();
+    out.write(SVMParameters.LABELS).write('#').write(0).newLine();
+    out.write(SVMParameters.DIMENSION).write('#').write(this.d).newLine();
+    out.write(SVMParameters.A).write(classLabel).write('#').write(this.myA)
+        .newLine();
+    out.write(SVMParameters.SNORM).write('#').write(this.mySnorm).newLine();
+    out.write(SVMParameters.W).write(classLabel).write('#');
+    writeNonZero(out, 1.0);
+    out.newLine();
+  }
+  
   /**
    * Output the weight vector
    */
   public void printNonZero() {
-    Iterator<Vector.Element> elt = this.myVector.iterateNonZero();
-    StringBuffer out = new StringBuffer();
-    while (elt.hasNext()) {
-      Vector.Element it = elt.next();
-      out.append(it.index() + ":" + it.get() * this.myA + " ");
+    StringWriter temp = new StringWriter();
+    try {
+      ModelTextWriter out = new ModelTextWriter(temp);
+      writeNonZero(out, this.myA);
+      out.write('\n');
+      out.flush();
+    } catch (IOException e) {
+      // StringWriter does not throw
+      log.error("Dump Model Error:" + e.getMessage());
     }
-    out.append("\n");
-    log.info(out.toString());
+    log.info(temp.toString());
   }
   
   /**
@@ -379,24 +1123,8 @@ public class WeightVector {
     // finally, print the model to the model_file
     if (fileName != null) {
       try {
-        BufferedWriter modelFile = new BufferedWriter(new FileWriter(fileName));
-        modelFile.write(SVMParameters.CLASSIFICATION_TYPE + "#" + 0 + "\r\n");
-        modelFile.write(SVMParameters.CLASS_NUMBER + "#" + 0 + "\r\n");
-        modelFile.write(SVMParameters.LABELS + "#" + 0 + "\r\n");
-        modelFile.write(SVMParameters.DIMENSION + "#" + String.valueOf(this.d)
-                        + "\r\n");
-        modelFile.write(SVMParameters.A + "#" + String.valueOf(this.myA)
-                        + "\r\n");
-        modelFile.write(SVMParameters.SNORM + "#"
-                        + String.valueOf(this.mySnorm) + "\r\n");
-        StringBuffer temp = new StringBuffer();
-        Iterator<Vector.Element> iter = this.myVector.iterateNonZero();
-        while (iter.hasNext()) {
-          Vector.Element elt = iter.next();
-          temp.append(elt.index() + ":" + elt.get() + " ");
-        }
-        modelFile.write(SVMParameters.W + "#" + temp.toString() + "\r\n");
-        modelFile.flush();
+        ModelTextWriter modelFile = new ModelTextWriter(new FileWriter(fileName));
+        writeHead(modelFile, 0, null);
         modelFile.close();
       } catch (Exception e) {
         log.error("Write Model File Error:" + e.getMessage());
@@ -420,29 +1148,8 @@ public class WeightVector {
     // finally, print the model to the model_file
     if (fileName != null) {
       try {
-        BufferedWriter modelFile = new BufferedWriter(new FileWriter(fileName));
-        modelFile.write(SVMParameters.CLASSIFICATION_TYPE + "#" + 0 + "\r\n");
-        modelFile.write(SVMParameters.CLASS_NUMBER + "#" + classNumber + "\r\n");
-        String labelstr = SVMParameters.LABELS + "#";
-        for (Double l : uniqueLables) {
-          labelstr += " " + l.intValue();
-        }
-        labelstr += "\r\n";
-        modelFile.write(labelstr);
-        modelFile.write(SVMParameters.DIMENSION + "#" + String.valueOf(this.d)
-                        + "\r\n");
-        modelFile.write(SVMParameters.A + "#" + String.valueOf(this.myA)
-                        + "\r\n");
-        modelFile.write(SVMParameters.SNORM + "#"
-                        + String.valueOf(this.mySnorm) + "\r\n");
-        StringBuffer temp = new StringBuffer();
-        Iterator<Vector.Element> iter = this.myVector.iterateNonZero();
-        while (iter.hasNext()) {
-          Vector.Element elt = iter.next();
-          temp.append(elt.index() + ":" + elt.get() + " ");
-        }
-        modelFile.write(SVMParameters.W + "#" + temp.toString() + "\r\n");
-        modelFile.flush();
+        ModelTextWriter modelFile = new ModelTextWriter(new FileWriter(fileName));
+        writeHead(modelFile, classNumber, uniqueLables);
         modelFile.close();
       } catch (IOException e) {
         log.error("Write Model File Error:" + e.getMessage());
@@ -450,6 +1157,102 @@ public class WeightVector {
     }
   }
   
+  /**
+   * Write a single binary classification (or regression) model, the labels
+   * line is "Labels#0" if uniqueLables is null.
+   */
+  private void writeHead(ModelTextWriter out,
+                         int classNumber,
+                         Set<Double> uniqueLables) throws IOException {
+    out.write(SVMParameters.CLASSIFICATION_TYPE).write('#').write(0).newLine();
+    out.write(SVMParameters.CLASS_NUMBER).write('#').write(classNumber).newLine();
+    out.write(SVMParameters.LABELS).write('#');
+    if (null == uniqueLables) {
+      out.write(0);
+    } else {
+      for (Double l : uniqueLables) {
+        out.write(' ').write(l.intValue());
+      }
+    }
+    out.newLine();
+    out.write(SVMParameters.DIMENSION).write('#').write(this.d).newLine();
+    out.write(SVMParameters.A).write('#').write(this.myA).newLine();
+    out.write(SVMParameters.SNORM).write('#').write(this.mySnorm).newLine();
+    out.write(SVMParameters.W).write('#');
+    writeNonZero(out, 1.0);
+    out.newLine();
+  }
+  
+  /**
+   * Dump the weight vector to a binary model file, see {@link BinaryModelFile}.
+   * 
+   * @param fileName
+   * @param classNumber
+   *          the number of categories
+   * @param uniqueLables
+   *          a set of unique labels of such data set, can be null.
+   */
+  public void writeBinaryFile(String fileName,
+                              int classNumber,
+                              Set<Double> uniqueLables) {
+    if (fileName != null) {
+      List<String> keys = new ArrayList<String>();
+      keys.add(SVMParameters.W);
+      List<WeightVector> weightList = new ArrayList<WeightVector>();
+      weightList.add(this);
+      try {
+        BinaryModelFile.write(fileName, 0, classNumber, uniqueLables, keys,
+          weightList);
+      } catch (IOException e) {
+        log.error("Write Model File Error:" + e.getMessage());
+      }
+    }
+  }
+  
+  /**
+   * Dump batch models to one binary model file, see {@link BinaryModelFile}.
+   * The keys are as same as the text format, e.g. W0_1 or W0.
+   * 
+   * @param fileName
+   *          Name of file
+   * @param weightList
+   *          List of WeightVectors
+   * @param para
+   *          Parameters
+   * @param uniqueLables
+   *          A set of unique labels in this data set
+   */
+  public static void batchDumpBinaryModels(String fileName,
+                                           List<WeightVector> weightList,
+                                           SVMParameters para,
+                                           Set<Double> uniqueLables) {
+    if (fileName != null) {
+      Integer[] labelList = new Integer[uniqueLables.size()];
+      int idx = 0;
+      for (Double l : uniqueLables) {
+        labelList[idx++] = l.intValue();
+      }
+      List<String> keys = new ArrayList<String>();
+      if (2 == para.getClassificationType()) { // one-vs.-one output
+        for (int i = 0; i < para.getClassNum(); i++) {
+          for (int j = i + 1; j < para.getClassNum(); j++) {
+            keys.add(SVMParameters.W + labelList[i] + "_" + labelList[j]);
+          }
+        }
+      } else if (3 == para.getClassificationType()) { // one-vs.-other output
+        for (int i = 0; i < weightList.size(); i++) {
+          keys.add(SVMParameters.W + labelList[i]);
+        }
+      }
+      try {
+        BinaryModelFile.write(fileName, para.getClassificationType(), para
+            .getClassNum(), uniqueLables, keys, weightList);
+      } catch (IOException e) {
+        log.error("Write Batch Models to File Error:" + e.getMessage());
+      }
+    }
+  }
+  
   /**
    * Dump batch models to one file. Multi-classification use such file to dump
    * models.
@@ -467,63 +1270,54 @@ public class WeightVector {
                                      List<WeightVector> weightList,
                                      SVMParameters para,
                                      Set<Double> uniqueLables) {
+    if (para.isBinaryModel()) {
+      batchDumpBinaryModels(fileName, weightList, para, uniqueLables);
+      return;
+    }
     if (fileName != null) {
       try {
-        BufferedWriter modelFile = new BufferedWriter(new FileWriter(fileName));
-        StringBuffer lines = new StringBuffer();
-        lines.append(SVMParameters.CLASSIFICATION_TYPE + "#"
-                     + para.getClassificationType() + "\r\n");
-        lines.append(SVMParameters.CLASS_NUMBER + "#" + para.getClassNum() + "\r\n");
-        String labels = SVMParameters.LABELS + "#";
+        ModelTextWriter modelFile = new ModelTextWriter(new FileWriter(fileName));
+        modelFile.write(SVMParameters.CLASSIFICATION_TYPE).write('#').write(
+          para.getClassificationType()).newLine();
+        modelFile.write(SVMParameters.CLASS_NUMBER).write('#').write(
+          para.getClassNum()).newLine();
+        modelFile.write(SVMParameters.LABELS).write('#');
         Integer[] labelList = new Integer[para.getClassNum()];
         int idx = 0;
         for (Double l : uniqueLables) {
-          labels += " " + l.intValue();
+          modelFile.write(' ').write(l.intValue());
           labelList[idx++] = l.intValue();
         }
-        labels += "\r\n";
-        lines.append(labels);
-        lines.append(SVMParameters.DIMENSION + "#" + weightList.get(0).d
-                     + "\r\n");
+        modelFile.newLine();
+        modelFile.write(SVMParameters.DIMENSION).write('#').write(
+          weightList.get(0).d).newLine();
         
-        lines.append(SVMParameters.SNORM + "#" + weightList.get(0).mySnorm
-                     + "\r\n");
+        modelFile.write(SVMParameters.SNORM).write('#').write(
+          weightList.get(0).mySnorm).newLine();
         
         int pos = 0;
         if (2 == para.getClassificationType()) { // one-vs.-one output
           for (int i = 0; i < para.getClassNum(); i++) {
             for (int j = i + 1; j < para.getClassNum(); j++) {
-              lines.append(SVMParameters.A + labelList[i] + "_" + labelList[j]
-                           + "#" + weightList.get(i).myA + "\r\n");
-              StringBuffer temp = new StringBuffer();
-              Iterator<Vector.Element> iter = weightList.get(pos).myVector
-                  .iterateNonZero();
-              while (iter.hasNext()) {
-                Vector.Element elt = iter.next();
-                temp.append(elt.index() + ":" + elt.get() + " ");
-              }
-              lines.append(SVMParameters.W + labelList[i] + "_" + labelList[j]
-                           + "#" + temp.toString() + "\r\n");
+              modelFile.write(SVMParameters.A).write(labelList[i]).write('_')
+                  .write(labelList[j]).write('#').write(weightList.get(pos).myA)
+                  .newLine();
+              modelFile.write(SVMParameters.W).write(labelList[i]).write('_')
+                  .write(labelList[j]).write('#');
+              weightList.get(pos).writeNonZero(modelFile, 1.0);
+              modelFile.newLine();
               pos++;
             }
           }
         } else if (3 == para.getClassificationType()) { // one-vs.-other output
           for (int i = 0; i < weightList.size(); i++) {
-            lines.append(SVMParameters.A + labelList[i] + "#"
-                         + weightList.get(i).myA + "\r\n");
-            StringBuffer temp = new StringBuffer();
-            Iterator<Vector.Element> iter = weightList.get(i).myVector
-                .iterateNonZero();
-            while (iter.hasNext()) {
-              Vector.Element elt = iter.next();
-              temp.append(elt.index() + ":" + elt.get() + " ");
-            }
-            lines.append(SVMParameters.W + labelList[i] + "#" + temp.toString()
-                         + "\r\n");
+            modelFile.write(SVMParameters.A).write(labelList[i]).write('#').write(
+              weightList.get(i).myA).newLine();
+            modelFile.write(SVMParameters.W).write(labelList[i]).write('#');
+            weightList.get(i).writeNonZero(modelFile, 1.0);
+            modelFile.newLine();
           }
         }
-        modelFile.write(lines.toString());
-        modelFile.flush();
         modelFile.close();
       } catch (IOException e) {
         System.err
@@ -533,7 +1327,8 @@ public class WeightVector {
   }
   
   /**
-   * Constructing WeightVector list from one file.
+   * Constructing WeightVector list from one file, either text or binary model
+   * file.
    * 
    * @param fileName
    *          Model file
@@ -543,43 +1338,29 @@ public class WeightVector {
    */
   public static void getBatchModels(String fileName,
                                     Map<String,WeightVector> weightList) throws IOException {
-    BufferedReader modelFile = new BufferedReader(new FileReader(fileName));
-    Map<String,String> keyValue = new OpenHashMap<String,String>();
-    String line;
-    String[] vectorString;
-    int d;
-    double mySnorm;
-    Set<Double> labels = null;
-    int classNum;
-    List<String> weightKeyList = new ArrayList<String>();
-    
-    // read all line from file
-    while ((line = modelFile.readLine()) != null) {
-      String[] words = line.trim().split("#");
-      if (words.length > 1) {
-        keyValue.put(words[0], words[1]);
-        if (words[0].contains("W")) {
-          weightKeyList.add(words[0]);
-        }
-      }
+    if (BinaryModelFile.isBinary(fileName)) {
+      BinaryModelFile.read(BinaryModelFile.map(fileName), weightList);
+      return;
     }
+    Reader modelFile = new FileReader(fileName);
+    ModelTextParser parser = new ModelTextParser();
+    try {
+      parser.parse(modelFile);
+    } finally {
+      modelFile.close();
+    }
+    putModels(parser, weightList);
+  }
+  
+  /**
+   * Puts all parsed models into weightList. The labels are taken from the
+   * model keys (W0_1 or W0) if there is more than one model.
+   */
+  private static void putModels(ModelTextParser parser,
+                                Map<String,WeightVector> weightList) throws IOException {
+    List<String> weightKeyList = parser.getWeightKeys();
+    Set<Double> labels = null;
     
-    // process the variables.
-    classNum = Integer.parseInt(keyValue.get(SVMParameters.CLASS_NUMBER));
-//    classifierType = Integer.parseInt(keyValue
-//        .get(SVMParameters.CLASSIFICATION_TYPE));
-    d = Integer.parseInt(keyValue.get(SVMParameters.DIMENSION));
-    mySnorm = Double.parseDouble(keyValue.get(SVMParameters.SNORM));
-    
-//    // label
-//    labelList = keyValue.get(SVMParameters.LABELS).trim().split(" ");
-//    if (labelList.length > 1) {
-//      labels = new TreeSet<Double>();
-//      for (int i = 0; i < labelList.length; i++) {
-//        labels.add(new Double(labelList[i]));
-//      }
-//    }
-
     // label
     if (weightKeyList.size() > 1) {
       labels = new TreeSet<Double>();
@@ -597,30 +1378,15 @@ public class WeightVector {
     
     // it is not depends on the one-vs.-one or one-vs.-others.
     for (int modelIndex = 0; modelIndex < weightKeyList.size(); modelIndex++) {
-      WeightVector w = new WeightVector();
-      w.classNum = classNum;
-      w.d = d;
-      w.mySnorm = mySnorm;
+      WeightVector w = parser.getModel(modelIndex);
       w.labels = labels;
-      
-      // A
-      w.myA = Double.parseDouble(keyValue.get(weightKeyList.get(modelIndex)
-          .replace("W", "A")));
-      
-      // weight vector
-      vectorString = keyValue.get(weightKeyList.get(modelIndex)).split(" ");
-      w.myVector = new SequentialAccessSparseVector(d, 10);
-      for (int i = 0; i < vectorString.length; i++) {
-        String[] iv = vectorString[i].split(":");
-        w.myVector.setQuick(Integer.parseInt(iv[0]), Double.parseDouble(iv[1]));
-      }
       weightList.put(weightKeyList.get(modelIndex), w);
     }
-    modelFile.close();
   }
   
   /**
-   * Constructing WeightVector list from one file, which stored on HDFS.
+   * Constructing WeightVector list from one file, which stored on HDFS. A
+   * binary model file is read at once, the text model may be a folder.
    * 
    * @param hostName
    *          HDFS server address and port number
@@ -636,78 +1402,27 @@ public class WeightVector {
     HDFSReader rd = new HDFSReader();
     rd.setServerAddress(hostName);
     Path file = new Path(fileName);
-    Map<String,String> keyValue = new OpenHashMap<String,String>();
-    String line;
-    String[] vectorString;
-    int d;
-    double mySnorm;
-    Set<Double> labels = null;
-    int classNum;
-    List<String> weightKeyList = new ArrayList<String>();
     
-    // read all line from file
-    List<String> lines;
+    List<Path> files;
     if (rd.isDir(file)) {
-      lines = rd.readADirectory(file);
+      files = rd.listFiles(file);
+    } else if (BinaryModelFile.isBinary(rd.readHead(file, 4))) {
+      BinaryModelFile.read(rd.readAllBytes(file), weightList);
+      return;
     } else {
-      lines = rd.readAllLines(file);
-    }
-    
-    Iterator<String> elt = lines.iterator();
-    while (elt.hasNext()) {
-      line = elt.next();
-      String[] words = line.trim().split("#");
-      if (words.length > 1) {
-        keyValue.put(words[0], words[1]);
-        if (words[0].contains("W")) {
-          weightKeyList.add(words[0]);
-        }
-      }
-    }
-    
-    // process the variables.
-    classNum = Integer.parseInt(keyValue.get(SVMParameters.CLASS_NUMBER));
-    // classifierType =
-    // Integer.parseInt(keyValue.get(SVMParameters.CLASSIFICATION_TYPE));
-    d = Integer.parseInt(keyValue.get(SVMParameters.DIMENSION));
-    mySnorm = Double.parseDouble(keyValue.get(SVMParameters.SNORM));
-    
-    // label
-    if (weightKeyList.size() > 1) {
-      labels = new TreeSet<Double>();
-      for (int i = 0; i < weightKeyList.size(); i++) {
-        String[] dim = weightKeyList.get(i).replace("W", "").split("_");
-        if (dim.length > 1) {
-          // for W0_1
-          labels.add(new Double(dim[0]));
-          labels.add(new Double(dim[1]));
-        } else {
-          labels.add(new Double(dim[0]));
-        }
-      }
+      files = new ArrayList<Path>();
+      files.add(file);
     }
     
-    // it is not depends on the one-vs.-one or one-vs.-others.
-    for (int modelIndex = 0; modelIndex < weightKeyList.size(); modelIndex++) {
-      WeightVector w = new WeightVector();
-      w.classNum = classNum;
-      w.d = d;
-      w.mySnorm = mySnorm;
-      w.labels = labels;
-      
-      // A
-      w.myA = Double.parseDouble(keyValue.get(weightKeyList.get(modelIndex)
-          .replace("W", "A")));
-      
-      // weight vector
-      vectorString = keyValue.get(weightKeyList.get(modelIndex)).split(" ");
-      w.myVector = new SequentialAccessSparseVector(d, 10);
-      for (int i = 0; i < vectorString.length; i++) {
-        String[] iv = vectorString[i].split(":");
-        w.myVector.setQuick(Integer.parseInt(iv[0]), Double.parseDouble(iv[1]));
+    ModelTextParser parser = new ModelTextParser();
+    for (Path part : files) {
+      Reader modelFile = new InputStreamReader(rd.open(part), "UTF-8");
+      try {
+        parser.parse(modelFile);
+      } finally {
+        modelFile.close();
       }
-      weightList.put(weightKeyList.get(modelIndex), w);
     }
-    
+    putModels(parser, weightList);
   }
 }
@@ -0,0 +1,211 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.apache.mahout.classifier.svm.algorithm.metafunctions;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.mahout.classifier.svm.datastore.DataSetHandler;
+import org.apache.mahout.classifier.svm.parameters.SVMParameters;
+import org.apache.mahout.classifier.svm.svmweightvector.WeightVector;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Checks that the steady-state Pegasos loops do not allocate: the threads that
+ * train may allocate as much for a long run as for a short one (the weights,
+ * the scratch buffers, the final objective), but nothing per iteration. The
+ * bytes are measured with ThreadMXBean.getThreadAllocatedBytes.
+ */
+public class PegasosAllocationTest {
+
+  private static final int SAMPLES = 2000;
+  private static final int DIMENSION = 50;
+  // held-out samples of the validated trainer
+  private static final int VALIDATE_SAMPLES = 200;
+  private static final int SHORT_RUN = 2000;
+  private static final int LONG_RUN = 22000;
+  // allowed difference between the runs, far less than a byte per iteration
+  private static final long SLACK = 16 * 1024;
+
+  private static ThreadMXBean threadBean;
+  private static DataSetHandler dataset;
+
+  @BeforeClass
+  public static void loadDataSet() throws IOException {
+    threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    File trainFile = File.createTempFile("pegasos", ".train");
+    trainFile.deleteOnExit();
+    Random rand = new Random(42);
+    BufferedWriter out = new BufferedWriter(new FileWriter(trainFile));
+    try {
+      for (int i = 0; i < SAMPLES; i++) {
+        boolean positive = rand.nextBoolean();
+        StringBuilder line = new StringBuilder(positive ? "1" : "-1");
+        for (int f = 1; f <= DIMENSION; f += 1 + rand.nextInt(4)) {
+          double value = rand.nextDouble() + (positive && f <= 10 ? 0.5 : 0.0);
+          line.append(' ').append(f).append(':').append(value);
+        }
+        out.write(line.append('\n').toString());
+      }
+    } finally {
+      out.close();
+    }
+    dataset = new DataSetHandler(trainFile.getPath());
+    dataset.getData(parameters(1, 1, LONG_RUN));
+  }
+
+  @Test
+  public void binaryClassificationDoesNotAllocatePerIteration() {
+    assertSteadyState(0, 1, 1);
+  }
+
+  @Test
+  public void miniBatchDoesNotAllocatePerIteration() {
+    assertSteadyState(0, 16, 1);
+  }
+
+  @Test
+  public void regressionDoesNotAllocatePerIteration() {
+    assertSteadyState(1, 1, 1);
+  }
+
+  @Test
+  public void validatedTrainingDoesNotAllocatePerIteration() {
+    // the candidate snapshots are a fixed cost
+    assertSteadyState(4, 1, 1);
+  }
+
+  @Test
+  public void parallelMiniBatchDoesNotAllocatePerIteration() {
+    assumeAllocationMeasurement();
+    MiniBatchEvaluator evaluator = new MiniBatchEvaluator(3, dataset
+        .getPackedSamples(), dataset.getLabelArray());
+    try {
+      long[] threads = miniBatchThreads();
+      WeightVector w = new WeightVector(DIMENSION + 1, WeightVector.DENSE);
+      int[] rows = new int[MiniBatchEvaluator.MIN_PARALLEL_BATCH];
+      Random rand = new Random(7);
+      // warm up
+      miniBatches(evaluator, w, rows, rand, SHORT_RUN);
+
+      long before = allocatedBytes(threads);
+      miniBatches(evaluator, w, rows, rand, LONG_RUN);
+      long allocated = allocatedBytes(threads) - before;
+      Assert.assertTrue("Mini-batches allocated " + allocated + " bytes",
+        allocated <= SLACK);
+    } finally {
+      evaluator.shutdown();
+    }
+  }
+
+  /**
+   * Trains svmType type for SHORT_RUN and LONG_RUN iterations and compares the
+   * bytes allocated by the calling thread.
+   */
+  private static void assertSteadyState(int type, int examplesPerIter, int threads) {
+    assumeAllocationMeasurement();
+    // warm up
+    train(type, examplesPerIter, threads, SHORT_RUN);
+
+    long shortRun = train(type, examplesPerIter, threads, SHORT_RUN);
+    long longRun = train(type, examplesPerIter, threads, LONG_RUN);
+    Assert.assertTrue("svmType " + type + ": " + (LONG_RUN - SHORT_RUN)
+                      + " more iterations allocated " + (longRun - shortRun)
+                      + " bytes", longRun - shortRun <= SLACK);
+  }
+
+  /**
+   * @return bytes allocated by the calling thread for the training
+   */
+  private static long train(int type, int examplesPerIter, int threads, int iterations) {
+    SVMParameters para = parameters(examplesPerIter, threads, iterations);
+    Training trainer = TrainingFactory.getInstance(type);
+    long[] caller = {Thread.currentThread().getId()};
+    long before = allocatedBytes(caller);
+    trainer.training(dataset, para);
+    return allocatedBytes(caller) - before;
+  }
+
+  private static SVMParameters parameters(int examplesPerIter, int threads, int iterations) {
+    SVMParameters para = new SVMParameters();
+    para.setHdfsServerAddr(null);
+    para.setModelFileName(null);
+    para.setLambda(0.001);
+    para.setMaxIter(iterations);
+    para.setExamplesPerIter(examplesPerIter);
+    para.setThreadNumber(threads);
+    para.setValidateExampleNumber(VALIDATE_SAMPLES);
+    return para;
+  }
+
+  private static void miniBatches(MiniBatchEvaluator evaluator,
+                                  WeightVector w,
+                                  int[] rows,
+                                  Random rand,
+                                  int batches) {
+    for (int i = 0; i < batches; i++) {
+      for (int j = 0; j < rows.length; j++) {
+        rows[j] = rand.nextInt(SAMPLES);
+      }
+      if (evaluator.subGradient(w, rows) > 0) {
+        evaluator.addGradient(w, 0.01);
+      }
+    }
+  }
+
+  /**
+   * @return ids of the calling thread and the live mini-batch workers
+   */
+  private static long[] miniBatchThreads() {
+    List<Thread> workers = new ArrayList<Thread>();
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if ("mini-batch".equals(thread.getName()) && thread.isAlive()) {
+        workers.add(thread);
+      }
+    }
+    long[] ids = new long[workers.size() + 1];
+    ids[0] = Thread.currentThread().getId();
+    for (int t = 0; t < workers.size(); t++) {
+      ids[t + 1] = workers.get(t).getId();
+    }
+    return ids;
+  }
+
+  private static long allocatedBytes(long[] threads) {
+    long bytes = 0;
+    for (long allocated : threadBean.getThreadAllocatedBytes(threads)) {
+      // -1 for a thread that has terminated
+      bytes += Math.max(0, allocated);
+    }
+    return bytes;
+  }
+
+  private static void assumeAllocationMeasurement() {
+    Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported()
+                      && threadBean.isThreadAllocatedMemoryEnabled());
+  }
+}